@@ -0,0 +1,86 @@
+package bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import textdb.FileManager;
+
+/**
+ * Generates text input files in the format of the files in data/ (key seq 0 0
+ * text) with a configurable number of rows, key skew and duplicate ratio.
+ */
+public class DataGenerator {
+	private int rows; // Number of rows to generate
+	private int numKeys; // Keys are drawn from 1..numKeys
+	private double skew; // Zipf exponent of key distribution (0 for uniform)
+	private double dupRatio; // Fraction of rows that repeat the key of an earlier row
+	private long seed; // Random seed (same seed generates same file)
+
+	public DataGenerator(int rows, int numKeys, double skew, double dupRatio, long seed) {
+		this.rows = rows;
+		this.numKeys = Math.max(1, numKeys);
+		this.skew = skew;
+		this.dupRatio = dupRatio;
+		this.seed = seed;
+	}
+
+	/**
+	 * Writes the rows to a text file.
+	 *
+	 * @param fileName
+	 *            name of file to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void write(String fileName) throws IOException {
+		Random rnd = new Random(seed);
+		double[] cdf = skew > 0 ? zipfCdf() : null;
+		int[] keys = new int[rows];
+
+		PrintWriter out = FileManager.openTextOutputFile(fileName);
+		try {
+			for (int i = 0; i < rows; i++) {
+				if (i > 0 && rnd.nextDouble() < dupRatio)
+					keys[i] = keys[rnd.nextInt(i)];
+				else if (cdf != null)
+					keys[i] = zipfKey(cdf, rnd.nextDouble());
+				else
+					keys[i] = 1 + rnd.nextInt(numKeys);
+
+				out.print(keys[i] + " " + (i + 1) + " 0 0  thisisatuple  ");
+				if (i < rows - 1)
+					out.println();
+			}
+		} finally {
+			FileManager.closeFile(out);
+		}
+	}
+
+	/*
+	 * Cumulative probabilities of keys 1..numKeys for a Zipf distribution with exponent skew.
+	 */
+	private double[] zipfCdf() {
+		double[] cdf = new double[numKeys];
+		double sum = 0;
+		for (int i = 0; i < numKeys; i++) {
+			sum += 1.0 / Math.pow(i + 1, skew);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < numKeys; i++)
+			cdf[i] /= sum;
+		return cdf;
+	}
+
+	private static int zipfKey(double[] cdf, double p) {
+		int lo = 0, hi = cdf.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cdf[mid] < p)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo + 1;
+	}
+}
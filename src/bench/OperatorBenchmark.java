@@ -0,0 +1,276 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.FastTextFileScan;
+import textdb.HashJoin;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.NestedLoopJoin;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.TupleBatch;
+
+/**
+ * Benchmarks scan, sort and join plans over the data files or generated inputs.
+ * Each benchmark runs a number of warmup iterations and then measured
+ * iterations of building and running a plan to completion. Reports plan
+ * throughput, output rows per second, allocation rate and bytes allocated per
+ * run (allocations of the benchmark thread), and GC count and time.
+ *
+ * Usage: java bench.OperatorBenchmark [options]
+ *
+ * <pre>
+ *   -data tiny,small,medium,large,generated   datasets to run (default small,medium,large)
+ *   -ops scan,fastscan,sort,nlj,bnlj,merge,hash   plans to run (default all)
+ *   -rows N -keys N -skew S -dup D -seed N   generated input (default 10000 rows, 10000 keys, 0 skew, 0 dup)
+ *   -warmup N -iterations N                  iterations per benchmark (default 3 and 5)
+ *   -batch                                   drain plans with nextBatch() instead of next()
+ *   -dir path                                directory of data files (default bin/data/)
+ *   -csv                                     print results as CSV
+ * </pre>
+ */
+public class OperatorBenchmark {
+	static public final String[] ALL_OPS = { "scan", "fastscan", "sort", "nlj", "bnlj", "merge", "hash" };
+
+	private static final com.sun.management.ThreadMXBean threads = allocationBean();
+
+	private String dataDir = "bin/data/";
+	private String[] datasets = { "small", "medium", "large" };
+	private String[] ops = ALL_OPS;
+	private int rows = 10000, numKeys = 10000;
+	private double skew = 0, dupRatio = 0;
+	private long seed = 404;
+	private int warmup = 3, iterations = 5;
+	private boolean useBatch = false, csv = false;
+	private Relation relation;
+
+	public static void main(String[] args) throws IOException {
+		OperatorBenchmark b = new OperatorBenchmark();
+		b.parseArgs(args);
+		b.run();
+	}
+
+	public OperatorBenchmark() {
+		Attribute[] attrs = new Attribute[5];
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+		relation = new Relation(attrs);
+	}
+
+	private void parseArgs(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String a = args[i];
+			if (a.equals("-batch"))
+				useBatch = true;
+			else if (a.equals("-csv"))
+				csv = true;
+			else if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + a);
+			else if (a.equals("-data"))
+				datasets = args[++i].split(",");
+			else if (a.equals("-ops"))
+				ops = args[++i].split(",");
+			else if (a.equals("-rows"))
+				rows = Integer.parseInt(args[++i]);
+			else if (a.equals("-keys"))
+				numKeys = Integer.parseInt(args[++i]);
+			else if (a.equals("-skew"))
+				skew = Double.parseDouble(args[++i]);
+			else if (a.equals("-dup"))
+				dupRatio = Double.parseDouble(args[++i]);
+			else if (a.equals("-seed"))
+				seed = Long.parseLong(args[++i]);
+			else if (a.equals("-warmup"))
+				warmup = Integer.parseInt(args[++i]);
+			else if (a.equals("-iterations"))
+				iterations = Integer.parseInt(args[++i]);
+			else if (a.equals("-dir"))
+				dataDir = args[++i];
+			else
+				throw new IllegalArgumentException("Unknown option: " + a);
+		}
+	}
+
+	/**
+	 * Runs all selected plans over all selected datasets and prints the results.
+	 */
+	public void run() throws IOException {
+		List<Result> results = new ArrayList<Result>();
+		for (String data : datasets) {
+			String left, right;
+			List<String> generated = new ArrayList<String>();
+			if (data.equals("generated")) {
+				left = File.createTempFile("bench_left", ".txt").getPath();
+				right = File.createTempFile("bench_right", ".txt").getPath();
+				generated.add(left);
+				generated.add(right);
+				new DataGenerator(rows, numKeys, skew, dupRatio, seed).write(left);
+				new DataGenerator(rows, numKeys, skew, dupRatio, seed + 1).write(right);
+			} else {
+				left = dataDir + data + "InputLeft.txt";
+				right = dataDir + data + "InputRight.txt";
+			}
+
+			try {
+				for (String op : ops)
+					results.add(measure(op, data, left, right));
+			} finally {
+				for (String f : generated)
+					new File(f).delete();
+			}
+		}
+		print(results);
+	}
+
+	/**
+	 * Builds a new plan for a benchmark.
+	 */
+	public Operator createPlan(String op, String left, String right) {
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		switch (op) {
+		case "scan":
+			return new TextFileScan(left, relation);
+		case "fastscan":
+			return new FastTextFileScan(left, relation);
+		case "sort":
+			return new MergeSort(new TextFileScan(left, relation), 10, 10, sorter);
+		case "nlj":
+			return new NestedLoopJoin(scans(left, right), ep);
+		case "bnlj":
+			return new NestedLoopJoin(scans(left, right), ep, 10, 10, true);
+		case "merge":
+			Operator[] in = scans(left, right);
+			return new MergeJoin(new Operator[] { new MergeSort(in[0], 10, 10, sorter),
+					new MergeSort(in[1], 10, 10, sorter) }, ep);
+		case "hash":
+			return new HashJoin(scans(left, right), ep, 10, 10);
+		default:
+			throw new IllegalArgumentException("Unknown plan: " + op);
+		}
+	}
+
+	private Operator[] scans(String left, String right) {
+		return new Operator[] { new TextFileScan(left, relation), new TextFileScan(right, relation) };
+	}
+
+	private Result measure(String op, String data, String left, String right) throws IOException {
+		for (int i = 0; i < warmup; i++)
+			runPlan(createPlan(op, left, right));
+
+		Result r = new Result(op, data);
+		long gcCount = gcCount(), gcTime = gcTime();
+		long alloc = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			r.rows += runPlan(createPlan(op, left, right));
+		r.nanos = System.nanoTime() - start;
+		r.allocated = allocatedBytes() - alloc;
+		r.gcCount = gcCount() - gcCount;
+		r.gcTime = gcTime() - gcTime;
+		r.iterations = iterations;
+		return r;
+	}
+
+	/**
+	 * Runs a plan to completion and returns the number of rows output.
+	 */
+	private long runPlan(Operator plan) throws IOException {
+		long count = 0;
+		plan.init();
+		if (useBatch) {
+			TupleBatch batch = new TupleBatch(plan.getOutputRelation());
+			while (plan.nextBatch(batch))
+				count += batch.getSize();
+		} else {
+			while (plan.next() != null)
+				count++;
+		}
+		plan.close();
+		return count;
+	}
+
+	private void print(List<Result> results) {
+		if (csv)
+			System.out.println("plan,data,iterations,rows,ms_per_op,ops_per_s,rows_per_s,alloc_mb_per_s,alloc_bytes_per_op,gc_count,gc_ms");
+		else
+			System.out.println(String.format("%-9s %-10s %10s %12s %12s %14s %16s %8s %8s", "plan", "data", "ms/op",
+					"ops/s", "rows/s", "alloc MB/s", "alloc bytes/op", "gc", "gc ms"));
+
+		for (Result r : results) {
+			double secs = r.nanos / 1e9;
+			double msPerOp = r.nanos / 1e6 / Math.max(1, r.iterations);
+			double opsPerSec = secs == 0 ? 0 : r.iterations / secs;
+			double rowsPerSec = secs == 0 ? 0 : r.rows / secs;
+			double allocRate = secs == 0 || r.allocated < 0 ? 0 : r.allocated / 1048576.0 / secs;
+			long allocPerOp = r.allocated < 0 ? -1 : r.allocated / Math.max(1, r.iterations);
+			if (csv)
+				System.out.println(String.format("%s,%s,%d,%d,%.3f,%.3f,%.0f,%.1f,%d,%d,%d", r.op, r.data, r.iterations,
+						r.rows, msPerOp, opsPerSec, rowsPerSec, allocRate, allocPerOp, r.gcCount, r.gcTime));
+			else
+				System.out.println(String.format("%-9s %-10s %10.3f %12.3f %12.0f %14.1f %16d %8d %8d", r.op, r.data,
+						msPerOp, opsPerSec, rowsPerSec, allocRate, allocPerOp, r.gcCount, r.gcTime));
+		}
+	}
+
+	/*
+	 * Returns the bytes allocated by the current thread or -1 if the JVM does not support it.
+	 */
+	private static long allocatedBytes() {
+		if (threads == null)
+			return -1;
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		return sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled() ? sunBean : null;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			time += Math.max(0, gc.getCollectionTime());
+		return time;
+	}
+
+	/**
+	 * Measurements of one benchmark.
+	 */
+	private static class Result {
+		String op, data; // Plan and dataset
+		int iterations; // Measured iterations
+		long rows; // Rows output over all iterations
+		long nanos; // Wall time of all iterations
+		long allocated; // Bytes allocated by benchmark thread (-1 if not supported)
+		long gcCount, gcTime; // Collections and collection time (ms) during iterations
+
+		Result(String op, String data) {
+			this.op = op;
+			this.data = data;
+		}
+	}
+}
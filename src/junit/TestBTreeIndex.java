@@ -0,0 +1,216 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.BTreeIndex;
+import textdb.BufferPool;
+import textdb.FileManager;
+import textdb.IndexScan;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests B+-tree indexes and index scans.
+ */
+public class TestBTreeIndex {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testPointAndRangeLookup() throws Exception {
+		System.out.println("\n\nTesting B+-tree point and range lookups.");
+		String dataFile = DATA_DIR + "largeInputLeft.txt";
+		String indexFile = OUTPUT_DIR + "largeInputLeft.idx";
+		try {
+			BTreeIndex.build(indexFile, dataFile, r, new int[] { 0 });
+			BTreeIndex index = BTreeIndex.open(indexFile, dataFile, r);
+			assertEquals(10000, index.getNumEntries());
+			assertTrue(index.getHeight() >= 2);
+
+			// Point lookup reads one node per level and the data page holding the line
+			IndexScan point = new IndexScan(index, new Object[] { 420132 });
+			List<String> found = readAll(point);
+			assertEquals(scanWhere(dataFile, 420132, 420132), found);
+			assertEquals(index.getHeight() + 1, point.getPagesRead());
+
+			// Range lookup returns the same tuples as a full scan in key order
+			IndexScan range = new IndexScan(index, new Object[] { 100000 }, new Object[] { 150000 });
+			range.init();
+			List<String> rangeFound = new ArrayList<String>();
+			int prev = 100000;
+			Tuple t;
+			while ((t = range.next()) != null) {
+				assertTrue(t.getInt(0) >= prev && t.getInt(0) <= 150000);
+				prev = t.getInt(0);
+				rangeFound.add(t.toString());
+			}
+			range.close();
+			List<String> expected = scanWhere(dataFile, 100000, 150000);
+			Collections.sort(rangeFound);
+			assertEquals(expected, rangeFound);
+			assertTrue(expected.size() > 100);
+
+			assertEquals(0, readAll(new IndexScan(index, new Object[] { -1 })).size());
+		} finally {
+			FileManager.deleteFile(indexFile);
+		}
+	}
+
+	@Test
+	public void testKeyPrefixLookup() throws Exception {
+		System.out.println("\n\nTesting B+-tree lookup on a key prefix.");
+		String dataFile = DATA_DIR + "largeInputRight.txt";
+		String indexFile = OUTPUT_DIR + "largeInputRight.idx";
+		try {
+			BTreeIndex index = BTreeIndex.build(indexFile, dataFile, r, new int[] { 0, 1 });
+
+			// Find a key of the data file that is in more than one line
+			List<String> all = readAll(new IndexScan(index, null, null));
+			assertEquals(10000, all.size());
+			int key = -1;
+			TextFileScan scan = new TextFileScan(dataFile, r);
+			List<Integer> keys = new ArrayList<Integer>();
+			scan.init();
+			Tuple t;
+			while ((t = scan.next()) != null)
+				keys.add(t.getInt(0));
+			scan.close();
+			Collections.sort(keys);
+			for (int i = 1; i < keys.size() && key < 0; i++)
+				if (keys.get(i).equals(keys.get(i - 1)))
+					key = keys.get(i);
+			assertTrue(key >= 0);
+
+			List<String> found = readAll(new IndexScan(index, new Object[] { key }));
+			assertTrue(found.size() > 1);
+			assertEquals(scanWhere(dataFile, key, key), found);
+		} finally {
+			FileManager.deleteFile(indexFile);
+		}
+	}
+
+	@Test
+	public void testExternalBuild() throws Exception {
+		System.out.println("\n\nTesting B+-tree built with an external sort of its entries.");
+		String dataFile = DATA_DIR + "largeInputRight.txt";
+		String indexFile = OUTPUT_DIR + "largeInputRightSmallSort.idx";
+		try {
+			// Entries are sorted in runs of 100 and duplicate keys stay in file order
+			BTreeIndex index = BTreeIndex.build(indexFile, dataFile, r, new int[] { 0 }, 10, 10);
+			assertEquals(10000, index.getNumEntries());
+			IndexScan all = new IndexScan(index, null, null);
+			all.init();
+			Tuple t, last = null;
+			int count = 0;
+			while ((t = all.next()) != null) {
+				if (last != null) {
+					assertTrue(last.getInt(0) <= t.getInt(0));
+					if (last.getInt(0) == t.getInt(0))
+						assertTrue(last.getInt(1) < t.getInt(1), "Duplicates out of file order: " + last + " " + t);
+				}
+				last = t;
+				count++;
+			}
+			all.close();
+			assertEquals(10000, count);
+
+			// Index scans read through the pool even when it is disabled
+			BufferPool.getInstance().setCapacity(0);
+			try {
+				assertEquals(scanWhere(dataFile, 100000, 150000),
+						readAll(new IndexScan(index, new Object[] { 100000 }, new Object[] { 150000 })));
+			} finally {
+				BufferPool.getInstance().setCapacity(BufferPool.DEFAULT_CAPACITY);
+			}
+		} finally {
+			FileManager.deleteFile(indexFile);
+		}
+	}
+
+	@Test
+	public void testOversizedKey() throws Exception {
+		System.out.println("\n\nTesting B+-tree build with a key too large for a node.");
+		String dataFile = FileManager.createTempFileName("long_key");
+		String indexFile = FileManager.createTempFileName("long_key_index");
+		try {
+			StringBuilder text = new StringBuilder();
+			while (text.length() < BTreeIndex.NODE_SIZE)
+				text.append("thisisatuple");
+			PrintWriter out = FileManager.openTextOutputFile(dataFile);
+			out.println("1 1 0 0  short  ");
+			out.println("2 2 0 0  " + text + "  ");
+			FileManager.closeFile(out);
+
+			IOException e = assertThrows(IOException.class,
+					() -> BTreeIndex.build(indexFile, dataFile, r, new int[] { 4 }));
+			assertTrue(e.getMessage().contains("index node"), e.getMessage());
+			assertFalse(new File(indexFile).exists());
+		} finally {
+			FileManager.deleteFile(dataFile);
+			FileManager.deleteFile(indexFile);
+		}
+	}
+
+	/*
+	 * Returns the sorted output of an operator.
+	 */
+	private static List<String> readAll(Operator op) throws Exception {
+		List<String> out = new ArrayList<String>();
+		op.init();
+		Tuple t;
+		while ((t = op.next()) != null)
+			out.add(t.toString());
+		op.close();
+		Collections.sort(out);
+		return out;
+	}
+
+	/*
+	 * Returns the sorted tuples of a data file with keys between low and high found with a full scan.
+	 */
+	private static List<String> scanWhere(String dataFile, int low, int high) throws Exception {
+		List<String> out = new ArrayList<String>();
+		TextFileScan scan = new TextFileScan(dataFile, r);
+		scan.init();
+		Tuple t;
+		while ((t = scan.next()) != null)
+			if (t.getInt(0) >= low && t.getInt(0) <= high)
+				out.add(t.toString());
+		scan.close();
+		Collections.sort(out);
+		return out;
+	}
+}
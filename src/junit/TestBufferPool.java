@@ -0,0 +1,167 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.BinaryTupleReader;
+import textdb.BinaryTupleWriter;
+import textdb.BufferPool;
+import textdb.EquiJoinPredicate;
+import textdb.FileManager;
+import textdb.MergeSort;
+import textdb.NestedLoopJoin;
+import textdb.Operator;
+import textdb.PooledInputStream;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests reading files through the shared buffer pool.
+ */
+public class TestBufferPool {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testRescanFromPool() {
+		System.out.println("\n\nTesting block nested loop join rescans served by buffer pool.");
+		BufferPool.getInstance().clear();
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Inner input is scanned once per block of 1000 outer tuples but only read from disk once
+		NestedLoopJoin nloop = new NestedLoopJoin(new Operator[] { scanLeft, scanRight }, ep, 100, 10, false);
+		assertEquals(191, TestScan.countJoinOutput(nloop));
+
+		int filePages = pages(DATA_DIR + "largeInputRight.txt");
+		assertEquals(filePages, scanRight.getDiskPagesRead());
+		assertEquals(10 * filePages, scanRight.getPagesRead());
+		assertEquals(pages(DATA_DIR + "largeInputLeft.txt"), scanLeft.getDiskPagesRead());
+		assertTrue(BufferPool.getInstance().getHits() >= 9 * filePages);
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		System.out.println("\n\nTesting buffer pool eviction.");
+		String fileName = DATA_DIR + "largeInputLeft.txt";
+		int filePages = pages(fileName);
+		assertTrue(filePages > 2);
+
+		BufferPool pool = new BufferPool(2 * BufferPool.PAGE_SIZE);
+		assertEquals(filePages, readAll(fileName, pool));
+		assertEquals(2, pool.getPagesCached());
+		assertEquals(filePages - 2, pool.getEvictions());
+
+		// A sequential scan larger than the pool evicts every page before it is read again
+		assertEquals(filePages, readAll(fileName, pool));
+		assertEquals(2, pool.getPagesCached());
+
+		pool.invalidate(fileName);
+		assertEquals(0, pool.getPagesCached());
+
+		pool.setCapacity(2L * filePages * BufferPool.PAGE_SIZE);
+		readAll(fileName, pool);
+		assertEquals(0, readAll(fileName, pool));
+		assertEquals(filePages, pool.getPagesCached());
+	}
+
+	@Test
+	public void testPoolDisabled() throws Exception {
+		System.out.println("\n\nTesting scan with buffer pool disabled.");
+		BufferPool pool = BufferPool.getInstance();
+		pool.setCapacity(0);
+		try {
+			TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+			int count = 0;
+			scan.init();
+			while (scan.next() != null)
+				count++;
+			scan.close();
+			assertEquals(10000, count);
+			assertEquals(0, scan.getDiskPagesRead());
+			assertEquals(0, pool.getPagesCached());
+
+			// Runs are read with streams and deleted once merged
+			MergeSort sort = new MergeSort(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), 10, 10,
+					new SortComparator(new int[] { 0 }, new boolean[] { true }));
+			assertEquals(10000, TestMergeSort.checkSorted(sort));
+			assertTrue(sort.getTempFilesWritten() > 1);
+			assertEquals(0, pool.getPagesCached());
+		} finally {
+			pool.setCapacity(BufferPool.DEFAULT_CAPACITY);
+		}
+	}
+
+	@Test
+	public void testRewrittenFileNotStale() throws Exception {
+		System.out.println("\n\nTesting file rewritten after being cached in buffer pool.");
+		String fileName = FileManager.createTempFileName("pool_rewrite");
+		try {
+			// File rewritten with the same length and modification time (as within the time resolution of some
+			// file systems)
+			long modified = 0;
+			for (int key = 1; key <= 3; key++) {
+				BinaryTupleWriter out = FileManager.openTupleWriter(fileName, r);
+				out.write(new Tuple(new Object[] { key, 0, 0, 0, "text" }, r));
+				FileManager.closeFile(out);
+				if (key == 1)
+					modified = new File(fileName).lastModified();
+				else
+					new File(fileName).setLastModified(modified);
+
+				BinaryTupleReader in = FileManager.openTupleReader(fileName, r);
+				Tuple t = new Tuple(r);
+				assertTrue(in.read(t));
+				assertEquals(key, t.getInt(0));
+				FileManager.closeFile(in);
+			}
+		} finally {
+			FileManager.deleteFile(fileName);
+		}
+	}
+
+	/*
+	 * Reads a file through a pool and returns the number of pages read from disk.
+	 */
+	private static long readAll(String fileName, BufferPool pool) throws Exception {
+		byte[] b = new byte[4096];
+		try (PooledInputStream in = new PooledInputStream(fileName, pool)) {
+			long total = 0;
+			int n;
+			while ((n = in.read(b, 0, b.length)) > 0)
+				total += n;
+			assertEquals(new File(fileName).length(), total);
+			return in.getDiskPagesRead();
+		}
+	}
+
+	private static int pages(String fileName) {
+		return (int) ((new File(fileName).length() + BufferPool.PAGE_SIZE - 1) / BufferPool.PAGE_SIZE);
+	}
+}
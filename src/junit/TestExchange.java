@@ -0,0 +1,229 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.BroadcastExchange;
+import textdb.EquiJoinPredicate;
+import textdb.Exchange;
+import textdb.FileManager;
+import textdb.GatherExchange;
+import textdb.HashJoin;
+import textdb.JoinPlanner;
+import textdb.MergeSort;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.RepartitionExchange;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests exchange operators and parallel joins.
+ */
+public class TestExchange {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testRepartition() {
+		System.out.println("\n\nTesting repartition exchange.");
+		RepartitionExchange parts = new RepartitionExchange(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new int[] { 0 }, 4);
+		Operator[] ports = new Operator[4];
+		for (int i = 0; i < 4; i++)
+			ports[i] = parts.getPort(i);
+
+		// Gather runs each port on its own thread
+		GatherExchange gather = new GatherExchange(ports);
+		int count = 0;
+		try {
+			gather.init();
+			while (gather.next() != null)
+				count++;
+			gather.close();
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+		assertEquals(10000, count);
+		assertEquals(10000, parts.getTuplesRead());
+		int sum = 0;
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ports[i].getTuplesOutput() > 0);
+			sum += ports[i].getTuplesOutput();
+		}
+		assertEquals(10000, sum);
+	}
+
+	@Test
+	public void testParallelHashJoin() {
+		System.out.println("\n\nTesting parallel hash join.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		try {
+			Operator join = new JoinPlanner(40, 10).createParallelJoin(r1Scan, r2Scan, ep, 4);
+			assertTrue(join instanceof GatherExchange);
+			assertEquals(4, join.getInputs().length);
+			assertTrue(join.getInputs()[0] instanceof HashJoin);
+			compareUnorderedWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt", 191);
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testBroadcastJoin() {
+		System.out.println("\n\nTesting join with broadcast inner input.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Left partitioned on any attribute, right sent to every pipeline
+		Exchange left = new RepartitionExchange(r1Scan, new int[] { 1 }, 3);
+		Exchange right = new BroadcastExchange(r2Scan, 3);
+		Operator[] joins = new Operator[3];
+		for (int i = 0; i < 3; i++)
+			joins[i] = new HashJoin(new Operator[] { left.getPort(i), right.getPort(i) }, ep, 40, 10);
+
+		compareUnorderedWithOutput(new GatherExchange(joins), OUTPUT_DIR + "mergeOutputLarge.txt", 191);
+		assertEquals(10000, right.getTuplesRead());
+	}
+
+	@Test
+	public void testSlowConsumerSpills() throws Exception {
+		System.out.println("\n\nTesting exchange ports read one after another on one thread.");
+		RepartitionExchange parts = new RepartitionExchange(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new int[] { 0 }, 2, 1);
+
+		// Port 1 is not read until port 0 ends so its chunks past the memory bound are written to temporary files
+		int[] counts = new int[2];
+		for (int i = 0; i < 2; i++) {
+			Operator port = parts.getPort(i);
+			port.init();
+			Tuple t;
+			while ((t = port.next()) != null) {
+				assertEquals(i, Exchange.partition(t, new int[] { 0 }, 2));
+				counts[i]++;
+			}
+		}
+		parts.getPort(0).close();
+		parts.getPort(1).close();
+		assertEquals(10000, counts[0] + counts[1]);
+		assertTrue(parts.getChunksSpilled() > 0);
+		assertTrue(parts.getBytesSpilled() > 0);
+	}
+
+	@Test
+	public void testSortPorts() throws Exception {
+		System.out.println("\n\nTesting sorts of exchange ports.");
+		RepartitionExchange parts = new RepartitionExchange(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new int[] { 0 }, 2);
+
+		// Each port holds far more tuples than a sort buffer
+		int count = 0;
+		for (int i = 0; i < 2; i++) {
+			MergeSort sort = new MergeSort(parts.getPort(i), 10, 10,
+					new SortComparator(new int[] { 1 }, new boolean[] { true }));
+			sort.init();
+			int last = Integer.MIN_VALUE;
+			Tuple t;
+			while ((t = sort.next()) != null) {
+				assertTrue(t.getInt(1) >= last);
+				last = t.getInt(1);
+				count++;
+			}
+			sort.close();
+			assertTrue(sort.getTempFilesWritten() > 0);
+		}
+		assertEquals(10000, count);
+	}
+
+	@Test
+	public void testFailedPipelineStopsExchange() throws Exception {
+		System.out.println("\n\nTesting exchange after a pipeline fails before reading its port.");
+		RepartitionExchange parts = new RepartitionExchange(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new int[] { 0 }, 2);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Second pipeline fails initializing its left input so its port is never initialized
+		HashJoin failing = new HashJoin(new Operator[] { new TextFileScan(DATA_DIR + "missingInput.txt", r),
+				parts.getPort(1) }, ep, 40, 10);
+		GatherExchange gather = new GatherExchange(new Operator[] { parts.getPort(0), failing });
+		assertThrows(IOException.class, () -> gather.init());
+
+		// The failed run was stopped so the exchange can be run again
+		GatherExchange rerun = new GatherExchange(new Operator[] { parts.getPort(0), parts.getPort(1) });
+		rerun.init();
+		int count = 0;
+		while (rerun.next() != null)
+			count++;
+		rerun.close();
+		assertEquals(10000, count);
+	}
+
+	/**
+	 * Compares the output of an operator with the expected output stored in a file ignoring the order of tuples.
+	 */
+	public static void compareUnorderedWithOutput(Operator op, String fileName, int expected) {
+		List<String> actual = new ArrayList<String>();
+		List<String> lines = new ArrayList<String>();
+		try {
+			op.init();
+			Tuple t;
+			while ((t = op.next()) != null)
+				actual.add(t.toString().trim());
+			op.close();
+
+			BufferedReader reader = FileManager.openTextInputFile(fileName);
+			String st;
+			while ((st = reader.readLine()) != null)
+				if (st.trim().length() > 0)
+					lines.add(st.trim());
+			FileManager.closeFile(reader);
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+		Collections.sort(actual);
+		Collections.sort(lines);
+		assertEquals(expected, actual.size());
+		assertEquals(lines, actual);
+		assertEquals(expected, op.getTuplesOutput());
+	}
+}
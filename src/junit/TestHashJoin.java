@@ -0,0 +1,96 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.HashJoin;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.TextFileScan;
+
+/**
+ * Tests hash join implementation.
+ */
+public class TestHashJoin {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testMediumJoin() {
+		System.out.println("\n\nTesting medium hash join.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "mediumInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "mediumInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		HashJoin hjoin = new HashJoin(new Operator[] { scanLeft, scanRight }, ep, 2000, 10);
+		int count = TestScan.compareOperatorWithOutput(hjoin, OUTPUT_DIR + "nestedOutputMedium.txt");
+		assertEquals(127, count);
+	}
+
+	@Test
+	public void testLargeJoin() {
+		System.out.println("\n\nTesting large hash join.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		HashJoin hjoin = new HashJoin(new Operator[] { scanLeft, scanRight }, ep, 2000, 10);
+		int count = TestScan.compareOperatorWithOutput(hjoin, OUTPUT_DIR + "nestedOutputLarge.txt");
+		assertEquals(191, count);
+	}
+
+	@Test
+	public void testLargeGraceJoin() {
+		System.out.println("\n\nTesting large hash join with partitioning.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Buffer of 100 tuples forces both inputs to be partitioned (output order differs from nested loop)
+		HashJoin hjoin = new HashJoin(new Operator[] { scanLeft, scanRight }, ep, 10, 10);
+		TestExchange.compareUnorderedWithOutput(hjoin, OUTPUT_DIR + "nestedOutputLarge.txt", 191);
+		assertTrue(hjoin.getTempFilesWritten() > 0);
+		assertEquals(2000, hjoin.getPagesRead());	// Each input read once
+	}
+
+	@Test
+	public void testBuildSide() throws Exception {
+		System.out.println("\n\nTesting hash join build input.");
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Building on the tiny left input fits in a buffer of 20 tuples, building on the large right input does not
+		for (int side = 0; side < 3; side++) {
+			HashJoin hjoin = new HashJoin(new Operator[] { new TextFileScan(DATA_DIR + "tinyInputLeft.txt", r),
+					new TextFileScan(DATA_DIR + "largeInputRight.txt", r) }, ep, 2, 10);
+			if (side < 2)
+				hjoin.setBuildLeft(side == 0);
+			int count = TestScan.countJoinOutput(hjoin);
+			assertEquals(side == 1, hjoin.getTempFilesWritten() > 0);
+
+			// Rescan builds on the same input
+			assertEquals(count, TestScan.countJoinOutput(hjoin));
+		}
+	}
+}
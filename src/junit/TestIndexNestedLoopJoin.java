@@ -0,0 +1,158 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.util.StringTokenizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.BTreeIndex;
+import textdb.EquiJoinPredicate;
+import textdb.FileManager;
+import textdb.IndexNestedLoopJoin;
+import textdb.IndexScan;
+import textdb.Operator;
+import textdb.ProfiledOperator;
+import textdb.Relation;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests index nested-loop joins.
+ */
+public class TestIndexNestedLoopJoin {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testBTreeIndexJoin() throws Exception {
+		System.out.println("\n\nTesting index nested loop join with B+-tree index on inner input.");
+		String dataFile = DATA_DIR + "largeInputRight.txt";
+		String indexFile = OUTPUT_DIR + "largeInputRight.idx";
+		try {
+			BTreeIndex index = BTreeIndex.build(indexFile, dataFile, r, new int[] { 0 });
+			TextFileScan outer = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+			IndexScan inner = new IndexScan(index, null, null);
+			EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+			IndexNestedLoopJoin join = new IndexNestedLoopJoin(new Operator[] { outer, inner }, ep);
+
+			TestExchange.compareUnorderedWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt", 191);
+			assertEquals(10000, join.getProbes());
+
+			// Only matching inner tuples are read
+			assertEquals(191, inner.getTuplesOutput());
+			assertEquals(10000 + 191, join.getTuplesRead());
+
+			// Probes of a ranged inner scan return only inner tuples in its range (also when profiled)
+			inner = new IndexScan(index, new Object[] { 100000 }, new Object[] { 150000 });
+			join = new IndexNestedLoopJoin(new Operator[] { new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), inner }, ep);
+			ProfiledOperator profiled = ProfiledOperator.profile(join);
+			profiled.init();
+			int count = 0;
+			Tuple t;
+			while ((t = profiled.next()) != null) {
+				assertTrue(t.getInt(5) >= 100000 && t.getInt(5) <= 150000);
+				count++;
+			}
+			profiled.close();
+			assertEquals(countOutput(100000, 150000), count);
+			assertEquals(10000, join.getProbes());
+			assertEquals(count, profiled.getChildren()[1].getTuplesOutput());
+			assertTrue(profiled.getChildren()[1].getCalls() > 0);
+
+			// Probing does not change the scan's range
+			inner.init();
+			count = 0;
+			while ((t = inner.next()) != null)
+				count++;
+			inner.close();
+			assertEquals(countKeys(DATA_DIR + "largeInputRight.txt", 100000, 150000), count);
+		} finally {
+			FileManager.deleteFile(indexFile);
+		}
+	}
+
+	@Test
+	public void testHashIndexJoin() {
+		System.out.println("\n\nTesting index nested loop join with hash table on inner input.");
+		TextFileScan outer = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan inner = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		IndexNestedLoopJoin join = new IndexNestedLoopJoin(new Operator[] { outer, inner }, ep, 1000, 10);
+
+		TestExchange.compareUnorderedWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt", 191);
+
+		// Inner input is read once
+		assertEquals(20000, join.getTuplesRead());
+		assertEquals(10000, inner.getTuplesOutput());
+		assertEquals(0, join.getTempFilesWritten());
+
+		// Inner input that does not fit in the buffer is partitioned
+		join = new IndexNestedLoopJoin(new Operator[] { new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new TextFileScan(DATA_DIR + "largeInputRight.txt", r) }, ep, 40, 10);
+		TestExchange.compareUnorderedWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt", 191);
+		assertEquals(20000, join.getTuplesRead());
+		assertTrue(join.getTempFilesWritten() > 0);
+
+		// No buffer is given to hash an inner input that is not an index scan
+		IndexNestedLoopJoin unbuffered = new IndexNestedLoopJoin(new Operator[] {
+				new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), new TextFileScan(DATA_DIR + "largeInputRight.txt", r) }, ep);
+		assertThrows(IllegalStateException.class, () -> unbuffered.init());
+	}
+
+	/*
+	 * Counts the rows of the expected join output with keys between low and high.
+	 */
+	private static int countOutput(int low, int high) throws Exception {
+		int count = 0;
+		BufferedReader reader = FileManager.openTextInputFile(OUTPUT_DIR + "mergeOutputLarge.txt");
+		String st;
+		while ((st = reader.readLine()) != null) {
+			StringTokenizer tokens = new StringTokenizer(st);
+			if (!tokens.hasMoreTokens())
+				continue;
+			int key = Integer.parseInt(tokens.nextToken());
+			if (key >= low && key <= high)
+				count++;
+		}
+		FileManager.closeFile(reader);
+		return count;
+	}
+
+	/*
+	 * Counts the tuples of a file with keys between low and high with a full scan.
+	 */
+	private static int countKeys(String fileName, int low, int high) throws Exception {
+		TextFileScan scan = new TextFileScan(fileName, r);
+		scan.init();
+		int count = 0;
+		Tuple t;
+		while ((t = scan.next()) != null)
+			if (t.getInt(0) >= low && t.getInt(0) <= high)
+				count++;
+		scan.close();
+		return count;
+	}
+}
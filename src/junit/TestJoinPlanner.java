@@ -0,0 +1,169 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.HashJoin;
+import textdb.JoinPlanner;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.NestedLoopJoin;
+import textdb.Operator;
+import textdb.Predicate;
+import textdb.Predicate.Op;
+import textdb.Relation;
+import textdb.Select;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests cost-based join selection.
+ */
+public class TestJoinPlanner {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testEstimateTuples() throws Exception {
+		System.out.println("\n\nTesting input size estimates.");
+		JoinPlanner planner = new JoinPlanner(10, 10);
+		assertEquals(6, planner.estimateTuples(new TextFileScan(DATA_DIR + "tinyInputLeft.txt", r)));
+
+		long est = planner.estimateTuples(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r));
+		assertTrue(est > 9000 && est < 11000, "Estimate: " + est);
+	}
+
+	@Test
+	public void testLargeUnsortedChoosesHash() throws Exception {
+		System.out.println("\n\nTesting join selection for large unsorted inputs.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		JoinPlanner planner = new JoinPlanner(10, 10);
+		Operator join = planner.createJoin(r1Scan, r2Scan, ep);
+		assertTrue(join instanceof HashJoin);
+		assertEquals(191, TestScan.countJoinOutput(join));
+	}
+
+	@Test
+	public void testSmallInMemoryChoosesNestedLoop() throws Exception {
+		System.out.println("\n\nTesting join selection for inputs that fit in the buffer.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "smallInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "smallInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		JoinPlanner planner = new JoinPlanner(100, 10);
+		assertEquals(JoinPlanner.Strategy.NESTED_LOOP, planner.choose(r1Scan, r2Scan, ep));
+		assertTrue(planner.createJoin(r1Scan, r2Scan, ep) instanceof NestedLoopJoin);
+	}
+
+	@Test
+	public void testSortedInputsChooseMergeWithoutSort() throws Exception {
+		System.out.println("\n\nTesting join selection for inputs sorted on the join key.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		MergeSort r1Sort = new MergeSort(r1Scan, 10, 10, sorter);
+		MergeSort r2Sort = new MergeSort(r2Scan, 10, 10, sorter);
+
+		JoinPlanner planner = new JoinPlanner(10, 10);
+		Operator join = planner.createJoin(r1Sort, r2Sort, ep);
+		assertTrue(join instanceof MergeJoin);
+		assertEquals(r1Sort, join.getInputs()[0]);
+		assertEquals(r2Sort, join.getInputs()[1]);
+
+		int count = TestScan.compareOperatorWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt");
+		assertEquals(191, count);
+	}
+
+	@Test
+	public void testMergeSortsUnsortedOperators() throws Exception {
+		System.out.println("\n\nTesting merge joins sorting selections and joins.");
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Selections that are not pushed into a scan
+		for (int bsize : new int[] { 8, 16, 80 }) {
+			JoinPlanner planner = new JoinPlanner(bsize, 10);
+			Select left = select("largeInputLeft.txt");
+			assertFalse(left.isPushedDown());
+			Operator join = planner.createJoin(JoinPlanner.Strategy.MERGE, left, select("largeInputRight.txt"), ep);
+			assertEquals(191, TestScan.compareOperatorWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt"));
+		}
+
+		// A join of the output of another join
+		JoinPlanner planner = new JoinPlanner(8, 10);
+		List<String> expected = joinOutput(planner.createJoin(JoinPlanner.Strategy.HASH, innerJoin(),
+				new TextFileScan(DATA_DIR + "largeInputRight.txt", r), ep));
+		assertTrue(expected.size() > 191);
+		Operator join = planner.createJoin(JoinPlanner.Strategy.MERGE, innerJoin(),
+				new TextFileScan(DATA_DIR + "largeInputRight.txt", r), ep);
+		assertTrue(join instanceof MergeJoin);
+		assertEquals(expected, joinOutput(join));
+	}
+
+	/*
+	 * Returns a selection of all tuples of a file evaluated on tuples (the predicate is pushed into the inner
+	 * selection's scan).
+	 */
+	private static Select select(String fileName) {
+		Predicate all = Predicate.compare(0, Op.GE, Integer.MIN_VALUE);
+		return new Select(new Select(new TextFileScan(DATA_DIR + fileName, r), all), all);
+	}
+
+	/*
+	 * Returns a hash join of the large inputs outputting the left input's attributes.
+	 */
+	private static HashJoin innerJoin() {
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		HashJoin join = new HashJoin(new Operator[] { new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new TextFileScan(DATA_DIR + "largeInputRight.txt", r) }, ep, 8, 10);
+		join.setOutputAttributes(new int[] { 0, 1, 2, 3, 4 });
+		return join;
+	}
+
+	/*
+	 * Returns the sorted output tuples of a join as strings.
+	 */
+	private static List<String> joinOutput(Operator join) throws Exception {
+		List<String> out = new ArrayList<String>();
+		join.init();
+		Tuple t;
+		while ((t = join.next()) != null) {
+			assertEquals(t.getInt(0), t.getInt(5));
+			out.add(t.toString());
+		}
+		join.close();
+		Collections.sort(out);
+		return out;
+	}
+}
@@ -1,6 +1,8 @@
 package junit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeAll;
@@ -67,4 +69,49 @@ public class TestMergeJoinBonus {
 		int count = TestScan.compareOperatorWithOutput(mjoin, OUTPUT_DIR + "mergeOutputLarge.txt");
 		assertEquals(191, count);
 	}
+
+	@Test
+	public void testMediumJoinSpill() {
+		System.out.println("\n\nTesting medium merge join with spilled duplicate keys.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "mediumInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "mediumInputRight.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		MergeSort r1Sort = new MergeSort(r1Scan, 2000, 10, sorter);
+		MergeSort r2Sort = new MergeSort(r2Scan, 2000, 10, sorter);
+
+		// Only one tuple per key is kept in memory, the rest of each run is written to a temporary file
+		MergeJoin mjoin = new MergeJoin(new Operator[] { r1Sort, r2Sort }, ep, 1);
+		int count = TestScan.compareOperatorWithOutput(mjoin, OUTPUT_DIR + "mergeOutputMedium.txt");
+		assertEquals(127, count);
+
+		// Spill file I/O is counted in pages of one tuple unless a blocking factor is given
+		assertTrue(mjoin.getTupleIOs() > 0);
+		assertEquals(mjoin.getTupleIOs(), mjoin.getPageIOs());
+		r1Sort = new MergeSort(new TextFileScan(DATA_DIR + "mediumInputLeft.txt", r), 2000, 10, sorter);
+		r2Sort = new MergeSort(new TextFileScan(DATA_DIR + "mediumInputRight.txt", r), 2000, 10, sorter);
+		MergeJoin blocked = new MergeJoin(new Operator[] { r1Sort, r2Sort }, ep, 1, 10);
+		assertEquals(127, TestScan.compareOperatorWithOutput(blocked, OUTPUT_DIR + "mergeOutputMedium.txt"));
+		assertEquals(mjoin.getTupleIOs(), blocked.getTupleIOs());
+		assertTrue(blocked.getPageIOs() > 0 && blocked.getPageIOs() < blocked.getTupleIOs());
+
+		assertThrows(IllegalArgumentException.class, () -> new MergeJoin(new Operator[] { r1Scan, r2Scan }, ep, 0));
+	}
+
+	@Test
+	public void testLargeJoinExternalSort() {
+		System.out.println("\n\nTesting large merge join with multi-run sorts.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Buffer of 100 tuples so both sorts write and merge runs (merge must be stable to match output)
+		MergeSort r1Sort = new MergeSort(r1Scan, 10, 10, sorter);
+		MergeSort r2Sort = new MergeSort(r2Scan, 10, 10, sorter);
+		MergeJoin mjoin = new MergeJoin(new Operator[] { r1Sort, r2Sort }, ep);
+
+		int count = TestScan.compareOperatorWithOutput(mjoin, OUTPUT_DIR + "mergeOutputLarge.txt");
+		assertEquals(191, count);
+	}
 }
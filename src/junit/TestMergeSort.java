@@ -0,0 +1,197 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.FileManager;
+import textdb.MergeSort;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests external merge sort implementation.
+ */
+public class TestMergeSort {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testLargeSort() {
+		System.out.println("\n\nTesting large external merge sort.");
+		TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+
+		// Buffer of 100 tuples forces runs to be written and merged
+		MergeSort sort = new MergeSort(scan, 10, 10, sorter);
+		int count = checkSorted(sort);
+		assertEquals(10000, count);
+		assertEquals(1000, sort.getPagesRead());
+	}
+
+	@Test
+	public void testLargeSortMultiPass() {
+		System.out.println("\n\nTesting large external merge sort with intermediate merge passes.");
+		TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+
+		// About 50 runs merged 3 at a time needs several passes that each write and read every page again
+		MergeSort sort = new MergeSort(scan, 10, 10, sorter);
+		sort.setMergeFanIn(3);
+		int count = checkSorted(sort);
+		assertEquals(10000, count);
+		assertTrue(sort.getPageIOs() >= 4 * 2000);
+	}
+
+	@Test
+	public void testLargeSortParallel() {
+		System.out.println("\n\nTesting large external merge sort with parallel run generation.");
+		TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+
+		MergeSort sort = new MergeSort(scan, 10, 10, sorter);
+		sort.setParallelRunGeneration(4);
+		int count = checkSorted(sort);
+		assertEquals(10000, count);
+		assertEquals(1000, sort.getPagesRead());
+	}
+
+	@Test
+	public void testParallelSortInputFails() throws Exception {
+		System.out.println("\n\nTesting parallel run generation after its input fails.");
+		final boolean[] closed = new boolean[1];
+		TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r) {
+			private int count;
+
+			public void init() throws IOException {
+				super.init();
+				count = 0;
+			}
+
+			public Tuple next() throws IOException {
+				if (++count > 5000)
+					throw new IOException("Input failed");
+				return super.next();
+			}
+
+			public void close() throws IOException {
+				closed[0] = true;
+				super.close();
+			}
+		};
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		MergeSort sort = new MergeSort(scan, 10, 10, sorter);
+		sort.setParallelRunGeneration(4);
+		assertThrows(IOException.class, () -> sort.init());
+		sort.close();
+
+		// Runs written before the failure are deleted (and not counted) and the input is closed
+		assertTrue(closed[0]);
+		assertEquals(0, sort.getTempFilesWritten());
+		String[] runs = new File(".").list((dir, name) -> name.startsWith("merge_run") && name.endsWith(".dat"));
+		assertEquals(0, runs.length);
+	}
+
+	@Test
+	public void testLargeSortMultiKeyDescending() {
+		System.out.println("\n\nTesting large external merge sort on two keys with one descending.");
+		TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0, 1 }, new boolean[] { false, true });
+
+		MergeSort sort = new MergeSort(scan, 10, 10, sorter);
+		int count = 0;
+		try {
+			sort.init();
+			Tuple t, last = null;
+			while ((t = sort.next()) != null) {
+				if (last != null) {
+					assertTrue(last.getInt(0) >= t.getInt(0));
+					if (last.getInt(0) == t.getInt(0))
+						assertTrue(last.getInt(1) <= t.getInt(1));
+				}
+				last = t;
+				count++;
+			}
+			sort.close();
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+		assertEquals(10000, count);
+	}
+
+	@Test
+	public void testSortedInputSingleRun() {
+		System.out.println("\n\nTesting external merge sort of sorted input.");
+		String sortedFile = FileManager.createTempFileName("sorted_input");
+		try {
+			SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+			FileManager.writeOutputToFile(sortedFile,
+					new MergeSort(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), 2000, 10, sorter));
+
+			// Replacement selection writes an already sorted input as one run: 1000 pages written and read once
+			MergeSort sort = new MergeSort(new TextFileScan(sortedFile, r), 10, 10, sorter);
+			int count = checkSorted(sort);
+			assertEquals(10000, count);
+			assertEquals(2000, sort.getPageIOs());
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		} finally {
+			FileManager.deleteFile(sortedFile);
+		}
+	}
+
+	/**
+	 * Checks that an operator outputs tuples in ascending order of the first attribute and returns the number of tuples.
+	 */
+	public static int checkSorted(Operator op) {
+		int count = 0;
+		try {
+			op.init();
+			Tuple t, last = null;
+			while ((t = op.next()) != null) {
+				if (last != null)
+					assertTrue(last.getInt(0) <= t.getInt(0));
+				last = t;
+				count++;
+			}
+			op.close();
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+		return count;
+	}
+}
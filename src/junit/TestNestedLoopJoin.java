@@ -60,4 +60,31 @@ public class TestNestedLoopJoin {
 		int count = TestScan.compareOperatorWithOutput(nloop, OUTPUT_DIR + "nestedOutputLarge.txt");
 		assertEquals(191, count);
 	}
+
+	@Test
+	public void testLargeBlockJoin() {
+		System.out.println("\n\nTesting large block nested loop join.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		// Blocks of 1000 outer tuples: outer read once (1000 pages) plus 10 inner scans (1000 pages each)
+		NestedLoopJoin nloop = new NestedLoopJoin(new Operator[] { scanLeft, scanRight }, ep, 100, 10, false);
+		int count = TestScan.countJoinOutput(nloop);
+		assertEquals(191, count);
+		assertEquals(11000, nloop.getPagesRead());
+	}
+
+	@Test
+	public void testLargeIndexedBlockJoin() {
+		System.out.println("\n\nTesting large block nested loop join with block index.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		NestedLoopJoin nloop = new NestedLoopJoin(new Operator[] { scanLeft, scanRight }, ep, 100, 10, true);
+		int count = TestScan.countJoinOutput(nloop);
+		assertEquals(191, count);
+		assertEquals(11000, nloop.getPagesRead());
+	}
 }
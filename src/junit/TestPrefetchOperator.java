@@ -0,0 +1,102 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.NestedLoopJoin;
+import textdb.Operator;
+import textdb.PrefetchOperator;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+
+/**
+ * Tests reading inputs ahead on a background thread.
+ */
+public class TestPrefetchOperator {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testPrefetchScan() {
+		System.out.println("\n\nTesting prefetched text file scan.");
+		PrefetchOperator scan = new PrefetchOperator(new TextFileScan(DATA_DIR + "smallInputLeft.txt", r), 1);
+		assertTrue(scan.isBuffered());
+		assertEquals(101, TestScan.compareOperatorWithOutput(scan, OUTPUT_DIR + "scanOutput.txt"));
+	}
+
+	@Test
+	public void testPrefetchMergeJoin() {
+		System.out.println("\n\nTesting merge join of prefetched sorts.");
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		Operator r1Sort = new PrefetchOperator(
+				new MergeSort(new PrefetchOperator(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r)), 10, 10, sorter));
+		Operator r2Sort = new PrefetchOperator(
+				new MergeSort(new PrefetchOperator(new TextFileScan(DATA_DIR + "largeInputRight.txt", r)), 10, 10, sorter));
+
+		MergeJoin mjoin = new MergeJoin(new Operator[] { r1Sort, r2Sort }, ep);
+		assertEquals(191, TestScan.compareOperatorWithOutput(mjoin, OUTPUT_DIR + "mergeOutputLarge.txt"));
+	}
+
+	@Test
+	public void testPrefetchRescannedInput() {
+		System.out.println("\n\nTesting block nested loop join with prefetched inner input.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		PrefetchOperator scanRight = new PrefetchOperator(new TextFileScan(DATA_DIR + "largeInputRight.txt", r));
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		NestedLoopJoin nloop = new NestedLoopJoin(new Operator[] { scanLeft, scanRight }, ep, 100, 10, true);
+		assertEquals(191, TestScan.countJoinOutput(nloop));
+	}
+
+	@Test
+	public void testCloseBeforeEnd() {
+		System.out.println("\n\nTesting close of prefetched scan before end of input.");
+		PrefetchOperator scan = new PrefetchOperator(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), 1);
+		try {
+			scan.init();
+			for (int i = 0; i < 10; i++)
+				assertTrue(scan.next() != null);
+			scan.close();
+			assertEquals(10, scan.getTuplesOutput());
+
+			// Can be run again after close
+			scan.init();
+			int count = 0;
+			while (scan.next() != null)
+				count++;
+			scan.close();
+			assertEquals(10000, count);
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+	}
+}
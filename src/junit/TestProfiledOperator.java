@@ -0,0 +1,84 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.Operator;
+import textdb.ProfiledOperator;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+
+/**
+ * Tests profiling of operator plans.
+ */
+public class TestProfiledOperator {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testProfileMergeJoin() {
+		System.out.println("\n\nTesting profile of large merge join.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		MergeSort r1Sort = new MergeSort(r1Scan, 10, 10, sorter);
+		MergeSort r2Sort = new MergeSort(r2Scan, 10, 10, sorter);
+		MergeJoin mjoin = new MergeJoin(new Operator[] { r1Sort, r2Sort }, ep);
+
+		ProfiledOperator plan = ProfiledOperator.profile(mjoin);
+		int count = TestScan.compareOperatorWithOutput(plan, OUTPUT_DIR + "mergeOutputLarge.txt");
+		assertEquals(191, count);
+		System.out.println(plan.explain());
+
+		// Plan shape and counters
+		assertEquals(2, plan.getChildren().length);
+		ProfiledOperator sort = plan.getChildren()[0];
+		ProfiledOperator scan = sort.getChildren()[0];
+		assertEquals(r1Sort, sort.getOperator());
+		assertEquals(r1Scan, scan.getOperator());
+		assertEquals(10000, scan.getTuplesOutput());
+		assertEquals(new File(DATA_DIR + "largeInputLeft.txt").length(), scan.getBytesRead());
+		assertTrue(sort.getTempFilesWritten() > 1);
+		assertTrue(sort.getBytesWritten() > 0);
+		assertEquals(sort.getBytesWritten(), sort.getBytesRead());
+
+		// Times include inputs
+		assertTrue(plan.getWallTime() >= sort.getWallTime());
+		assertTrue(sort.getWallTime() >= scan.getWallTime());
+		assertEquals(sort.getWallTime() - scan.getWallTime(), sort.getSelfWallTime());
+		assertTrue(scan.getCalls() > 10000);
+
+		String json = plan.toJSON();
+		assertTrue(json.startsWith("{\"operator\":\"MergeJoin\",\"rows\":191,"));
+		assertTrue(json.contains("{\"operator\":\"MergeSort\""));
+		assertTrue(json.contains("{\"operator\":\"TextFileScan\",\"rows\":10000,"));
+	}
+}
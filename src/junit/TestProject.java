@@ -0,0 +1,271 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.HashJoin;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.Operator;
+import textdb.Project;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+import textdb.TupleBatch;
+
+/**
+ * Tests projections and sorts and joins that output only needed attributes.
+ */
+public class TestProject {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testProject() throws Exception {
+		System.out.println("\n\nTesting projection.");
+		String fileName = DATA_DIR + "largeInputLeft.txt";
+		TextFileScan scan = new TextFileScan(fileName, r);
+		TextFileScan check = new TextFileScan(fileName, r);
+		Project project = new Project(scan, new int[] { 4, 0 });
+		project.init();
+		check.init();
+		assertEquals(2, project.getOutputRelation().getNumAttributes());
+		assertEquals(Attribute.TYPE_STRING, project.getOutputRelation().getAttributeType(0));
+
+		int count = 0;
+		Tuple t;
+		while ((t = project.next()) != null) {
+			Tuple full = check.next();
+			assertEquals(2, t.numValues());
+			assertEquals(full.getString(4), t.getString(0));
+			assertEquals(full.getInt(0), t.getInt(1));
+			count++;
+		}
+		project.close();
+		check.close();
+		assertEquals(10000, count);
+		assertEquals(10000, project.getTuplesOutput());
+
+		// Sort order is mapped to output positions
+		SortComparator sorter = new SortComparator(new int[] { 0, 1 }, new boolean[] { true, true });
+		MergeSort sort = new MergeSort(new TextFileScan(fileName, r), 100, 10, sorter);
+		assertArrayEquals(new int[] { 2, 0 }, new Project(sort, new int[] { 1, 3, 0 }).getSortOrder());
+		assertArrayEquals(new int[] { 1 }, new Project(sort, new int[] { 4, 0 }).getSortOrder());
+		assertNull(new Project(sort, new int[] { 1, 4 }).getSortOrder());
+	}
+
+	@Test
+	public void testSortNeededAttributes() throws Exception {
+		System.out.println("\n\nTesting sort keeping only needed attributes.");
+		String fileName = DATA_DIR + "largeInputLeft.txt";
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+
+		MergeSort full = new MergeSort(new TextFileScan(fileName, r), 10, 10, sorter);
+		countSorted(full, 5);
+
+		// Text is not written to run files
+		MergeSort narrow = new MergeSort(new TextFileScan(fileName, r), 10, 10,
+				new SortComparator(new int[] { 0 }, new boolean[] { true }), new int[] { 1, 0 });
+		assertArrayEquals(new int[] { 1 }, narrow.getSortOrder());
+		countSorted(narrow, 2);
+		assertTrue(narrow.getTempFilesWritten() > 0);
+		assertTrue(narrow.getBytesWritten() < full.getBytesWritten() / 2,
+				narrow.getBytesWritten() + " bytes written vs. " + full.getBytesWritten());
+
+		// Sort attributes must be needed
+		assertThrows(IllegalArgumentException.class,
+				() -> new MergeSort(new TextFileScan(fileName, r), 10, 10, sorter, new int[] { 1, 4 }));
+	}
+
+	@Test
+	public void testJoinOutputAttributes() throws Exception {
+		System.out.println("\n\nTesting merge join of narrow sorts outputting only needed attributes.");
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		List<String> expected = expectedJoin(ep);
+		Tuple t;
+
+		// Sorts keep (key, seq) and the join outputs left key, left seq and right seq
+		MergeJoin join = narrowJoin(ep);
+		assertArrayEquals(new int[] { 0 }, join.getSortOrder());
+		join.init();
+		assertEquals(3, join.getOutputRelation().getNumAttributes());
+		List<String> actual = new ArrayList<String>();
+		while ((t = join.next()) != null) {
+			assertEquals(3, t.numValues());
+			actual.add(t.getInt(0) + " " + t.getInt(1) + " " + t.getInt(2));
+		}
+		join.close();
+		Collections.sort(actual);
+		assertEquals(expected, actual);
+
+		// Batches hold only output attributes
+		join = narrowJoin(ep);
+		join.init();
+		actual.clear();
+		TupleBatch batch;
+		while ((batch = join.nextBatch()) != null) {
+			assertEquals(3, batch.getNumColumns());
+			for (int i = 0; i < batch.getSize(); i++)
+				actual.add(batch.getInt(i, 0) + " " + batch.getInt(i, 1) + " " + batch.getInt(i, 2));
+		}
+		join.close();
+		Collections.sort(actual);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testTempFilesKeepNeededAttributes() throws Exception {
+		System.out.println("\n\nTesting hash join partitions and merge join spills keeping only needed attributes.");
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		List<String> expected = expectedJoin(ep);
+		int[] out = new int[] { 0, 1, 6 };
+
+		// Grace hash join partitions hold only (key, seq) of each input
+		HashJoin full = hashJoin(ep);
+		full.init();
+		while (full.next() != null)
+			;
+		full.close();
+		HashJoin narrow = hashJoin(ep);
+		narrow.setOutputAttributes(out);
+		assertEquals(expected, joinOutput(narrow, false));
+		assertTrue(narrow.getTempFilesWritten() > 0);
+		assertTrue(narrow.getBytesWritten() < full.getBytesWritten() * 3 / 4,
+				narrow.getBytesWritten() + " bytes written vs. " + full.getBytesWritten());
+		narrow = hashJoin(ep);
+		narrow.setOutputAttributes(out);
+		assertEquals(expected, joinOutput(narrow, true));
+
+		// Merge join spilling runs past one left tuple writes only (key, seq) - the right input has duplicate join keys
+		List<String> swapped = new ArrayList<String>();
+		for (String st : expected) {
+			String[] v = st.split(" ");
+			swapped.add(v[0] + " " + v[2] + " " + v[1]);
+		}
+		Collections.sort(swapped);
+		for (boolean batches : new boolean[] { false, true }) {
+			MergeJoin join = new MergeJoin(new Operator[] { sorted("largeInputRight.txt"), sorted("largeInputLeft.txt") },
+					ep, 1);
+			join.setOutputAttributes(out);
+			assertEquals(swapped, joinOutput(join, batches));
+			assertTrue(join.getTempFilesWritten() > 0);
+		}
+	}
+
+	/*
+	 * Returns the sorted (left key, left seq, right seq) strings of the join of the large inputs computed from full
+	 * joined tuples.
+	 */
+	private static List<String> expectedJoin(EquiJoinPredicate ep) throws Exception {
+		List<String> expected = new ArrayList<String>();
+		HashJoin hj = hashJoin(ep);
+		hj.init();
+		Tuple t;
+		while ((t = hj.next()) != null)
+			expected.add(t.getInt(0) + " " + t.getInt(1) + " " + t.getInt(6));
+		hj.close();
+		Collections.sort(expected);
+		assertEquals(191, expected.size());
+		return expected;
+	}
+
+	/*
+	 * Returns a hash join of the large inputs that does not fit in memory.
+	 */
+	private static HashJoin hashJoin(EquiJoinPredicate ep) {
+		return new HashJoin(new Operator[] { new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+				new TextFileScan(DATA_DIR + "largeInputRight.txt", r) }, ep, 40, 10);
+	}
+
+	private static MergeSort sorted(String fileName) {
+		return new MergeSort(new TextFileScan(DATA_DIR + fileName, r), 10, 10,
+				new SortComparator(new int[] { 0 }, new boolean[] { true }));
+	}
+
+	/*
+	 * Returns the sorted output strings of a join outputting three INT attributes (read in batches if batches is true).
+	 */
+	private static List<String> joinOutput(Operator join, boolean batches) throws Exception {
+		List<String> actual = new ArrayList<String>();
+		join.init();
+		if (batches) {
+			TupleBatch batch;
+			while ((batch = join.nextBatch()) != null)
+				for (int i = 0; i < batch.getSize(); i++)
+					actual.add(batch.getInt(i, 0) + " " + batch.getInt(i, 1) + " " + batch.getInt(i, 2));
+		} else {
+			Tuple t;
+			while ((t = join.next()) != null) {
+				assertEquals(3, t.numValues());
+				actual.add(t.getInt(0) + " " + t.getInt(1) + " " + t.getInt(2));
+			}
+		}
+		join.close();
+		Collections.sort(actual);
+		return actual;
+	}
+
+	/*
+	 * Returns a merge join of sorts of the large inputs on the key keeping (key, seq) that outputs left key, left seq
+	 * and right seq.
+	 */
+	private static MergeJoin narrowJoin(EquiJoinPredicate ep) {
+		int[] needed = new int[] { 0, 1 };
+		MergeSort left = new MergeSort(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), 10, 10,
+				new SortComparator(new int[] { 0 }, new boolean[] { true }), needed);
+		MergeSort right = new MergeSort(new TextFileScan(DATA_DIR + "largeInputRight.txt", r), 10, 10,
+				new SortComparator(new int[] { 0 }, new boolean[] { true }), needed);
+		MergeJoin join = new MergeJoin(new Operator[] { left, right }, ep);
+		join.setOutputAttributes(new int[] { 0, 1, 3 });
+		return join;
+	}
+
+	/*
+	 * Checks an operator outputs 10000 tuples with the given number of attributes in key order.
+	 */
+	private static void countSorted(Operator op, int numAttrs) throws Exception {
+		op.init();
+		int keyIdx = op.getSortOrder()[0];
+		int count = 0;
+		int last = Integer.MIN_VALUE;
+		Tuple t;
+		while ((t = op.next()) != null) {
+			assertEquals(numAttrs, t.numValues());
+			assertTrue(t.getInt(keyIdx) >= last);
+			last = t.getInt(keyIdx);
+			count++;
+		}
+		op.close();
+		assertEquals(10000, count);
+	}
+}
@@ -0,0 +1,118 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.Operator;
+import textdb.QueryRunner;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+
+/**
+ * Tests running many queries concurrently.
+ */
+public class TestQueryRunner {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	private static AtomicInteger sortsRunning = new AtomicInteger();
+	private static AtomicInteger maxSortsRunning = new AtomicInteger();
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	/**
+	 * MergeSort that tracks how many sorts are running at the same time.
+	 */
+	private static class CountedSort extends MergeSort {
+		CountedSort(Operator in) {
+			super(in, 10, 10, new SortComparator(new int[] { 0 }, new boolean[] { true }));
+		}
+
+		public void init() throws IOException {
+			maxSortsRunning.accumulateAndGet(sortsRunning.incrementAndGet(), Math::max);
+			super.init();
+		}
+
+		public void close() throws IOException {
+			super.close();
+			sortsRunning.decrementAndGet();
+		}
+	}
+
+	@Test
+	public void testConcurrentQueries() throws Exception {
+		System.out.println("\n\nTesting concurrent queries.");
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		List<Future<QueryRunner.QueryResult>> results = new ArrayList<Future<QueryRunner.QueryResult>>();
+
+		try (QueryRunner runner = new QueryRunner(4, 8)) {
+			System.out.println("Virtual threads: " + runner.usesVirtualThreads());
+			for (int i = 0; i < 20; i++) {
+				Operator join = new MergeJoin(new Operator[] {
+						new CountedSort(new TextFileScan(DATA_DIR + "mediumInputLeft.txt", r)),
+						new CountedSort(new TextFileScan(DATA_DIR + "mediumInputRight.txt", r)) }, ep);
+				results.add(runner.submit("join", join));
+				results.add(runner.submit("scan", new TextFileScan(DATA_DIR + "smallInputLeft.txt", r)));
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				QueryRunner.QueryResult res = results.get(i).get();
+				assertEquals(i % 2 == 0 ? 127 : 101, res.getRows());
+				assertTrue(res.getLatency() >= res.getRunningTime());
+			}
+			System.out.println(runner.report());
+
+			assertEquals(40, runner.getLatencyStats(QueryRunner.ALL_QUERIES).getCount());
+			assertEquals(20, runner.getLatencyStats("join").getCount());
+			QueryRunner.LatencyStats joins = runner.getLatencyStats("join");
+			assertTrue(joins.getPercentile(50) <= joins.getPercentile(99));
+			assertTrue(joins.getPercentile(99) <= joins.getPercentile(100));
+		}
+		assertTrue(maxSortsRunning.get() <= 4, "Sorts running at once: " + maxSortsRunning.get());
+		assertEquals(0, sortsRunning.get());
+	}
+
+	@Test
+	public void testQueryOverSortCap() throws Exception {
+		System.out.println("\n\nTesting query with more sorts than may run at once.");
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		Operator join = new MergeJoin(new Operator[] {
+				new CountedSort(new TextFileScan(DATA_DIR + "mediumInputLeft.txt", r)),
+				new CountedSort(new TextFileScan(DATA_DIR + "mediumInputRight.txt", r)) }, ep);
+		try (QueryRunner runner = new QueryRunner(1, 2)) {
+			assertThrows(IllegalArgumentException.class, () -> runner.submit("join", join));
+			// A query within the cap still runs
+			assertEquals(107, runner.submit("sort", join.getInputs()[0]).get().getRows());
+		}
+	}
+}
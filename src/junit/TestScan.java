@@ -10,6 +10,7 @@ import java.io.BufferedReader;
 import java.util.ArrayList;
 
 import textdb.Attribute;
+import textdb.FastTextFileScan;
 import textdb.FileManager;
 import textdb.Operator;
 import textdb.Relation;
@@ -46,6 +47,30 @@ public class TestScan {
 		int count = compareOperatorWithOutput(tblScan, OUTPUT_DIR+"scanOutput.txt");		
 		assertEquals(101, count);
 	}
+
+	@Test
+	public void testSmallFastScan()
+	{   System.out.println("\n\nTesting fast text file scan.");
+		FastTextFileScan tblScan = new FastTextFileScan(DATA_DIR+"smallInputLeft.txt", r);
+		int count = compareOperatorWithOutput(tblScan, OUTPUT_DIR+"scanOutput.txt");
+		assertEquals(101, count);
+	}
+
+	@Test
+	public void testLargeFastScan() throws Exception
+	{   System.out.println("\n\nTesting fast text file scan against text file scan.");
+		TextFileScan scan = new TextFileScan(DATA_DIR+"largeInputLeft.txt", r);
+		FastTextFileScan fastScan = new FastTextFileScan(DATA_DIR+"largeInputLeft.txt", r);
+		scan.init();
+		fastScan.init();
+		Tuple t;
+		while ( (t = scan.next()) != null)
+			assertEquals(t.toString(), fastScan.next().toString());
+		assertEquals(null, fastScan.next());
+		assertEquals(10000, fastScan.getTuplesOutput());
+		scan.close();
+		fastScan.close();
+	}
    
 	/**
 	 * Compares the output of an operator with the expected output stored in a file.
@@ -107,5 +132,32 @@ public class TestScan {
 			fail();
 		}
 		return op.getTuplesOutput();
-	}		
+	}
+
+	/**
+	 * Counts the tuples output by a join on the first attribute of two relations of five attributes (used when
+	 * output order differs from the expected output file).
+	 */
+	public static int countJoinOutput(Operator op)
+	{
+		int count = 0;
+		try
+		{
+			op.init();
+			Tuple t;
+			while ( (t = op.next()) != null)
+			{
+				assertEquals(t.getInt(0), t.getInt(5));
+				count++;
+			}
+			op.close();
+		}
+		catch (Exception e)
+		{
+			System.out.println("ERROR: "+e);
+			e.printStackTrace();
+			fail();
+		}
+		return count;
+	}
 }
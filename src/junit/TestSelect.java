@@ -0,0 +1,191 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.FastTextFileScan;
+import textdb.MergeSort;
+import textdb.Operator;
+import textdb.Predicate;
+import textdb.Predicate.Op;
+import textdb.Relation;
+import textdb.Select;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+import textdb.TupleBatch;
+
+/**
+ * Tests selections and predicate pushdown into text scans.
+ */
+public class TestSelect {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testPushdown() throws Exception {
+		System.out.println("\n\nTesting selection pushed into text scan.");
+		String fileName = DATA_DIR + "largeInputLeft.txt";
+		int expected = countWhere(fileName, 100000, 150000);
+
+		// INT constant given as a string is converted to the attribute type
+		TextFileScan scan = new TextFileScan(fileName, r);
+		Select select = new Select(scan, Predicate.and(Predicate.compare(0, Op.GE, "100000"),
+				Predicate.compare(0, Op.LE, 150000)));
+		assertTrue(select.isPushedDown());
+		assertEquals(expected, count(select, true));
+		assertEquals(10000, scan.getTuplesRead());
+		assertEquals(expected, scan.getTuplesOutput());
+		assertEquals(expected, select.getTuplesOutput());
+
+		// Batches of a fast scan hold only matching lines
+		FastTextFileScan fast = new FastTextFileScan(fileName, r);
+		select = new Select(fast, Predicate.and(Predicate.compare(0, Op.GE, 100000), Predicate.compare(0, Op.LE, 150000)));
+		select.init();
+		int rows = 0;
+		TupleBatch batch;
+		while ((batch = select.nextBatch()) != null) {
+			for (int i = 0; i < batch.getSize(); i++)
+				assertTrue(batch.getInt(i, 0) >= 100000 && batch.getInt(i, 0) <= 150000);
+			rows += batch.getSize();
+		}
+		select.close();
+		assertEquals(expected, rows);
+		assertEquals(10000, fast.getTuplesRead());
+	}
+
+	@Test
+	public void testLineAndTuplePredicatesAgree() throws Exception {
+		System.out.println("\n\nTesting selection with OR, NOT and string comparisons.");
+		String fileName = DATA_DIR + "largeInputLeft.txt";
+		Predicate p = Predicate.or(Predicate.compare(0, Op.LT, 20000),
+				Predicate.and(Predicate.not(Predicate.compare(1, Op.NE, 4001)), Predicate.compare(4, Op.EQ, "thisisatuple")),
+				Predicate.compare(4, Op.GT, "zzz"));
+
+		// Evaluated on lines by the scan
+		Select pushed = new Select(new FastTextFileScan(fileName, r), p);
+		assertTrue(pushed.isPushedDown());
+		int onLines = count(pushed, false);
+
+		// Evaluated on tuples (input is not a scan)
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		Select onTuples = new Select(new MergeSort(new TextFileScan(fileName, r), 2000, 10, sorter), p);
+		assertFalse(onTuples.isPushedDown());
+		assertEquals(onLines, count(onTuples, false));
+		assertEquals(10000, onTuples.getTuplesRead());
+		assertEquals(countWhere(fileName, 0, 19999) + 1, onLines);
+	}
+
+	@Test
+	public void testSortSelection() throws Exception {
+		System.out.println("\n\nTesting sort of a selection evaluated on tuples.");
+		String fileName = DATA_DIR + "largeInputLeft.txt";
+		int expected = countWhere(fileName, 100000, Integer.MAX_VALUE);
+
+		// Outer selection is not pushed down as the scan already has a predicate
+		Predicate p = Predicate.compare(0, Op.GE, 100000);
+		Select select = new Select(new Select(new TextFileScan(fileName, r), p), p);
+		assertFalse(select.isPushedDown());
+		assertTrue(expected > 100);
+		MergeSort sort = new MergeSort(select, 10, 10, new SortComparator(new int[] { 1 }, new boolean[] { true }));
+		sort.init();
+		int count = 0;
+		int last = Integer.MIN_VALUE;
+		Tuple t;
+		while ((t = sort.next()) != null) {
+			assertTrue(t.getInt(0) >= 100000);
+			assertTrue(t.getInt(1) >= last);
+			last = t.getInt(1);
+			count++;
+		}
+		sort.close();
+		assertEquals(expected, count);
+		assertEquals(expected, select.getTuplesOutput());
+	}
+
+	@Test
+	public void testOutOfRangeConstantsAndNulls() throws Exception {
+		System.out.println("\n\nTesting comparisons with constants outside the attribute range and NULL fields.");
+		Relation sr = new Relation(new Attribute[] { new Attribute("s", Attribute.TYPE_SMALLINT, 0),
+				new Attribute("i", Attribute.TYPE_INT, 0) });
+		Tuple t = new Tuple(new Object[] { Short.valueOf((short) 7), Integer.valueOf(5) }, sr);
+		Tuple nulls = new Tuple(new Object[] { null, null }, sr);
+
+		// Constants are not narrowed to the attribute type
+		assertTrue(Predicate.compare(0, Op.LT, 40000).compile(sr).matches(t));
+		assertFalse(Predicate.compare(0, Op.EQ, 40000 + 7).compile(sr).matches(t));
+		assertTrue(Predicate.compare(0, Op.GT, -40000).compile(sr).matches(t));
+		assertFalse(Predicate.compare(1, Op.GE, 3_000_000_000L).compile(sr).matches(t));
+		assertTrue(Predicate.compare(1, Op.NE, "3000000005").compile(sr).matches(t));
+		assertTrue(Predicate.compare(1, Op.LT, 5.5).compile(sr).matches(t));
+		assertFalse(Predicate.compare(1, Op.GE, 5.5).compile(sr).matches(t));
+		assertFalse(Predicate.compare(1, Op.EQ, "5.5").compile(sr).matches(t));
+		assertTrue(Predicate.compare(1, Op.GT, -4.5).compile(sr).matches(t));
+		assertFalse(Predicate.compare(0, Op.LT, 40000).compile(sr).matches(nulls));
+		assertThrows(IllegalArgumentException.class, () -> Attribute.convert(40000, Attribute.TYPE_SMALLINT));
+		assertThrows(IllegalArgumentException.class, () -> Attribute.convert(3_000_000_000L, Attribute.TYPE_INT));
+
+		// A comparison with NULL is UNKNOWN, and so is its negation
+		Predicate eq = Predicate.compare(1, Op.EQ, 5);
+		assertFalse(eq.compile(sr).matches(nulls));
+		assertFalse(Predicate.not(eq).compile(sr).matches(nulls));
+		assertFalse(Predicate.not(Predicate.or(eq, Predicate.compare(0, Op.LT, 40000))).compile(sr).matches(nulls));
+		assertFalse(Predicate.not(eq).compile(sr).matches(t));
+		assertTrue(Predicate.not(Predicate.not(eq)).compile(sr).matches(t));
+		assertTrue(Predicate.not(Predicate.and(eq, Predicate.compare(0, Op.GT, 40000))).compile(sr).matches(t));
+	}
+
+	/*
+	 * Counts the output of an operator (checking key range [100000, 150000] if checkRange is true).
+	 */
+	private static int count(Operator op, boolean checkRange) throws Exception {
+		op.init();
+		int count = 0;
+		Tuple t;
+		while ((t = op.next()) != null) {
+			if (checkRange)
+				assertTrue(t.getInt(0) >= 100000 && t.getInt(0) <= 150000);
+			count++;
+		}
+		op.close();
+		return count;
+	}
+
+	/*
+	 * Counts the tuples of a file with keys between low and high with a full scan.
+	 */
+	private static int countWhere(String fileName, int low, int high) throws Exception {
+		TextFileScan scan = new TextFileScan(fileName, r);
+		scan.init();
+		int count = 0;
+		Tuple t;
+		while ((t = scan.next()) != null)
+			if (t.getInt(0) >= low && t.getInt(0) <= high)
+				count++;
+		scan.close();
+		return count;
+	}
+}
@@ -0,0 +1,157 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.FileManager;
+import textdb.JoinPlanner;
+import textdb.MergeJoin;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.SortedTable;
+import textdb.SortedTableScan;
+import textdb.TextFileScan;
+import textdb.Tuple;
+
+/**
+ * Tests writing and scanning sorted table files.
+ */
+public class TestSortedTable {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testMergeJoinTables() throws Exception {
+		System.out.println("\n\nTesting merge join of sorted tables.");
+		String leftFile = OUTPUT_DIR + "largeLeftTable.dat";
+		String rightFile = OUTPUT_DIR + "largeRightTable.dat";
+		try {
+			SortedTable left = SortedTable.create(leftFile,
+					new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), new int[] { 0 }, 100, 10);
+			SortedTable.create(rightFile, new TextFileScan(DATA_DIR + "largeInputRight.txt", r), new int[] { 0 },
+					100, 10);
+			assertEquals(10000, left.getNumTuples());
+			assertEquals(1000, left.getNumPages());
+
+			// Tables are opened from their footers and joined without sorting
+			SortedTableScan leftScan = new SortedTableScan(leftFile);
+			SortedTableScan rightScan = new SortedTableScan(rightFile);
+			assertEquals(5, leftScan.getOutputRelation().getNumAttributes());
+			EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+			Operator join = new JoinPlanner(100, 10).createJoin(JoinPlanner.Strategy.MERGE, leftScan, rightScan, ep);
+			assertTrue(join instanceof MergeJoin);
+			assertTrue(join.getInputs()[0] == leftScan && join.getInputs()[1] == rightScan);
+
+			int count = TestScan.compareOperatorWithOutput(join, OUTPUT_DIR + "mergeOutputLarge.txt");
+			assertEquals(191, count);
+			assertEquals(1000, leftScan.getPagesRead());
+			assertEquals(0, join.getTempFilesWritten());
+		} finally {
+			FileManager.deleteFile(leftFile);
+			FileManager.deleteFile(rightFile);
+		}
+	}
+
+	@Test
+	public void testLongStrings() throws Exception {
+		System.out.println("\n\nTesting sorted table with strings longer than 127 bytes.");
+		String textFile = OUTPUT_DIR + "longStrings.txt";
+		String tableFile = OUTPUT_DIR + "longStringsTable.dat";
+		Relation lr = new Relation(new Attribute[] { new Attribute("key", Attribute.TYPE_INT, 0),
+				new Attribute("text", Attribute.TYPE_STRING, Attribute.MAX_STRING_BYTES) });
+		try {
+			PrintWriter out = FileManager.openTextOutputFile(textFile);
+			for (int i = 0; i < 200; i++)
+				out.println((200 - i) + " " + "x".repeat(128 + i % 128));
+			FileManager.closeFile(out);
+
+			SortedTable.create(tableFile, new TextFileScan(textFile, lr), new int[] { 0 }, 10, 10);
+			SortedTableScan scan = new SortedTableScan(tableFile);
+			scan.init();
+			int count = 0;
+			Tuple t;
+			while ((t = scan.next()) != null) {
+				assertEquals(count + 1, t.getInt(0));
+				assertEquals(128 + (200 - t.getInt(0)) % 128, t.getString(1).length());
+				count++;
+			}
+			scan.close();
+			assertEquals(200, count);
+
+			// Values longer than the one byte length are rejected
+			Tuple tooLong = new Tuple(new Object[] { 1, "x".repeat(Attribute.MAX_STRING_BYTES + 1) }, lr);
+			assertThrows(IOException.class, () -> tooLong.write(new BufferedOutputStream(new ByteArrayOutputStream())));
+		} finally {
+			FileManager.deleteFile(textFile);
+			FileManager.deleteFile(tableFile);
+		}
+	}
+
+	@Test
+	public void testKeyRange() throws Exception {
+		System.out.println("\n\nTesting key range scan of sorted table.");
+		String fileName = OUTPUT_DIR + "largeLeftTable.dat";
+		try {
+			SortedTable table = SortedTable.create(fileName, new TextFileScan(DATA_DIR + "largeInputLeft.txt", r),
+					new int[] { 0 }, 100, 10);
+
+			// Count keys in range with a full scan
+			int low = 100000, high = 150000, expected = 0;
+			TextFileScan scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+			scan.init();
+			Tuple t;
+			while ((t = scan.next()) != null)
+				if (t.getInt(0) >= low && t.getInt(0) <= high)
+					expected++;
+			scan.close();
+
+			SortedTableScan range = new SortedTableScan(table);
+			range.setKeyRange(new Object[] { low }, new Object[] { high });
+			range.init();
+			int count = 0, prev = low;
+			while ((t = range.next()) != null) {
+				assertTrue(t.getInt(0) >= prev && t.getInt(0) <= high);
+				prev = t.getInt(0);
+				count++;
+			}
+			range.close();
+			assertEquals(expected, count);
+			assertTrue(range.getPagesRead() < table.getNumPages() / 2, "Pages read: " + range.getPagesRead());
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		} finally {
+			FileManager.deleteFile(fileName);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import textdb.Attribute;
+import textdb.EquiJoinPredicate;
+import textdb.FastTextFileScan;
+import textdb.FileManager;
+import textdb.MergeJoin;
+import textdb.MergeSort;
+import textdb.NestedLoopJoin;
+import textdb.Operator;
+import textdb.Relation;
+import textdb.SortComparator;
+import textdb.TextFileScan;
+import textdb.Tuple;
+import textdb.TupleBatch;
+
+/**
+ * Tests the batch iterator implementations.
+ */
+public class TestTupleBatch {
+
+	// Change this if needed to indicate where the data and output directories are.
+	public static String DATA_DIR = "bin/data/";
+	public static String OUTPUT_DIR = "bin/output/";
+
+	private static Relation r;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		Attribute[] attrs = new Attribute[5];
+
+		attrs[0] = new Attribute("key", Attribute.TYPE_INT, 0);
+		attrs[1] = new Attribute("seq", Attribute.TYPE_INT, 0);
+		attrs[2] = new Attribute("v1", Attribute.TYPE_INT, 0);
+		attrs[3] = new Attribute("v2", Attribute.TYPE_INT, 0);
+		attrs[4] = new Attribute("text", Attribute.TYPE_STRING, 100);
+
+		r = new Relation(attrs);
+	}
+
+	@Test
+	public void testScanBatch() {
+		System.out.println("\n\nTesting text file scan batches.");
+		TextFileScan tblScan = new TextFileScan(DATA_DIR + "smallInputLeft.txt", r);
+		assertEquals(101, compareBatchesWithOutput(tblScan, OUTPUT_DIR + "scanOutput.txt"));
+
+		FastTextFileScan fastScan = new FastTextFileScan(DATA_DIR + "smallInputLeft.txt", r);
+		assertEquals(101, compareBatchesWithOutput(fastScan, OUTPUT_DIR + "scanOutput.txt"));
+	}
+
+	@Test
+	public void testNestedLoopJoinBatch() {
+		System.out.println("\n\nTesting nested loop join batches.");
+		TextFileScan scanLeft = new TextFileScan(DATA_DIR + "mediumInputLeft.txt", r);
+		TextFileScan scanRight = new TextFileScan(DATA_DIR + "mediumInputRight.txt", r);
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+
+		NestedLoopJoin nloop = new NestedLoopJoin(new Operator[] { scanLeft, scanRight }, ep);
+		assertEquals(127, compareBatchesWithOutput(nloop, OUTPUT_DIR + "nestedOutputMedium.txt"));
+	}
+
+	@Test
+	public void testMergeJoinBatch() {
+		System.out.println("\n\nTesting merge join batches over multi-run sorts.");
+		TextFileScan r1Scan = new TextFileScan(DATA_DIR + "largeInputLeft.txt", r);
+		TextFileScan r2Scan = new TextFileScan(DATA_DIR + "largeInputRight.txt", r);
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		EquiJoinPredicate ep = new EquiJoinPredicate(new int[] { 0 }, new int[] { 0 }, EquiJoinPredicate.INT_KEY);
+		MergeSort r1Sort = new MergeSort(r1Scan, 10, 10, sorter);
+		MergeSort r2Sort = new MergeSort(r2Scan, 10, 10, sorter);
+
+		MergeJoin mjoin = new MergeJoin(new Operator[] { r1Sort, r2Sort }, ep);
+		assertEquals(191, compareBatchesWithOutput(mjoin, OUTPUT_DIR + "mergeOutputLarge.txt"));
+	}
+
+	@Test
+	public void testSortBatch() throws Exception {
+		System.out.println("\n\nTesting merge sort batches.");
+		SortComparator sorter = new SortComparator(new int[] { 0 }, new boolean[] { true });
+		MergeSort sort = new MergeSort(new TextFileScan(DATA_DIR + "largeInputLeft.txt", r), 10, 10, sorter);
+
+		sort.init();
+		TupleBatch batch = new TupleBatch(sort.getOutputRelation());
+		int count = 0, last = Integer.MIN_VALUE;
+		while (sort.nextBatch(batch)) {
+			int[] keys = batch.getIntColumn(0);
+			for (int i = 0; i < batch.getSize(); i++) {
+				if (keys[i] < last)
+					fail("Output not sorted at row " + (count + i));
+				last = keys[i];
+			}
+			count += batch.getSize();
+		}
+		sort.close();
+		assertEquals(10000, count);
+	}
+
+	@Test
+	public void testShortRowAfterReset() {
+		System.out.println("\n\nTesting short row added to a reused batch.");
+		TupleBatch batch = new TupleBatch(r, 4);
+		batch.addTuple(new Tuple(new Object[] { 1, 2, 3, 4, "full" }, r));
+		batch.addRow();
+		batch.setInt(1, 2, 7);
+		batch.reset();
+
+		// Values of the previous rows must not show through missing fields
+		batch.addTuple(new Tuple(new Object[] { 5, 6 }, r));
+		int row = batch.addRow();
+		batch.setInt(row, 0, 8);
+		assertEquals(5, batch.getInt(0, 0));
+		assertEquals(6, batch.getObject(0, 1));
+		for (int i = 2; i < 5; i++) {
+			assertNull(batch.getObject(0, i));
+			assertNull(batch.getObject(1, i));
+		}
+		assertNull(batch.getObject(1, 1));
+	}
+
+	@Test
+	public void testSharedTupleReads() throws Exception {
+		System.out.println("\n\nTesting tuples read by many threads at once.");
+		TextFileScan scan = new TextFileScan(DATA_DIR + "smallInputLeft.txt", r);
+		scan.init();
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		Tuple t;
+		while ((t = scan.next()) != null)
+			tuples.add(t);
+		scan.close();
+
+		// Reading values does not box unboxed fields of the tuple
+		Tuple first = tuples.get(0);
+		assertTrue(first.isIntField(0));
+		Object[] vals = first.getValues();
+		assertEquals(first.getObject(0), vals[0]);
+		assertTrue(first.isIntField(0));
+		assertNotSame(vals, first.getValues());
+
+		// Threads reading the same tuples (and creating tuples of a new relation) see the same values
+		Relation shared = new Relation(r);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < 8; i++)
+				results.add(pool.submit(() -> {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					BufferedOutputStream out = new BufferedOutputStream(bytes);
+					for (Tuple tuple : tuples) {
+						Tuple copy = new Tuple(tuple.getValues(), shared);
+						copy.write(out);
+						tuple.write(out);
+					}
+					out.flush();
+					return bytes.toByteArray();
+				}));
+			byte[] expected = results.get(0).get();
+			for (Future<byte[]> f : results)
+				assertArrayEquals(expected, f.get());
+		} finally {
+			pool.shutdown();
+		}
+		for (Tuple tuple : tuples)
+			assertTrue(tuple.isIntField(0));
+	}
+
+	/**
+	 * Compares the batches output by an operator with the expected output stored in a file.
+	 * Returns the number of rows output.
+	 */
+	public static int compareBatchesWithOutput(Operator op, String fileName) {
+		int count = 0;
+		try {
+			BufferedReader reader = FileManager.openTextInputFile(fileName);
+			op.init();
+			TupleBatch batch;
+			while ((batch = op.nextBatch()) != null) {
+				for (int i = 0; i < batch.getSize(); i++) {
+					String fileOutput = reader.ready() ? reader.readLine().trim() : "";
+					assertEquals(fileOutput, batch.getTuple(i).toString().trim());
+					count++;
+				}
+			}
+			assertEquals(false, reader.ready());
+			FileManager.closeFile(reader);
+			op.close();
+		} catch (Exception e) {
+			System.out.println("ERROR: " + e);
+			e.printStackTrace();
+			fail();
+		}
+		assertEquals(count, op.getTuplesOutput());
+		return count;
+	}
+}
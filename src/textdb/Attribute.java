@@ -3,6 +3,7 @@ package textdb;
 import java.sql.Types;
 import java.math.BigDecimal;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Represents a relational attribute.
@@ -24,6 +25,8 @@ public class Attribute {
 	public static int TYPE_DATE = Types.DATE;
 	public static int TYPE_TIMESTAMP = Types.TIMESTAMP;
 
+	public static final int MAX_STRING_BYTES = 255; // Longest string value written by write() (length is one byte)
+
 	public Attribute() {
 		name = "";
 		type = 0;
@@ -77,17 +80,17 @@ public class Attribute {
 			in.read(tmp, 0, 4);
 			return Short.valueOf(Convert.toShort(tmp));
 		} else if (attrType == Attribute.TYPE_DECIMAL) {
-			byte len = (byte) in.read();
+			int len = in.read() & 0xFF;
 			in.read(tmp, 0, len);
 			tmp[len] = 0;
 			return Convert.toBigDecimal(tmp, len);
 		} else if (attrType == Attribute.TYPE_STRING || attrType == Attribute.TYPE_CHAR) {
-			byte len = (byte) in.read();
+			int len = in.read() & 0xFF;
 			in.read(tmp, 0, len);
 			tmp[len] = 0;
 			return Convert.toString(tmp, len);
 		} else if (attrType == Attribute.TYPE_TIMESTAMP) { // Type is java.sql.Timestamp
-			byte len = (byte) in.read();
+			int len = in.read() & 0xFF;
 			in.read(tmp, 0, len);
 			tmp[len] = 0;
 			return java.sql.Timestamp.valueOf(Convert.toString(tmp, len));
@@ -96,6 +99,36 @@ public class Attribute {
 		return null;
 	}
 
+	public static Object read(ByteBuffer in, int attrType) throws IOException {
+		if (attrType == Attribute.TYPE_INT) {
+			return Integer.valueOf(in.getInt());
+		} else if (attrType == Attribute.TYPE_SMALLINT) {
+			return Short.valueOf((short) (in.getInt() >> 16)); // Same as stream read: first 2 of 4 bytes
+		} else if (attrType == Attribute.TYPE_DECIMAL) {
+			return new BigDecimal(readString(in));
+		} else if (attrType == Attribute.TYPE_STRING || attrType == Attribute.TYPE_CHAR) {
+			return readString(in);
+		} else if (attrType == Attribute.TYPE_TIMESTAMP) { // Type is java.sql.Timestamp
+			return java.sql.Timestamp.valueOf(readString(in));
+		}
+
+		return null;
+	}
+
+	private static String readString(ByteBuffer in) {
+		int len = in.get() & 0xFF; // Length byte is unsigned
+		String st;
+		if (in.hasArray()) {
+			st = new String(in.array(), in.arrayOffset() + in.position(), len);
+			in.position(in.position() + len);
+		} else {
+			byte[] tmp = new byte[len];
+			in.get(tmp);
+			st = new String(tmp);
+		}
+		return st;
+	}
+
 	public static void write(BufferedOutputStream out, int attrType, Object obj) throws IOException {
 		byte[] raw = null;
 
@@ -105,15 +138,15 @@ public class Attribute {
 			raw = Convert.toByte(((Short) obj).intValue());
 		} else if (attrType == Attribute.TYPE_DECIMAL) {
 			raw = Convert.toByte(((BigDecimal) obj).toString());
-			out.write(raw.length); // Write out size of decimal string
+			writeLength(out, raw); // Write out size of decimal string
 		} else if (attrType == Attribute.TYPE_STRING || attrType == Attribute.TYPE_CHAR) {
 			raw = Convert.toByte((String) obj);
-			out.write(raw.length); // Write out size of string
+			writeLength(out, raw); // Write out size of string
 		} else if (attrType == Attribute.TYPE_DATE) {
 			System.out.println("Date type.");
 		} else if (attrType == Attribute.TYPE_TIMESTAMP) {
 			raw = Convert.toByte(obj.toString());
-			out.write(raw.length);
+			writeLength(out, raw);
 		}
 
 		if (raw == null) {
@@ -122,6 +155,44 @@ public class Attribute {
 		out.write(raw, 0, raw.length);
 	}
 
+	/*
+	 * Writes the one byte length of a string value (rejecting values longer than MAX_STRING_BYTES).
+	 */
+	private static void writeLength(BufferedOutputStream out, byte[] raw) throws IOException {
+		if (raw.length > MAX_STRING_BYTES)
+			throw new IOException("String value too long: " + raw.length + " bytes (at most " + MAX_STRING_BYTES + ")");
+		out.write(raw.length);
+	}
+
+	/**
+	 * Converts a value (such as a constant in a predicate) to the Java type used for an attribute type. Strings are
+	 * parsed and numbers are converted. Returns null if the value is null.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a number or string is not a whole number in the range of an INT or SMALLINT attribute
+	 */
+	public static Object convert(Object val, int attrType) {
+		if (val == null)
+			return null;
+		String st = val.toString();
+		if (attrType == Attribute.TYPE_INT || attrType == Attribute.TYPE_SMALLINT) {
+			try {
+				BigDecimal num = val instanceof BigDecimal ? (BigDecimal) val : new BigDecimal(st.trim());
+				if (attrType == Attribute.TYPE_INT)
+					return Integer.valueOf(num.intValueExact());
+				return Short.valueOf(num.shortValueExact());
+			} catch (ArithmeticException | NumberFormatException e) {
+				throw new IllegalArgumentException("Value " + st + " does not fit attribute type " + attrType, e);
+			}
+		} else if (attrType == Attribute.TYPE_DECIMAL)
+			return val instanceof BigDecimal ? val : new BigDecimal(st.trim());
+		else if (attrType == Attribute.TYPE_TIMESTAMP)
+			return val instanceof java.sql.Timestamp ? val : java.sql.Timestamp.valueOf(st);
+		else if (attrType == Attribute.TYPE_DATE)
+			return val instanceof java.sql.Date ? val : java.sql.Date.valueOf(st);
+		return st; // STRING, CHAR and other types are compared as strings
+	}
+
 	// Other Methods
 	public static int getByteSize(int attrType, Object obj) {
 		if (attrType == Attribute.TYPE_INT)
@@ -0,0 +1,677 @@
+package textdb;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A disk-based B+-tree index on key attributes of a TEXT data file. Each leaf
+ * entry holds a key and the byte offset of the line of the data file with that
+ * key. Keys are compared with a SortComparator (ascending) on the key
+ * attributes. Duplicate keys are allowed.
+ *
+ * The index file is a sequence of NODE_SIZE byte nodes. Node 0 is a header
+ * holding the root node, tree height, key attributes and types, and the length
+ * and modification time of the data file so an index is not used after its
+ * data file changes. Leaves come next in key order, each linked to the next,
+ * followed by the internal levels up to the root. An internal node holds its
+ * first child followed by (key, child) pairs where the key is the smallest key
+ * in that child's subtree.
+ *
+ * The tree is bulk loaded from the entries of the data file sorted with an
+ * external MergeSort, so only the sort buffer and the first key of each leaf
+ * are kept in memory. An entry must fit in a node. Nodes are read through the
+ * shared BufferPool with a Cursor, which finds the entries with keys in a
+ * range.
+ */
+public class BTreeIndex {
+	static public final int MAGIC = 0x42545831; // "BTX1"
+	static public final int NODE_SIZE = 4096; // Bytes per node
+	static public final int DEFAULT_SORT_BUFFER_SIZE = 100; // Pages of entries buffered by build()'s sort
+	static public final int DEFAULT_SORT_BLOCKING_FACTOR = 100; // Entries per page of build()'s sort
+	static private final byte LEAF = 1; // Node type of leaf
+	static private final byte INTERNAL = 0; // Node type of internal node
+
+	private String fileName; // Index file
+	private String dataFileName; // Data file indexed
+	private Relation dataRelation; // Schema of data file
+	private int[] keyAttrs; // Attributes of data relation indexed
+	private Relation keyRelation; // Schema of keys (key attributes of data relation)
+	private Relation entryRelation; // Schema of entries sorted by build() (key, high and low 32 bits of offset)
+	private SortComparator keyComparator; // Compares key tuples on all key attributes
+	private int root; // Node number of root
+	private int height; // Number of levels (1 if root is a leaf)
+	private long numEntries; // Number of entries (indexed data lines)
+
+	private BTreeIndex(String fileName, String dataFileName, Relation r, int[] keyAttrs) {
+		this.fileName = fileName;
+		this.dataFileName = dataFileName;
+		dataRelation = r;
+		this.keyAttrs = keyAttrs.clone();
+		Attribute[] attrs = new Attribute[keyAttrs.length];
+		for (int i = 0; i < keyAttrs.length; i++)
+			attrs[i] = r.getAttribute(keyAttrs[i]);
+		keyRelation = new Relation(attrs);
+		keyComparator = prefixComparator(keyAttrs.length);
+		Attribute[] entryAttrs = Arrays.copyOf(attrs, attrs.length + 2);
+		entryAttrs[attrs.length] = new Attribute("offsetHigh", Attribute.TYPE_INT, 0);
+		entryAttrs[attrs.length + 1] = new Attribute("offsetLow", Attribute.TYPE_INT, 0);
+		entryRelation = new Relation(entryAttrs);
+	}
+
+	/**
+	 * Builds an index on key attributes of a TEXT data file sorting its entries in DEFAULT_SORT_BUFFER_SIZE pages of
+	 * DEFAULT_SORT_BLOCKING_FACTOR entries.
+	 *
+	 * @param fileName
+	 *            index file to create
+	 * @param dataFileName
+	 *            data file to index (in the format read by TextFileScan)
+	 * @param r
+	 *            schema of data file
+	 * @param keyAttrs
+	 *            attributes to index
+	 * @return index
+	 * @throws IOException
+	 *             if an I/O error occurs or the key of a line does not fit in a node
+	 */
+	public static BTreeIndex build(String fileName, String dataFileName, Relation r, int[] keyAttrs)
+			throws IOException {
+		return build(fileName, dataFileName, r, keyAttrs, DEFAULT_SORT_BUFFER_SIZE, DEFAULT_SORT_BLOCKING_FACTOR);
+	}
+
+	/**
+	 * Builds an index on key attributes of a TEXT data file. The (key, offset) entries of the data file are sorted
+	 * with a MergeSort of bsize pages of bfr entries (duplicate keys stay in file order).
+	 *
+	 * @param fileName
+	 *            index file to create
+	 * @param dataFileName
+	 *            data file to index (in the format read by TextFileScan)
+	 * @param r
+	 *            schema of data file
+	 * @param keyAttrs
+	 *            attributes to index
+	 * @param bsize
+	 *            number of pages buffered by the sort
+	 * @param bfr
+	 *            entries per page
+	 * @return index
+	 * @throws IOException
+	 *             if an I/O error occurs or the key of a line does not fit in a node
+	 */
+	public static BTreeIndex build(String fileName, String dataFileName, Relation r, int[] keyAttrs, int bsize,
+			int bfr) throws IOException {
+		BTreeIndex index = new BTreeIndex(fileName, dataFileName, r, keyAttrs);
+		File dataFile = new File(dataFileName);
+		long dataLength = dataFile.length();
+		long dataModified = dataFile.lastModified();
+
+		int[] keyIdx = new int[keyAttrs.length];
+		boolean[] asc = new boolean[keyAttrs.length];
+		for (int i = 0; i < keyIdx.length; i++) {
+			keyIdx[i] = i;
+			asc[i] = true;
+		}
+		MergeSort entries = new MergeSort(index.new EntryScan(), bsize, bfr, new SortComparator(keyIdx, asc));
+		try (FileChannel ch = FileManager.openOutputChannel(fileName)) {
+			entries.init();
+			index.write(ch, entries, dataLength, dataModified);
+		} catch (IOException | RuntimeException e) {
+			FileManager.deleteFile(fileName);
+			throw e;
+		} finally {
+			entries.close();
+		}
+		return index;
+	}
+
+	/*
+	 * Writes the leaves from the sorted entries, then each internal level, then the header.
+	 */
+	private void write(FileChannel ch, Operator entries, long dataLength, long dataModified) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(NODE_SIZE);
+		DataOutputStream node = new DataOutputStream(bytes);
+		ArrayList<Tuple> levelKeys = new ArrayList<Tuple>(); // First key of each node of level being written
+		ArrayList<Integer> levelNodes = new ArrayList<Integer>(); // Node numbers of level being written
+		int nextNode = 1;
+
+		// Leaves: type, count, next leaf, (key, offset) entries
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		DataOutputStream entryOut = new DataOutputStream(entry);
+		int count = 0;
+		numEntries = 0;
+		Tuple e = entries.next();
+		while (true) {
+			if (e != null) {
+				entry.reset();
+				writeKey(entryOut, e);
+				long offset = offsetOf(e);
+				entryOut.writeLong(offset);
+				entryOut.flush();
+				if (7 + entry.size() > NODE_SIZE)
+					throw new IOException("Key of line at offset " + offset + " of " + dataFileName + " needs "
+							+ (entry.size() - 8) + " bytes but at most " + (NODE_SIZE - 15) + " fit in an index node");
+			}
+			if (count > 0 && (e == null || 7 + bytes.size() + entry.size() > NODE_SIZE)) {
+				int next = e != null ? nextNode + 1 : -1;
+				writeNode(ch, nextNode, LEAF, count, next, bytes);
+				levelNodes.add(nextNode++);
+				count = 0;
+			}
+			if (e == null)
+				break;
+			if (count == 0)
+				levelKeys.add(keyOf(e));
+			entry.writeTo(bytes);
+			count++;
+			numEntries++;
+			e = entries.next();
+		}
+		if (levelNodes.isEmpty()) { // Empty data file: root is an empty leaf
+			writeNode(ch, nextNode, LEAF, 0, -1, bytes);
+			levelNodes.add(nextNode++);
+			levelKeys.add(null);
+		}
+		height = 1;
+
+		// Internal levels: type, count, first child, (key, child) pairs
+		while (levelNodes.size() > 1) {
+			ArrayList<Tuple> parentKeys = new ArrayList<Tuple>();
+			ArrayList<Integer> parentNodes = new ArrayList<Integer>();
+			count = 0;
+			int firstChild = 0;
+			for (int i = 0; i <= levelNodes.size(); i++) {
+				if (i < levelNodes.size()) {
+					entry.reset();
+					writeKey(entryOut, levelKeys.get(i));
+					entryOut.writeInt(levelNodes.get(i));
+					entryOut.flush();
+				}
+				if (count > 0 && (i == levelNodes.size() || 7 + bytes.size() + entry.size() > NODE_SIZE)) {
+					writeNode(ch, nextNode, INTERNAL, count, firstChild, bytes);
+					parentNodes.add(nextNode++);
+					count = 0;
+				}
+				if (i < levelNodes.size()) {
+					if (count == 0) {
+						parentKeys.add(levelKeys.get(i));
+						firstChild = levelNodes.get(i);
+					} else {
+						entry.writeTo(bytes);
+					}
+					count++;
+				}
+			}
+			levelKeys = parentKeys;
+			levelNodes = parentNodes;
+			height++;
+		}
+		root = levelNodes.get(0);
+
+		// Header
+		bytes.reset();
+		node.writeInt(MAGIC);
+		node.writeInt(NODE_SIZE);
+		node.writeInt(root);
+		node.writeInt(height);
+		node.writeLong(numEntries);
+		node.writeLong(dataLength);
+		node.writeLong(dataModified);
+		node.writeInt(keyAttrs.length);
+		for (int i = 0; i < keyAttrs.length; i++) {
+			node.writeInt(keyAttrs[i]);
+			node.writeInt(keyRelation.getAttributeType(i));
+		}
+		node.flush();
+		writeBytes(ch, 0, bytes);
+	}
+
+	/*
+	 * Writes a node: type, count and link (next leaf or first child) followed by entry bytes (which are cleared).
+	 */
+	private static void writeNode(FileChannel ch, int nodeNo, byte type, int count, int link,
+			ByteArrayOutputStream entries) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(NODE_SIZE);
+		buf.put(type);
+		buf.putShort((short) count);
+		buf.putInt(link);
+		buf.put(entries.toByteArray());
+		buf.flip();
+		buf.limit(NODE_SIZE);
+		while (buf.hasRemaining())
+			ch.write(buf, (long) nodeNo * NODE_SIZE + buf.position());
+		entries.reset();
+	}
+
+	private static void writeBytes(FileChannel ch, int nodeNo, ByteArrayOutputStream bytes) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(NODE_SIZE);
+		buf.put(bytes.toByteArray());
+		buf.flip();
+		buf.limit(NODE_SIZE);
+		while (buf.hasRemaining())
+			ch.write(buf, (long) nodeNo * NODE_SIZE + buf.position());
+	}
+
+	/**
+	 * Opens an existing index of a data file.
+	 *
+	 * @param fileName
+	 *            index file
+	 * @param dataFileName
+	 *            data file indexed
+	 * @param r
+	 *            schema of data file
+	 * @return index
+	 * @throws IOException
+	 *             if the index cannot be read or the data file has changed since the index was built
+	 */
+	public static BTreeIndex open(String fileName, String dataFileName, Relation r) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(readNode(fileName, 0)));
+		if (in.readInt() != MAGIC || in.readInt() != NODE_SIZE)
+			throw new IOException(fileName + " is not a B+-tree index");
+		int root = in.readInt();
+		int height = in.readInt();
+		long numEntries = in.readLong();
+		long dataLength = in.readLong();
+		long dataModified = in.readLong();
+		File dataFile = new File(dataFileName);
+		if (dataLength != dataFile.length() || dataModified != dataFile.lastModified())
+			throw new IOException("Index " + fileName + " is out of date with data file " + dataFileName);
+		int[] keyAttrs = new int[in.readInt()];
+		for (int i = 0; i < keyAttrs.length; i++) {
+			keyAttrs[i] = in.readInt();
+			if (keyAttrs[i] >= r.getNumAttributes() || in.readInt() != r.getAttributeType(keyAttrs[i]))
+				throw new IOException("Index " + fileName + " does not match schema of " + dataFileName);
+		}
+
+		BTreeIndex index = new BTreeIndex(fileName, dataFileName, r, keyAttrs);
+		index.root = root;
+		index.height = height;
+		index.numEntries = numEntries;
+		return index;
+	}
+
+	private static byte[] readNode(String fileName, int nodeNo) throws IOException {
+		try (PooledInputStream in = FileManager.openPooledInputStream(fileName, BufferPool.getInstance())) {
+			byte[] node = new byte[NODE_SIZE];
+			readNode(in, nodeNo, node);
+			return node;
+		}
+	}
+
+	private static void readNode(PooledInputStream in, int nodeNo, byte[] node) throws IOException {
+		in.seek((long) nodeNo * NODE_SIZE);
+		int pos = 0;
+		while (pos < NODE_SIZE) {
+			int n = in.read(node, pos, NODE_SIZE - pos);
+			if (n < 0)
+				throw new EOFException("Index node " + nodeNo + " is truncated");
+			pos += n;
+		}
+	}
+
+	private void writeKey(DataOutputStream out, Tuple key) throws IOException {
+		for (int i = 0; i < keyAttrs.length; i++) {
+			Object val = key.getObject(i);
+			out.writeBoolean(val == null);
+			if (val == null)
+				continue;
+			int type = keyRelation.getAttributeType(i);
+			if (type == Attribute.TYPE_INT || type == Attribute.TYPE_SMALLINT)
+				out.writeInt(((Number) val).intValue());
+			else
+				out.writeUTF(val.toString());
+		}
+	}
+
+	private Tuple readKey(DataInputStream in) throws IOException {
+		Object[] vals = new Object[keyAttrs.length];
+		for (int i = 0; i < keyAttrs.length; i++) {
+			if (in.readBoolean())
+				continue;
+			int type = keyRelation.getAttributeType(i);
+			if (type == Attribute.TYPE_INT)
+				vals[i] = in.readInt();
+			else if (type == Attribute.TYPE_SMALLINT)
+				vals[i] = (short) in.readInt();
+			else {
+				String st = in.readUTF();
+				if (type == Attribute.TYPE_DECIMAL)
+					vals[i] = new BigDecimal(st);
+				else if (type == Attribute.TYPE_TIMESTAMP)
+					vals[i] = java.sql.Timestamp.valueOf(st);
+				else if (type == Attribute.TYPE_DATE)
+					vals[i] = java.sql.Date.valueOf(st);
+				else
+					vals[i] = st;
+			}
+		}
+		return new Tuple(vals, keyRelation);
+	}
+
+	/*
+	 * Returns the key of a sorted entry.
+	 */
+	private Tuple keyOf(Tuple entry) {
+		Object[] vals = new Object[keyAttrs.length];
+		for (int i = 0; i < keyAttrs.length; i++)
+			vals[i] = entry.getObject(i);
+		return new Tuple(vals, keyRelation);
+	}
+
+	private long offsetOf(Tuple entry) {
+		return ((long) entry.getInt(keyAttrs.length) << 32) | (entry.getInt(keyAttrs.length + 1) & 0xFFFFFFFFL);
+	}
+
+	/*
+	 * Outputs an entry (key attributes followed by the high and low 32 bits of the line offset) for each line of the
+	 * data file.
+	 */
+	private final class EntryScan extends Operator {
+		private InputStream in; // Data file
+		private LineReader lines; // Reads lines of data file
+		private Tuple line; // Tuple parsed from current line
+		private Tuple pending; // Entry read by hasNext() and not yet returned (null if none)
+
+		EntryScan() {
+			setOutputRelation(entryRelation);
+		}
+
+		public void init() throws IOException {
+			in = FileManager.openInputFile(dataFileName);
+			lines = new LineReader(in, 0);
+			line = new Tuple(dataRelation);
+			pending = null;
+		}
+
+		public Tuple next() throws IOException {
+			Tuple t = pending != null ? pending : readEntry();
+			pending = null;
+			return t;
+		}
+
+		public boolean hasNext() throws IOException {
+			if (pending == null)
+				pending = readEntry();
+			return pending != null;
+		}
+
+		private Tuple readEntry() throws IOException {
+			String st;
+			while ((st = lines.readLine()) != null) {
+				if (st.trim().isEmpty())
+					continue;
+				line.parseText(st);
+				Object[] vals = new Object[keyAttrs.length + 2];
+				for (int i = 0; i < keyAttrs.length; i++)
+					vals[i] = line.getObject(keyAttrs[i]);
+				long offset = lines.getLineOffset();
+				vals[keyAttrs.length] = (int) (offset >>> 32);
+				vals[keyAttrs.length + 1] = (int) offset;
+				incrementTuplesRead();
+				incrementTuplesOutput();
+				return new Tuple(vals, entryRelation);
+			}
+			return null;
+		}
+
+		public void close() throws IOException {
+			if (in != null)
+				in.close();
+			in = null;
+		}
+	}
+
+	/*
+	 * Returns a key tuple holding a search key (which may be a prefix of the key attributes).
+	 */
+	private Tuple searchKey(Object[] key) {
+		if (key.length > keyAttrs.length)
+			throw new IllegalArgumentException("Search key has more than " + keyAttrs.length + " attributes");
+		return new Tuple(Arrays.copyOf(key, keyAttrs.length), keyRelation);
+	}
+
+	/**
+	 * Returns the tighter of two lower bounds (or upper bounds if upper is true) of a search. Bounds may be prefixes of
+	 * the key attributes of different lengths and a null bound is no bound. If the bounds are equal on their common
+	 * prefix the longer bound is tighter.
+	 */
+	public Object[] tighterBound(Object[] a, Object[] b, boolean upper) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		int len = Math.min(a.length, b.length);
+		int cmp = len == 0 ? 0 : prefixComparator(len).compare(searchKey(a), searchKey(b));
+		if (cmp == 0)
+			return a.length >= b.length ? a : b;
+		return (cmp > 0) != upper ? a : b;
+	}
+
+	private SortComparator prefixComparator(int len) {
+		int[] idx = new int[len];
+		boolean[] asc = new boolean[len];
+		for (int i = 0; i < len; i++) {
+			idx[i] = i;
+			asc[i] = true;
+		}
+		SortComparator sc = new SortComparator(idx, asc);
+		sc.setRelation(keyRelation);
+		return sc;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public String getDataFileName() {
+		return dataFileName;
+	}
+
+	public Relation getDataRelation() {
+		return dataRelation;
+	}
+
+	public int[] getKeyAttributes() {
+		return keyAttrs.clone();
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public long getNumEntries() {
+		return numEntries;
+	}
+
+	/**
+	 * Opens a cursor for finding entries. The cursor must be closed.
+	 */
+	public Cursor openCursor() throws IOException {
+		return new Cursor();
+	}
+
+	/**
+	 * Finds the data file offsets of entries with keys in a range in key order. A cursor reads nodes through the
+	 * shared BufferPool and may be used for many searches.
+	 */
+	public class Cursor implements Closeable {
+		private PooledInputStream in; // Stream reading index file
+		private byte[] node; // Bytes of node being read
+		private Tuple[] keys; // Keys of current leaf
+		private long[] offsets; // Data offsets of current leaf
+		private int count; // Number of entries in current leaf
+		private int pos; // Next entry in current leaf
+		private int nextLeaf; // Node number of next leaf (-1 if none)
+		private Tuple high; // Largest key searched for (null if no upper bound)
+		private SortComparator highComparator; // Compares keys with high
+		private long nodesRead; // Number of nodes read
+
+		private Cursor() throws IOException {
+			in = FileManager.openPooledInputStream(fileName, BufferPool.getInstance());
+			node = new byte[NODE_SIZE];
+			keys = new Tuple[0];
+			offsets = new long[0];
+		}
+
+		/**
+		 * Starts a search for entries with keys between low and high inclusive. A key may be a prefix of the key
+		 * attributes. A bound is ignored if it is null.
+		 */
+		public void find(Object[] low, Object[] high) throws IOException {
+			this.high = high == null ? null : searchKey(high);
+			highComparator = high == null ? null : prefixComparator(high.length);
+			Tuple lowKey = low == null ? null : searchKey(low);
+			SortComparator lowComparator = low == null ? null : prefixComparator(low.length);
+
+			// Descend to the leftmost leaf that may hold low: the last child whose smallest key is below low
+			int nodeNo = root;
+			for (int level = height; level > 1; level--) {
+				DataInputStream din = loadNode(nodeNo, INTERNAL);
+				int children = count;
+				int child = nextLeaf; // First child
+				for (int i = 1; i < children; i++) {
+					Tuple key = readKey(din);
+					int c = din.readInt();
+					if (lowKey == null || lowComparator.compare(key, lowKey) >= 0)
+						break;
+					child = c;
+				}
+				nodeNo = child;
+			}
+			loadLeaf(nodeNo);
+
+			// Skip entries below low
+			while (lowKey != null && nextEntry() && lowComparator.compare(keys[pos], lowKey) < 0)
+				pos++;
+		}
+
+		/**
+		 * Starts a search for entries equal to a key (or key prefix).
+		 */
+		public void find(Object[] key) throws IOException {
+			find(key, key);
+		}
+
+		/**
+		 * Returns the data file offset of the next entry in the search range or -1 if there are no more.
+		 */
+		public long next() throws IOException {
+			if (!nextEntry())
+				return -1;
+			if (high != null && highComparator.compare(keys[pos], high) > 0) {
+				count = 0; // Entries are in key order so none of the rest are in range
+				nextLeaf = -1;
+				return -1;
+			}
+			return offsets[pos++];
+		}
+
+		/*
+		 * Moves to the next leaf if the current leaf has been read. Returns false if there are no more entries.
+		 */
+		private boolean nextEntry() throws IOException {
+			while (pos >= count) {
+				if (nextLeaf < 0)
+					return false;
+				loadLeaf(nextLeaf);
+			}
+			return true;
+		}
+
+		private void loadLeaf(int nodeNo) throws IOException {
+			DataInputStream din = loadNode(nodeNo, LEAF);
+			if (keys.length < count) {
+				keys = new Tuple[count];
+				offsets = new long[count];
+			}
+			for (int i = 0; i < count; i++) {
+				keys[i] = readKey(din);
+				offsets[i] = din.readLong();
+			}
+			pos = 0;
+		}
+
+		/*
+		 * Reads a node setting count and nextLeaf (next leaf or first child) and returns a stream over its entries.
+		 */
+		private DataInputStream loadNode(int nodeNo, byte type) throws IOException {
+			readNode(in, nodeNo, node);
+			nodesRead++;
+			ByteBuffer buf = ByteBuffer.wrap(node);
+			if (buf.get() != type)
+				throw new IOException("Index node " + nodeNo + " has wrong type");
+			count = buf.getShort() & 0xFFFF;
+			nextLeaf = buf.getInt();
+			return new DataInputStream(new ByteArrayInputStream(node, 7, NODE_SIZE - 7));
+		}
+
+		/**
+		 * Returns the number of index nodes read (from the buffer pool or disk).
+		 */
+		public long getNodesRead() {
+			return nodesRead;
+		}
+
+		/**
+		 * Returns the number of index pages read from disk.
+		 */
+		public long getDiskPagesRead() {
+			return in.getDiskPagesRead();
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads lines of a text file from a byte stream and tracks the offset of each line.
+	 */
+	static class LineReader {
+		private InputStream in; // Stream being read
+		private long offset; // Offset of next byte of stream
+		private long lineOffset; // Offset of last line read
+		private ByteArrayOutputStream line; // Bytes of line being read
+
+		LineReader(InputStream in, long offset) {
+			this.in = in;
+			this.offset = offset;
+			line = new ByteArrayOutputStream(256);
+		}
+
+		/**
+		 * Returns the next line (without its line terminator) or null at end of stream.
+		 */
+		String readLine() throws IOException {
+			line.reset();
+			lineOffset = offset;
+			int b;
+			while ((b = in.read()) >= 0) {
+				offset++;
+				if (b == '\n')
+					break;
+				line.write(b);
+			}
+			if (b < 0 && line.size() == 0)
+				return null;
+			String st = line.toString();
+			return st.endsWith("\r") ? st.substring(0, st.length() - 1) : st;
+		}
+
+		/**
+		 * Sets the offset of the next byte of the stream (after the stream has been repositioned).
+		 */
+		void setOffset(long offset) {
+			this.offset = offset;
+		}
+
+		long getLineOffset() {
+			return lineOffset;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package textdb;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads tuples written by BinaryTupleWriter. The header is checked against the
+ * expected relation once when the reader is created. Fields are decoded in place
+ * from one scratch buffer per stream.
+ */
+public class BinaryTupleReader {
+	private InputStream in; // Stream being read
+	private Relation relation; // Schema of tuples read
+	private int[] types; // Attribute types (cached from relation)
+	private int numFields; // Number of fields per record
+	private byte[] scratch; // Reusable buffer for decoding a field or NULL bitmap
+	private long bytesRead; // Number of bytes read from stream
+
+	public BinaryTupleReader(InputStream in, Relation r) throws IOException {
+		this.in = in;
+		readHeader(r);
+	}
+
+	private void readHeader(Relation r) throws IOException {
+		relation = r;
+		numFields = r.getNumAttributes();
+		types = new int[numFields];
+		scratch = new byte[Math.max(256, (numFields + 7) / 8)];
+
+		if (!readFully(4) || toInt(0) != BinaryTupleWriter.MAGIC)
+			throw new IOException("Not a binary tuple file");
+		if (!readFully(4) || toInt(0) != numFields)
+			throw new IOException("Binary tuple file does not have " + numFields + " fields");
+		for (int i = 0; i < numFields; i++) {
+			types[i] = r.getAttributeType(i);
+			if (!readFully(4) || toInt(0) != types[i])
+				throw new IOException("Binary tuple file type mismatch for field " + i);
+		}
+	}
+
+	public Relation getRelation() {
+		return relation;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Returns the number of pages read from disk if reading through the buffer pool, otherwise 0.
+	 */
+	public long getDiskPagesRead() {
+		return in instanceof PooledInputStream ? ((PooledInputStream) in).getDiskPagesRead() : 0;
+	}
+
+	/**
+	 * Reads the next record into the values of a tuple (which must have an array
+	 * of numFields values). INT and SMALLINT values are not boxed if the tuple
+	 * stores them unboxed.
+	 *
+	 * @param t
+	 *            tuple to read into
+	 * @return true if success, false if at end of stream
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public boolean read(Tuple t) throws IOException {
+		int bitmapLen = (numFields + 7) / 8;
+		if (!readFully(bitmapLen))
+			return false;
+
+		long nulls = 0;
+		for (int i = 0; i < bitmapLen && i < 8; i++)
+			nulls |= (long) (scratch[i] & 0xFF) << (i * 8);
+		boolean[] isNull = null;
+		if (bitmapLen > 8) { // Rare wide schema
+			isNull = new boolean[numFields];
+			for (int i = 0; i < numFields; i++)
+				isNull[i] = (scratch[i >> 3] & (1 << (i & 7))) != 0;
+		}
+
+		for (int i = 0; i < numFields; i++) {
+			if (isNull != null ? isNull[i] : (nulls & (1L << i)) != 0) {
+				t.setValue(i, null);
+				continue;
+			}
+
+			int type = types[i];
+			if (type == Attribute.TYPE_INT) {
+				t.setInt(i, readInt());
+			} else if (type == Attribute.TYPE_SMALLINT) {
+				t.setInt(i, (short) readShort());
+			} else {
+				String st = readString();
+				if (type == Attribute.TYPE_STRING || type == Attribute.TYPE_CHAR)
+					t.setValue(i, st);
+				else if (type == Attribute.TYPE_DECIMAL)
+					t.setValue(i, new BigDecimal(st));
+				else if (type == Attribute.TYPE_TIMESTAMP)
+					t.setValue(i, java.sql.Timestamp.valueOf(st));
+				else if (type == Attribute.TYPE_DATE)
+					t.setValue(i, java.sql.Date.valueOf(st));
+				else
+					throw new IOException("Unsupported attribute type: " + type);
+			}
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private int readInt() throws IOException {
+		readRecord(4);
+		return toInt(0);
+	}
+
+	private int readShort() throws IOException {
+		readRecord(2);
+		return toShort(0);
+	}
+
+	private String readString() throws IOException {
+		int len = readShort();
+		if (len > scratch.length)
+			scratch = new byte[len];
+		readRecord(len);
+		return new String(scratch, 0, len, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Reads len bytes into scratch. Returns false if the input is already at its end.
+	 */
+	private boolean readFully(int len) throws IOException {
+		int pos = 0;
+		while (pos < len) {
+			int n = in.read(scratch, pos, len - pos);
+			if (n < 0) {
+				if (pos == 0)
+					return false;
+				throw new EOFException("Truncated binary tuple record");
+			}
+			pos += n;
+		}
+		bytesRead += len;
+		return true;
+	}
+
+	/*
+	 * Reads len bytes of a record that has already been started.
+	 */
+	private void readRecord(int len) throws IOException {
+		if (!readFully(len) && len > 0)
+			throw new EOFException("Truncated binary tuple record");
+	}
+
+	private int toInt(int off) {
+		return ((scratch[off] & 0xFF) << 24) | ((scratch[off + 1] & 0xFF) << 16) | ((scratch[off + 2] & 0xFF) << 8)
+				| (scratch[off + 3] & 0xFF);
+	}
+
+	private int toShort(int off) {
+		return ((scratch[off] & 0xFF) << 8) | (scratch[off + 1] & 0xFF);
+	}
+}
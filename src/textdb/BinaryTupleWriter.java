@@ -0,0 +1,186 @@
+package textdb;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes tuples of one relation to a binary stream. The schema is written once
+ * in a header at the start of the stream so records only contain a NULL bitmap
+ * followed by the field data. INT and SMALLINT fields are fixed width (4 and 2
+ * bytes). Other fields are stored as a 2 byte length and the bytes of their
+ * string form. All encoding goes through one scratch buffer per stream. The
+ * output is either a buffered stream or a FileChannel written one buffer at a
+ * time.
+ *
+ * Stream format: magic numFields type[] record*
+ * Record format: isNull[] (1 bit per field) fld1Data ... fldNData
+ */
+public class BinaryTupleWriter {
+	static public final int MAGIC = 0x54444231; // "TDB1"
+	static public final int CHANNEL_BUFFER_SIZE = 65536; // Bytes buffered before a FileChannel write
+
+	private BufferedOutputStream out; // Stream being written (null if writing to channel)
+	private FileChannel channel; // Channel being written (null if writing to stream)
+	private ByteBuffer channelBuffer; // Bytes not yet written to channel
+	private Relation relation; // Schema of tuples written
+	private int[] types; // Attribute types (cached from relation)
+	private int numFields; // Number of fields per record
+	private byte[] scratch; // Reusable buffer for encoding a field or NULL bitmap
+	private long bytesWritten; // Number of bytes written (including header)
+
+	public BinaryTupleWriter(BufferedOutputStream out, Relation r) throws IOException {
+		this.out = out;
+		writeHeader(r);
+	}
+
+	public BinaryTupleWriter(FileChannel ch, Relation r) throws IOException {
+		channel = ch;
+		channelBuffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+		writeHeader(r);
+	}
+
+	private void writeHeader(Relation r) throws IOException {
+		relation = r;
+		numFields = r.getNumAttributes();
+		types = new int[numFields];
+		scratch = new byte[Math.max(256, (numFields + 7) / 8)];
+
+		writeInt(MAGIC);
+		writeInt(numFields);
+		for (int i = 0; i < numFields; i++) {
+			types[i] = r.getAttributeType(i);
+			writeInt(types[i]);
+		}
+	}
+
+	public Relation getRelation() {
+		return relation;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public void write(Tuple t) throws IOException {
+		// NULL bitmap
+		int bitmapLen = (numFields + 7) / 8;
+		for (int i = 0; i < bitmapLen; i++)
+			scratch[i] = 0;
+		for (int i = 0; i < numFields; i++)
+			if (t.isNull(i))
+				scratch[i >> 3] |= (byte) (1 << (i & 7));
+		put(scratch, 0, bitmapLen);
+
+		for (int i = 0; i < numFields; i++) {
+			int type = types[i];
+			if (t.isIntField(i)) { // Unboxed INT or SMALLINT value
+				if (type == Attribute.TYPE_INT)
+					writeInt(t.getInt(i));
+				else
+					writeShort(t.getInt(i));
+				continue;
+			}
+
+			Object val = t.getObject(i);
+			if (val == null)
+				continue;
+
+			if (type == Attribute.TYPE_INT)
+				writeInt(((Number) val).intValue());
+			else if (type == Attribute.TYPE_SMALLINT)
+				writeShort(((Number) val).intValue());
+			else if (type == Attribute.TYPE_STRING || type == Attribute.TYPE_CHAR)
+				writeString((String) val);
+			else if (type == Attribute.TYPE_DECIMAL)
+				writeString(((BigDecimal) val).toString());
+			else if (type == Attribute.TYPE_TIMESTAMP || type == Attribute.TYPE_DATE)
+				writeString(val.toString());
+			else
+				throw new IOException("Unsupported attribute type: " + type);
+		}
+	}
+
+	public void flush() throws IOException {
+		if (channel == null) {
+			out.flush();
+			return;
+		}
+		channelBuffer.flip();
+		while (channelBuffer.hasRemaining())
+			channel.write(channelBuffer);
+		channelBuffer.clear();
+	}
+
+	public void close() throws IOException {
+		if (channel == null) {
+			out.close();
+			return;
+		}
+		flush();
+		channel.close();
+	}
+
+	private void put(byte[] b, int off, int len) throws IOException {
+		bytesWritten += len;
+		if (channel == null) {
+			out.write(b, off, len);
+			return;
+		}
+		while (len > 0) {
+			if (!channelBuffer.hasRemaining())
+				flush();
+			int n = Math.min(len, channelBuffer.remaining());
+			channelBuffer.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void writeInt(int v) throws IOException {
+		scratch[0] = (byte) (v >>> 24);
+		scratch[1] = (byte) (v >>> 16);
+		scratch[2] = (byte) (v >>> 8);
+		scratch[3] = (byte) v;
+		put(scratch, 0, 4);
+	}
+
+	private void writeShort(int v) throws IOException {
+		scratch[0] = (byte) (v >>> 8);
+		scratch[1] = (byte) v;
+		put(scratch, 0, 2);
+	}
+
+	/*
+	 * Writes a 2 byte length followed by the UTF-8 bytes of the string. ASCII
+	 * strings (the common case) are encoded directly into the scratch buffer.
+	 */
+	private void writeString(String st) throws IOException {
+		int len = st.length();
+		if (len + 2 <= scratch.length) {
+			boolean ascii = true;
+			for (int i = 0; i < len; i++) {
+				char c = st.charAt(i);
+				if (c >= 0x80) {
+					ascii = false;
+					break;
+				}
+				scratch[i + 2] = (byte) c;
+			}
+			if (ascii) {
+				scratch[0] = (byte) (len >>> 8);
+				scratch[1] = (byte) len;
+				put(scratch, 0, len + 2);
+				return;
+			}
+		}
+
+		byte[] raw = st.getBytes(StandardCharsets.UTF_8);
+		if (raw.length > 0xFFFF)
+			throw new IOException("String value too long: " + raw.length + " bytes");
+		writeShort(raw.length);
+		put(raw, 0, raw.length);
+	}
+}
@@ -0,0 +1,25 @@
+package textdb;
+
+import java.io.IOException;
+
+/**
+ * Exchange that sends every tuple to every port (e.g. to join a small input
+ * with each partition of a large repartitioned input). Each port after the
+ * first gets its own copy of the tuple so pipelines never share a tuple.
+ */
+public class BroadcastExchange extends Exchange {
+
+	public BroadcastExchange(Operator in, int numPorts) {
+		super(in, numPorts);
+	}
+
+	public BroadcastExchange(Operator in, int numPorts, int chunks) {
+		super(in, numPorts, chunks);
+	}
+
+	protected void route(Tuple t) throws IOException {
+		emit(0, t);
+		for (int i = 1; i < getNumPorts(); i++)
+			emit(i, new Tuple(t));
+	}
+}
@@ -0,0 +1,245 @@
+package textdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Process-wide cache of file pages shared by all scans. Pages are PAGE_SIZE
+ * bytes and are identified by file, file version (length and modification
+ * time when the file was opened) and page number, so a file that is rewritten
+ * is never read from stale pages. The cache is bounded in bytes and evicts
+ * pages with the CLOCK algorithm. Files are read through the cache with
+ * PooledInputStream (see FileManager.openPooledInputStream()).
+ *
+ * Disk reads happen outside the pool lock so scans of different pages do not
+ * wait for each other. A capacity of 0 disables the cache.
+ *
+ * The pool is not part of any operator's BUFFER_SIZE: it is a separate,
+ * process-wide memory budget (DEFAULT_CAPACITY unless set with setCapacity(),
+ * e.g. to 0 to run queries within operator buffers only). Operators count the
+ * pages they read whether or not they are cached, so only their disk page
+ * reads depend on the pool.
+ */
+public class BufferPool {
+	static public final int PAGE_SIZE = 65536; // Bytes per cached page
+	static public final long DEFAULT_CAPACITY = 64L * 1024 * 1024; // Default cache size in bytes
+
+	static private final BufferPool instance = new BufferPool(DEFAULT_CAPACITY);
+
+	private int maxFrames; // Maximum number of pages cached
+	private ArrayList<Frame> frames; // Cached pages in clock order
+	private HashMap<PageId, Frame> table; // Cached pages by id
+	private int hand; // Clock hand (next frame to consider for eviction)
+	private long hits; // Page requests found in cache
+	private long misses; // Page requests read from disk
+	private long evictions; // Pages evicted
+
+	public BufferPool(long capacityBytes) {
+		frames = new ArrayList<Frame>();
+		table = new HashMap<PageId, Frame>();
+		setCapacity(capacityBytes);
+	}
+
+	/**
+	 * Returns the shared buffer pool.
+	 */
+	public static BufferPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the cache size in bytes (evicting pages if it shrinks). A capacity of 0 disables the cache.
+	 */
+	public synchronized void setCapacity(long capacityBytes) {
+		maxFrames = (int) Math.min(Integer.MAX_VALUE, Math.max(0, capacityBytes) / PAGE_SIZE);
+		if (capacityBytes > 0 && maxFrames == 0)
+			maxFrames = 1;
+		while (frames.size() > maxFrames)
+			removeFrame(frames.size() - 1);
+		if (hand >= frames.size())
+			hand = 0;
+	}
+
+	public synchronized long getCapacity() {
+		return (long) maxFrames * PAGE_SIZE;
+	}
+
+	public synchronized boolean isEnabled() {
+		return maxFrames > 0;
+	}
+
+	/**
+	 * Returns a page of a file reading it from disk if it is not cached.
+	 *
+	 * @param id
+	 *            page id
+	 * @param ch
+	 *            channel to read page from if not cached
+	 * @param fileLength
+	 *            length of file in bytes
+	 * @param stream
+	 *            stream requesting page (its disk read count is incremented on a miss)
+	 * @return page bytes (shorter than PAGE_SIZE for the last page of a file), must not be modified
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	byte[] getPage(PageId id, FileChannel ch, long fileLength, PooledInputStream stream) throws IOException {
+		synchronized (this) {
+			Frame f = table.get(id);
+			if (f != null) {
+				f.referenced = true;
+				hits++;
+				return f.data;
+			}
+			misses++;
+		}
+
+		byte[] data = readPage(ch, id.page, fileLength);
+		stream.diskPagesRead++;
+
+		synchronized (this) {
+			Frame f = table.get(id);
+			if (f != null) // Read by another scan at the same time
+				return f.data;
+			if (maxFrames > 0)
+				addFrame(new Frame(id, data));
+		}
+		return data;
+	}
+
+	private static byte[] readPage(FileChannel ch, long page, long fileLength) throws IOException {
+		long start = page * PAGE_SIZE;
+		int len = (int) Math.min(PAGE_SIZE, fileLength - start);
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		while (buf.hasRemaining()) {
+			if (ch.read(buf, start + buf.position()) < 0)
+				throw new IOException("File is shorter than when it was opened");
+		}
+		return buf.array();
+	}
+
+	/*
+	 * Adds a frame evicting the first unreferenced frame found by the clock hand if the pool is full.
+	 */
+	private void addFrame(Frame f) {
+		if (frames.size() < maxFrames) {
+			frames.add(f);
+		} else {
+			while (true) {
+				Frame victim = frames.get(hand);
+				if (!victim.referenced)
+					break;
+				victim.referenced = false;
+				hand = (hand + 1) % frames.size();
+			}
+			table.remove(frames.get(hand).id);
+			frames.set(hand, f);
+			evictions++;
+			hand = (hand + 1) % frames.size();
+		}
+		table.put(f.id, f);
+	}
+
+	private void removeFrame(int i) {
+		Frame f = frames.get(i);
+		table.remove(f.id);
+		int last = frames.size() - 1;
+		frames.set(i, frames.get(last)); // Order of frames only matters for the clock hand
+		frames.remove(last);
+		if (hand > last - 1)
+			hand = 0;
+	}
+
+	/**
+	 * Removes all cached pages of a file (called when a file is deleted).
+	 */
+	public synchronized void invalidate(String fileName) {
+		String path = canonicalPath(fileName);
+		for (int i = frames.size() - 1; i >= 0; i--)
+			if (frames.get(i).id.path.equals(path))
+				removeFrame(i);
+	}
+
+	/**
+	 * Removes all cached pages and resets statistics.
+	 */
+	public synchronized void clear() {
+		frames.clear();
+		table.clear();
+		hand = 0;
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int getPagesCached() {
+		return frames.size();
+	}
+
+	static String canonicalPath(String fileName) {
+		try {
+			return new File(fileName).getCanonicalPath();
+		} catch (IOException e) {
+			return new File(fileName).getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Identifies a page of a version of a file.
+	 */
+	static final class PageId {
+		final String path; // Canonical path of file
+		final long length; // File length when opened
+		final long modified; // File modification time when opened
+		final long page; // Page number in file
+
+		PageId(String path, long length, long modified, long page) {
+			this.path = path;
+			this.length = length;
+			this.modified = modified;
+			this.page = page;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof PageId))
+				return false;
+			PageId p = (PageId) o;
+			return page == p.page && length == p.length && modified == p.modified && path.equals(p.path);
+		}
+
+		public int hashCode() {
+			return (path.hashCode() * 31 + Long.hashCode(page)) * 31 + Long.hashCode(length ^ modified);
+		}
+	}
+
+	/**
+	 * A cached page.
+	 */
+	private static final class Frame {
+		final PageId id; // Page in frame
+		final byte[] data; // Page bytes
+		boolean referenced; // Clock reference bit
+
+		Frame(PageId id, byte[] data) {
+			this.id = id;
+			this.data = data;
+			referenced = true;
+		}
+	}
+}
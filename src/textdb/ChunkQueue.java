@@ -0,0 +1,146 @@
+package textdb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of chunks of tuples filled by one or more background
+ * threads and read by one consumer (used by PrefetchOperator and
+ * GatherExchange). Each producer reads an operator into chunks with fill(),
+ * which adds END once the operator ends. close() makes producers waiting for
+ * space give up so their threads can be joined. Producer threads are never
+ * interrupted as an interrupt would close a FileChannel an input is reading.
+ */
+final class ChunkQueue {
+	static final int CHUNK_SIZE = 256; // Tuples handed to the consumer at a time
+	static final Tuple[] END = new Tuple[0]; // Marks the end of one producer's input
+
+	private final ArrayBlockingQueue<Tuple[]> queue; // Chunks waiting for the consumer
+	private volatile boolean closed; // True once close() has been called
+	private volatile Throwable error; // First exception thrown by a producer's input
+
+	ChunkQueue(int chunks) {
+		queue = new ArrayBlockingQueue<Tuple[]>(Math.max(1, chunks));
+	}
+
+	/**
+	 * Reads an initialized operator into chunks until it ends, throws or close() is called, then adds END. An
+	 * exception thrown by the operator is kept for the consumer (see rethrow()).
+	 */
+	void fill(Operator op) {
+		try {
+			while (!closed) {
+				Tuple[] c = new Tuple[CHUNK_SIZE];
+				int n = 0;
+				Tuple t;
+				while (n < CHUNK_SIZE && (t = op.next()) != null)
+					c[n++] = t;
+				if (n > 0 && !offer(n == CHUNK_SIZE ? c : Arrays.copyOf(c, n)))
+					return;
+				if (n < CHUNK_SIZE)
+					break;
+			}
+		} catch (Throwable e) {
+			setError(e);
+		}
+		offer(END);
+	}
+
+	/**
+	 * Ends a producer's input because of an exception (e.g. thrown by the input's init()).
+	 */
+	void end(Throwable e) {
+		setError(e);
+		offer(END);
+	}
+
+	private synchronized void setError(Throwable e) {
+		if (error == null)
+			error = e;
+	}
+
+	/*
+	 * Adds a chunk to the queue waiting while it is full. Returns false if close() was called while waiting.
+	 */
+	private boolean offer(Tuple[] c) {
+		try {
+			while (!closed)
+				if (queue.offer(c, 10, TimeUnit.MILLISECONDS))
+					return true;
+		} catch (InterruptedException e) {
+			// Producer threads are not interrupted
+		}
+		return false;
+	}
+
+	/**
+	 * Waits for the next chunk (END if a producer has ended).
+	 */
+	Tuple[] take() throws IOException {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for tuples from background thread", e);
+		}
+	}
+
+	Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * Throws the exception kept from a producer (if any), wrapped in an IOException with the message if it is
+	 * checked and not an IOException.
+	 */
+	void rethrow(String message) throws IOException {
+		rethrow(error, message);
+	}
+
+	static void rethrow(Throwable e, String message) throws IOException {
+		if (e instanceof IOException)
+			throw (IOException) e;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		if (e != null)
+			throw new IOException(message, e);
+	}
+
+	/**
+	 * Makes producers stop at their next chunk and drops queued chunks.
+	 */
+	void close() {
+		closed = true;
+		queue.clear();
+	}
+
+	/**
+	 * Starts a daemon thread.
+	 */
+	static Thread start(Runnable body, String name) {
+		Thread t = new Thread(body, name);
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	/**
+	 * Waits for a thread to finish (an interrupt of the caller is kept for later).
+	 */
+	static void join(Thread t) {
+		boolean interrupted = false;
+		while (t.isAlive()) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
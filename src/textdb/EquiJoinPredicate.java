@@ -2,13 +2,16 @@ package textdb;
 
 /**
  * Used by hash and merge based joins to express an equi-join between tuples on
- * one or more pairs of attributes.
+ * one or more pairs of attributes. The key type selects a specialized
+ * KeyComparator: INT_KEY keys are compared as ints and STRING_KEY keys as
+ * Strings, so all key attributes must be of that type.
  */
 public class EquiJoinPredicate {
 	private int[] attr1Locs; // Attribute indexes in relation 1
 	private int[] attr2Locs; // Attribute indexes in relation 2
 	private int numAttrs; // Number of attributes being compared
 	private int keyType; // Type of key
+	private KeyComparator keyComp; // Comparator specialized for key type and number of attributes
 
 	static public int OBJECT_KEY = 3;
 	static public int STRING_KEY = 2;
@@ -19,6 +22,7 @@ public class EquiJoinPredicate {
 		attr2Locs = idx2;
 		numAttrs = idx1.length;
 		keyType = ktype;
+		keyComp = KeyComparator.forKeys(idx1, idx2, ktype, null);
 	}
 
 	public EquiJoinPredicate inversePredicate() {
@@ -44,22 +48,19 @@ public class EquiJoinPredicate {
 	}
 
 	public boolean isEqual(Tuple t1, Tuple t2) {
-		for (int i = 0; i < numAttrs; i++) {
-			if (!t1.getObject(attr1Locs[i]).equals(t2.getObject(attr2Locs[i])))
-				return false;
-		}
-		return true;
+		return keyComp.isEqual(t1, t2);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public int compare(Tuple t1, Tuple t2) {
-		for (int i = 0; i < numAttrs; i++) {
-			int val = ((Comparable) t1.getObject(attr1Locs[i])).compareTo(t2.getObject(attr2Locs[i]));
+		return keyComp.compare(t1, t2);
+	}
 
-			if (val != 0)
-				return val;
-		}
-		return 0;
+	/**
+	 * Returns the comparator used by compare() and isEqual(). Joins can keep it in a
+	 * local variable so their inner loops call one concrete comparator class.
+	 */
+	public KeyComparator getKeyComparator() {
+		return keyComp;
 	}
 
 	public int getNumAttr() {
@@ -0,0 +1,391 @@
+package textdb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Producer side of an exchange (in the style of the Volcano exchange
+ * operator). A background thread reads the input operator and routes each
+ * tuple to one or more of N ports. Each port is an Operator that can be the
+ * input of a separate pipeline running on its own thread (see GatherExchange).
+ * Subclasses decide where tuples go: RepartitionExchange sends each tuple to
+ * the port for the hash of its key and BroadcastExchange sends every tuple to
+ * every port.
+ *
+ * The input is initialized by the background thread when the first port is
+ * initialized, and closed once every port has been closed (a port closed
+ * without being initialized, e.g. because its pipeline failed, counts as
+ * read). Each port can be read once per run (an operator that rescans its
+ * input, such as a block nested-loop join, must not read a port directly).
+ *
+ * At most a given number of chunks are kept in memory for each port. Further
+ * chunks for a port whose pipeline is not keeping up are written to temporary
+ * files and read back in order, so the background thread never waits for a
+ * consumer: a pipeline that reads two exchanges in a data-dependent order
+ * cannot deadlock with another pipeline, and memory use stays bounded.
+ */
+public abstract class Exchange {
+	static public final int CHUNK_SIZE = 256; // Tuples sent to a port at a time
+	static public final int DEFAULT_QUEUE_CHUNKS = 4; // Default chunks kept in memory per port
+
+	static private final Tuple[] END = new Tuple[0]; // Marks the end of the input in a port queue
+
+	private Operator child; // Input being distributed
+	private Port[] ports; // Output ports
+	private int queueChunks; // Maximum chunks kept in memory per port
+	private Thread producer; // Background thread reading child
+	private CountDownLatch started; // Released when child has been initialized
+	private volatile boolean stopped; // True once all ports are closed
+	private volatile Throwable error; // Exception thrown by child on background thread
+	private int tuplesRead; // Tuples read from child
+	private int chunksSpilled; // Chunks written to temporary files
+	private long bytesSpilled; // Bytes written to temporary files
+
+	protected Exchange(Operator in, int numPorts) {
+		this(in, numPorts, DEFAULT_QUEUE_CHUNKS);
+	}
+
+	protected Exchange(Operator in, int numPorts, int chunks) {
+		child = in;
+		queueChunks = Math.max(1, chunks);
+		ports = new Port[Math.max(1, numPorts)];
+		for (int i = 0; i < ports.length; i++)
+			ports[i] = new Port(i);
+	}
+
+	/**
+	 * Routes a tuple read from the input by calling emit() for each port it goes to.
+	 */
+	protected abstract void route(Tuple t) throws IOException;
+
+	public Operator getPort(int i) {
+		return ports[i];
+	}
+
+	public int getNumPorts() {
+		return ports.length;
+	}
+
+	public Operator getInput() {
+		return child;
+	}
+
+	public synchronized int getTuplesRead() {
+		return tuplesRead;
+	}
+
+	/**
+	 * Returns the number of chunks written to temporary files because a port's pipeline was not keeping up.
+	 */
+	public synchronized int getChunksSpilled() {
+		return chunksSpilled;
+	}
+
+	public synchronized long getBytesSpilled() {
+		return bytesSpilled;
+	}
+
+	/**
+	 * Adds a tuple to the pending chunk of a port (tuples for closed ports are dropped).
+	 */
+	protected void emit(int port, Tuple t) throws IOException {
+		Port p = ports[port];
+		if (p.closed)
+			return;
+		p.pending[p.pendingCount++] = t;
+		if (p.pendingCount == CHUNK_SIZE) {
+			p.offer(p.pending);
+			p.pending = new Tuple[CHUNK_SIZE];
+			p.pendingCount = 0;
+		}
+	}
+
+	/*
+	 * Called when a port is initialized: starts the background thread for the first port and waits until the input
+	 * has been initialized.
+	 */
+	private void open(Port p) throws IOException {
+		CountDownLatch latch;
+		synchronized (this) {
+			if (p.opened)
+				throw new IOException("Exchange port " + p.index + " can only be read once per run");
+			p.opened = true;
+			p.closed = false;
+			if (producer == null) {
+				stopped = false;
+				error = null;
+				tuplesRead = 0;
+				started = new CountDownLatch(1);
+				for (Port q : ports)
+					q.reset();
+				producer = ChunkQueue.start(this::produce, "exchange-" + child.getClass().getSimpleName());
+			}
+			latch = started;
+		}
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while starting exchange", e);
+		}
+		if (error != null)
+			ChunkQueue.rethrow(error, "Exchange input failed");
+	}
+
+	/*
+	 * Called when a port is closed. A port closed while the exchange is running is done for this run even if it was
+	 * never initialized (its pipeline failed or was abandoned). Once all ports are done, stops the background thread
+	 * and closes the input so the exchange can be run again.
+	 */
+	private void close(Port p) throws IOException {
+		Thread t;
+		synchronized (this) {
+			if (producer == null || p.closed)
+				return;
+			p.opened = true;
+			p.closed = true;
+			p.discard();
+			for (Port q : ports)
+				if (!q.closed)
+					return;
+			stopped = true;
+			t = producer;
+		}
+
+		ChunkQueue.join(t);
+
+		synchronized (this) {
+			producer = null;
+			for (Port q : ports) {
+				q.opened = false;
+				q.discard();
+			}
+		}
+		child.close();
+	}
+
+	/*
+	 * Body of background thread.
+	 */
+	private void produce() {
+		try {
+			try {
+				child.init();
+			} finally {
+				started.countDown();
+			}
+
+			Tuple t;
+			int count = 0;
+			while (!stopped && (t = child.next()) != null) {
+				route(t);
+				count++;
+			}
+			synchronized (this) {
+				tuplesRead = count;
+			}
+		} catch (Throwable e) {
+			error = e;
+		}
+
+		for (Port p : ports) {
+			try {
+				if (p.pendingCount > 0 && error == null)
+					p.offer(Arrays.copyOf(p.pending, p.pendingCount));
+			} catch (Throwable e) {
+				error = e;
+			}
+			p.pending = null;
+			p.offer(END);
+		}
+	}
+
+	/*
+	 * Writes a chunk to a temporary file and returns the file name.
+	 */
+	private String spill(Tuple[] c) throws IOException {
+		String fileName = FileManager.createTempFileName("exchange");
+		BinaryTupleWriter out = FileManager.openTupleWriter(fileName, child.getOutputRelation());
+		try {
+			for (Tuple t : c)
+				out.write(t);
+		} finally {
+			FileManager.closeFile(out);
+		}
+		synchronized (this) {
+			chunksSpilled++;
+			bytesSpilled += out.getBytesWritten();
+		}
+		return fileName;
+	}
+
+	/**
+	 * Returns the partition (0 to n-1) for the hash of the key attributes of a tuple. Equal keys go to the same
+	 * partition whether INT values are stored unboxed or as Integer objects.
+	 */
+	public static int partition(Tuple t, int[] keyLocs, int n) {
+		int h = 1;
+		for (int i = 0; i < keyLocs.length; i++) {
+			int loc = keyLocs[i];
+			int v;
+			if (t.isIntField(loc))
+				v = Integer.hashCode(t.getInt(loc));
+			else {
+				Object o = t.getObject(loc);
+				v = o == null ? 0 : o.hashCode();
+			}
+			h = 31 * h + v;
+		}
+		h ^= (h >>> 16);
+		return Math.floorMod(h * 0x9E3779B9, n);
+	}
+
+	/**
+	 * An output of the exchange read by one pipeline.
+	 */
+	private class Port extends Operator {
+		private int index; // Port number
+		private LinkedBlockingQueue<Object> queue; // Chunks (Tuple[]) and names of spilled chunk files (String) in order
+		private AtomicInteger memChunks; // Chunks in queue kept in memory
+		private Tuple[] pending; // Chunk being filled by background thread
+		private int pendingCount; // Tuples in pending
+		private Tuple[] chunk; // Chunk being output
+		private int chunkPos; // Next tuple in chunk
+		private boolean done; // True once END has been taken from queue
+		private boolean opened; // True if port has been initialized or closed in this run (guarded by Exchange)
+		private volatile boolean closed; // True once port has been closed
+
+		Port(int i) {
+			super();
+			index = i;
+			queue = new LinkedBlockingQueue<Object>();
+			memChunks = new AtomicInteger();
+		}
+
+		void reset() {
+			closed = false;
+			discard();
+			pending = new Tuple[CHUNK_SIZE];
+			pendingCount = 0;
+		}
+
+		/*
+		 * Adds a chunk to the queue (called by background thread). Once queueChunks chunks are in memory, chunks are
+		 * spilled to temporary files. Dropped if the port or exchange is closed.
+		 */
+		void offer(Tuple[] c) {
+			if (closed || stopped)
+				return;
+			if (c != END && memChunks.get() >= queueChunks) {
+				try {
+					queue.add(spill(c));
+				} catch (IOException e) {
+					error = e;
+					return;
+				}
+			} else {
+				if (c != END)
+					memChunks.incrementAndGet();
+				queue.add(c);
+			}
+			if (closed)
+				discard(); // Closed while adding the chunk
+		}
+
+		/*
+		 * Removes all queued chunks, deleting spilled chunk files.
+		 */
+		void discard() {
+			Object item;
+			while ((item = queue.poll()) != null) {
+				if (item instanceof String)
+					FileManager.deleteFile((String) item);
+				else if (item != END)
+					memChunks.decrementAndGet();
+			}
+		}
+
+		public void init() throws IOException {
+			chunk = null;
+			chunkPos = 0;
+			done = false;
+			open(this);
+		}
+
+		public Tuple next() throws IOException {
+			if (chunk == null || chunkPos >= chunk.length) {
+				if (done)
+					return null;
+				Object item;
+				try {
+					item = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for exchange", e);
+				}
+				chunkPos = 0;
+				if (item == END) {
+					done = true;
+					chunk = null;
+					if (error != null)
+						ChunkQueue.rethrow(error, "Exchange input failed");
+					return null;
+				}
+				if (item instanceof String) {
+					chunk = readSpilled((String) item);
+				} else {
+					memChunks.decrementAndGet();
+					chunk = (Tuple[]) item;
+				}
+			}
+			Tuple t = chunk[chunkPos];
+			chunk[chunkPos++] = null;
+			incrementTuplesRead();
+			incrementTuplesOutput();
+			return t;
+		}
+
+		/*
+		 * Reads a spilled chunk and deletes its file.
+		 */
+		private Tuple[] readSpilled(String fileName) throws IOException {
+			Relation r = child.getOutputRelation();
+			Tuple[] c = new Tuple[CHUNK_SIZE];
+			int n = 0;
+			BinaryTupleReader in = FileManager.openTupleReader(fileName, r);
+			try {
+				Tuple t = new Tuple(r);
+				while (in.read(t)) {
+					c[n++] = t;
+					t = new Tuple(r);
+				}
+			} finally {
+				incrementBytesRead(in.getBytesRead());
+				FileManager.closeFile(in);
+				FileManager.deleteFile(fileName);
+			}
+			return n == CHUNK_SIZE ? c : Arrays.copyOf(c, n);
+		}
+
+		public void close() throws IOException {
+			chunk = null;
+			Exchange.this.close(this);
+		}
+
+		public boolean isBuffered() {
+			return true;
+		}
+
+		public Relation getOutputRelation() {
+			return child.getOutputRelation();
+		}
+
+		public int[] getSortOrder() {
+			return child.getSortOrder(); // Each port gets the tuples of its partition in input order
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package textdb;
+
+import java.io.*;
+
+/**
+ * Performs a file scan of a TEXT file that reads the file in large character
+ * blocks and splits fields in place. INT fields are parsed directly from the
+ * block so no String is created for them. Produces the same tuples as
+ * TextFileScan (fields past the number of attributes in the relation are
+ * ignored).
+ */
+public class FastTextFileScan extends TextFileScan
+{
+	static public final int BLOCK_SIZE = 65536;		// Characters read from file at a time
+
+	private char[] block;							// Characters read from file
+	private int pos;								// Next character to parse in block
+	private int limit;								// Number of valid characters in block
+	private boolean eof;							// True if end of file has been read into block
+	private int[] types;							// Attribute types (cached from relation)
+
+	public FastTextFileScan(String inName, Relation r)
+	{	super(inName, r);
+	}
+
+	public void init() throws FileNotFoundException, IOException
+	{	super.init();
+		if (block == null)
+			block = new char[BLOCK_SIZE];
+		pos = 0;
+		limit = 0;
+		eof = false;
+
+		types = new int[inputRelation.getNumAttributes()];
+		for (int i = 0; i < types.length; i++)
+			types[i] = inputRelation.getAttributeType(i);
+	}
+
+	public Tuple next() throws IOException
+	{
+		int end = findLineEnd();
+		while (end >= 0 && !lineMatches(end))
+			end = findLineEnd();
+		if (end < 0)
+		{	endOfFile();
+			return null;
+		}
+
+		Tuple t = new Tuple(inputRelation);
+		int numVals = 0;
+		int i = pos;
+		while (numVals < types.length)
+		{	// Skip whitespace
+			while (i < end && isSpace(block[i]))
+				i++;
+			if (i >= end)
+				break;
+
+			int start = i;
+			while (i < end && !isSpace(block[i]))
+				i++;
+
+			if (types[numVals] == Attribute.TYPE_INT)
+				t.setInt(numVals, parseInt(block, start, i));
+			else
+				t.setValue(numVals, new String(block, start, i-start));	// type string by default
+			numVals++;
+		}
+
+		// Move past line terminator
+		pos = end + 1;
+
+		if (numVals < types.length)
+		{	// Short line: tuple only has the fields present (as TextFileScan)
+			Object[] values = t.getValues();
+			Object[] tmp = new Object[numVals];
+			System.arraycopy(values, 0, tmp, 0, numVals);
+			t.setValues(tmp);
+		}
+
+		incrementTuplesRead();
+		incrementTuplesOutput();
+		return t;
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException
+	{	// Parse lines straight into batch columns (INT values are not boxed)
+		batch.reset();
+		int end;
+		while (!batch.isFull() && (end = findLineEnd()) >= 0)
+		{	if (!lineMatches(end))
+				continue;
+			int row = batch.addRow();
+			int numVals = 0;
+			int i = pos;
+			while (numVals < types.length)
+			{	while (i < end && isSpace(block[i]))
+					i++;
+				if (i >= end)
+					break;
+
+				int start = i;
+				while (i < end && !isSpace(block[i]))
+					i++;
+
+				if (types[numVals] == Attribute.TYPE_INT)
+					batch.setInt(row, numVals, parseInt(block, start, i));
+				else
+					batch.setObject(row, numVals, new String(block, start, i-start));
+				numVals++;
+			}
+			for (; numVals < types.length; numVals++)
+				batch.setObject(row, numVals, null);		// Line has fewer fields than relation
+			pos = end + 1;
+			incrementTuplesRead();
+			incrementTuplesOutput();
+		}
+		if (!batch.isFull())
+			endOfFile();
+		return !batch.isEmpty();
+	}
+
+	/*
+	 * Tests the line from pos to end with the predicate (if any). A rejected line is skipped and counted as read.
+	 */
+	private boolean lineMatches(int end)
+	{	if (predicate == null || predicate.matches(line.set(block, pos, end)))
+			return true;
+		pos = end + 1;
+		incrementTuplesRead();
+		return false;
+	}
+
+	public boolean hasNext() throws IOException
+	{	return pos < limit || inFile.ready();
+	}
+
+	/*
+	 * Returns the index in block of the end of the current line ('\n' or end of file) reading more of the file if needed.
+	 * Returns -1 if there are no more lines.
+	 */
+	private int findLineEnd() throws IOException
+	{	int i = pos;
+		while (true)
+		{	while (i < limit)
+			{	if (block[i] == '\n')
+					return i;
+				i++;
+			}
+
+			if (eof)
+				return (pos < limit) ? limit : -1;	// Last line may not end with a newline
+
+			// Move partial line to front of block (or grow block if line fills it) and read more
+			int partial = limit - pos;
+			if (pos == 0 && limit == block.length)
+			{	char[] tmp = new char[block.length*2];
+				System.arraycopy(block, 0, tmp, 0, limit);
+				block = tmp;
+			}
+			else if (pos > 0)
+				System.arraycopy(block, pos, block, 0, partial);
+			pos = 0;
+			limit = partial;
+			i = partial;
+
+			int n = inFile.read(block, limit, block.length-limit);
+			if (n < 0)
+				eof = true;
+			else
+				limit += n;
+		}
+	}
+
+	static boolean isSpace(char c)
+	{	return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f';
+	}
+
+	/*
+	 * Parses a decimal integer from chars [start, end) with the same results as Integer.parseInt.
+	 */
+	static int parseInt(char[] buf, int start, int end)
+	{	int i = start;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+'))
+		{	negative = buf[i] == '-';
+			i++;
+		}
+		if (i >= end || end - i > 10)
+			return Integer.parseInt(new String(buf, start, end-start));		// Let parseInt report the error
+
+		long val = 0;
+		for (; i < end; i++)
+		{	int d = buf[i] - '0';
+			if (d < 0 || d > 9)
+				throw new NumberFormatException("For input string: \""+new String(buf, start, end-start)+"\"");
+			val = val*10 + d;
+		}
+		if (negative)
+			val = -val;
+		if (val < Integer.MIN_VALUE || val > Integer.MAX_VALUE)
+			throw new NumberFormatException("For input string: \""+new String(buf, start, end-start)+"\"");
+		return (int) val;
+	}
+}
@@ -1,32 +1,88 @@
 package textdb;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A class that performs file operations such as opening and closing files (and
- * hides the associated exceptions).
+ * hides the associated exceptions). Opening a file for writing or deleting it
+ * drops its pages from the shared BufferPool.
  */
 public class FileManager {
+	static private int tempFileCount = 0; // Distinguishes temp files created within the same millisecond
+
 	static public BufferedReader openTextInputFile(String fname) throws FileNotFoundException {
 		return new BufferedReader(new FileReader(fname));
 	}
 
 	static public PrintWriter openTextOutputFile(String fname) throws IOException {
+		BufferPool.getInstance().invalidate(fname);
 		return new PrintWriter(new BufferedWriter(new FileWriter(fname)));
 	}
 
+	/**
+	 * Opens a file for reading through the shared BufferPool. Returns null if the pool is disabled.
+	 */
+	static public PooledInputStream openPooledInputStream(String fname) throws IOException {
+		BufferPool pool = BufferPool.getInstance();
+		if (!pool.isEnabled())
+			return null;
+		return openPooledInputStream(fname, pool);
+	}
+
+	/**
+	 * Opens a file for reading through a buffer pool even if the pool is disabled (pages are then read from disk on
+	 * every request). Used by readers that seek in a file such as index scans.
+	 */
+	static public PooledInputStream openPooledInputStream(String fname, BufferPool pool) throws IOException {
+		return new PooledInputStream(fname, pool);
+	}
+
 	static public BufferedInputStream openInputFile(String fname) throws FileNotFoundException {
 		return new BufferedInputStream(new FileInputStream(fname));
 	}
 
 	static public BufferedOutputStream openOutputFile(String fname) throws IOException {
+		BufferPool.getInstance().invalidate(fname);
 		return new BufferedOutputStream(new FileOutputStream(fname));
 	}
 
 	static public BufferedOutputStream appendOutputFile(String fname) throws IOException {
+		BufferPool.getInstance().invalidate(fname);
 		return new BufferedOutputStream(new FileOutputStream(fname, true));
 	}
 
+	static public FileChannel openOutputChannel(String fname) throws IOException {
+		BufferPool.getInstance().invalidate(fname);
+		return FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	static public BinaryTupleReader openTupleReader(String fname, Relation r) throws IOException {
+		// Temp files are read through the buffer pool if enabled, otherwise with a buffered stream
+		InputStream in = openPooledInputStream(fname);
+		if (in == null)
+			in = openInputFile(fname);
+		try {
+			return new BinaryTupleReader(in, r);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	static public BinaryTupleWriter openTupleWriter(String fname, Relation r) throws IOException {
+		FileChannel ch = openOutputChannel(fname);
+		try {
+			return new BinaryTupleWriter(ch, r);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
 	static public void closeFile(BufferedReader breader) throws IOException {
 		breader.close();
 	}
@@ -43,6 +99,14 @@ public class FileManager {
 		f.close();
 	}
 
+	static public void closeFile(BinaryTupleReader f) throws IOException {
+		f.close();
+	}
+
+	static public void closeFile(BinaryTupleWriter f) throws IOException {
+		f.close();
+	}
+
 	static public String getFileName(String pathName) { // Returns just the fileName stripped of any previous path
 														// information in String
 		int idx = pathName.lastIndexOf("/");
@@ -60,14 +124,15 @@ public class FileManager {
 			return pathName.substring(0, idx + 1);
 	}
 
-	static public String createTempFileName(String hint) {
+	static public synchronized String createTempFileName(String hint) {
 		long time = System.currentTimeMillis();
-		return hint + "_" + time + ".dat";
+		return hint + "_" + time + "_" + (tempFileCount++) + ".dat";
 	}
 
 	static public void deleteFile(String fname) {
 		File f = new File(fname);
 		f.delete();
+		BufferPool.getInstance().invalidate(fname);
 	}
 
 	static public void writeOutputToFile(String fname, Operator op) throws IOException {
@@ -0,0 +1,139 @@
+package textdb;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs each of its inputs (pipelines) on its own thread and merges their
+ * output into one stream of tuples in arrival order. Inputs are initialized
+ * in parallel on their threads and init() returns once all of them are
+ * initialized. All inputs must have the same output relation.
+ *
+ * Combined with RepartitionExchange this runs an equi-join as N parallel
+ * joins of hash partitions (see JoinPlanner.createParallelJoin()).
+ */
+public class GatherExchange extends Operator {
+	static public final int CHUNK_SIZE = ChunkQueue.CHUNK_SIZE; // Tuples handed to the consumer at a time
+	static public final int DEFAULT_QUEUE_CHUNKS = 4; // Default chunks buffered per input
+
+	private int queueChunks; // Maximum number of chunks in queue
+	private ChunkQueue queue; // Chunks from all inputs
+	private Thread[] workers; // Thread running each input
+	private Tuple[] chunk; // Chunk being output
+	private int chunkPos; // Next tuple in chunk
+	private int inputsDone; // Number of inputs that have ended
+
+	public GatherExchange(Operator[] in) {
+		this(in, DEFAULT_QUEUE_CHUNKS * in.length);
+	}
+
+	public GatherExchange(Operator[] in, int chunks) {
+		super(in, 0, 0);
+		queueChunks = Math.max(1, chunks);
+	}
+
+	public void init() throws IOException {
+		stopWorkers();
+		queue = new ChunkQueue(queueChunks);
+		chunk = null;
+		chunkPos = 0;
+		inputsDone = 0;
+
+		ChunkQueue q = queue;
+		CountDownLatch started = new CountDownLatch(numInputs);
+		workers = new Thread[numInputs];
+		for (int i = 0; i < numInputs; i++) {
+			final Operator op = input[i];
+			workers[i] = ChunkQueue.start(() -> produce(op, q, started), "gather-" + i);
+		}
+
+		try {
+			started.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			closeAfterFailure(null);
+			throw new IOException("Interrupted while starting pipelines", e);
+		}
+		if (queue.getError() != null) {
+			// Close every pipeline so the exchanges they read stop their threads and delete their files
+			Throwable error = queue.getError();
+			closeAfterFailure(error);
+			ChunkQueue.rethrow(error, "Pipeline failed");
+		}
+		setOutputRelation(input[0].getOutputRelation());
+	}
+
+	/*
+	 * Body of the thread running one input.
+	 */
+	private static void produce(Operator op, ChunkQueue q, CountDownLatch started) {
+		try {
+			op.init();
+		} catch (Throwable e) {
+			q.end(e);
+			return;
+		} finally {
+			started.countDown();
+		}
+		q.fill(op);
+	}
+
+	public Tuple next() throws IOException {
+		while (chunk == null || chunkPos >= chunk.length) {
+			if (inputsDone == numInputs)
+				return null;
+			chunk = queue.take();
+			chunkPos = 0;
+			if (chunk == ChunkQueue.END) {
+				chunk = null;
+				inputsDone++;
+				queue.rethrow("Pipeline failed");
+			}
+		}
+		Tuple t = chunk[chunkPos];
+		chunk[chunkPos++] = null;
+		incrementTuplesRead();
+		incrementTuplesOutput();
+		return t;
+	}
+
+	public void close() throws IOException {
+		stopWorkers();
+		queue = null;
+		chunk = null;
+		super.close();
+	}
+
+	/*
+	 * Closes the exchange after init() failed. Exceptions thrown while closing are added to the failure.
+	 */
+	private void closeAfterFailure(Throwable error) {
+		stopWorkers();
+		queue = null;
+		for (int i = 0; i < numInputs; i++) {
+			try {
+				input[i].close();
+			} catch (Throwable e) {
+				if (error != null && error != e)
+					error.addSuppressed(e);
+			}
+		}
+	}
+
+	/*
+	 * Stops the input threads and waits for them to finish their current chunk.
+	 */
+	private void stopWorkers() {
+		if (workers == null)
+			return;
+		queue.close();
+		for (Thread w : workers)
+			ChunkQueue.join(w);
+		workers = null;
+	}
+
+	// Tuples are produced by background threads
+	public boolean isBuffered() {
+		return true;
+	}
+}
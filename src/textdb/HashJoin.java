@@ -0,0 +1,334 @@
+package textdb;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Performs an equi-join by hashing in iterator format. The hash table is built
+ * on the input set with setBuildLeft() (JoinPlanner sets the input it estimates
+ * to be smaller). If none is set, input sizes are estimated once the first time
+ * the join is initialized (see JoinPlanner.estimateTuples()). If the build input
+ * fits in BUFFER_SIZE*BLOCKING_FACTOR tuples the other input is streamed past
+ * it. Otherwise both inputs are partitioned into temporary files (Grace hash
+ * join) and each pair of partitions is joined in memory building on the smaller
+ * partition. At most one input is buffered at a time. If output attributes are
+ * set, partitions hold only the join attributes and output attributes of each
+ * input.
+ */
+public class HashJoin extends JoinOperator {
+	private EquiJoinPredicate pred; // A equi-join comparison class that can handle 1 or more attributes
+	private int arraySize; // Number of tuples that can be buffered in memory
+
+	// Build side state
+	private HashMap<List<Object>, ArrayList<Tuple>> table; // Build tuples grouped by join key
+	private boolean buildLeft; // True if the hash table is built on the left input
+	private boolean buildRightOnly; // True if the hash table is always built on the right input
+	private int buildInput = -1; // Input the hash table is built on (0 left, 1 right, -1 until estimated)
+
+	// Grace partitioning state
+	private boolean partitioned; // True if inputs were partitioned to temp files
+	private String[] leftPartName; // Partition file names for left input
+	private String[] rightPartName; // Partition file names for right input
+	private int[] leftPartCount; // Tuples written to each left partition
+	private int[] rightPartCount; // Tuples written to each right partition
+	private int numPartitions; // Number of partitions
+	private int curPartition; // Partition currently being joined
+	private BinaryTupleReader probeFile; // Reader for partition being probed
+	private int[] leftPartAttrs; // Left attributes written to partitions (null for all)
+	private int[] rightPartAttrs; // Right attributes written to partitions (null for all)
+	private Relation leftPartRelation; // Relation of left partition tuples
+	private Relation rightPartRelation; // Relation of right partition tuples
+	private EquiJoinPredicate partPred; // Join predicate on partition tuples
+	private int[] partOutputAttrs; // Output attributes of joined partition tuples (null for all)
+
+	// Iterator state variables
+	private Tuple probeTuple; // Current probe tuple
+	private ArrayList<Tuple> matches; // Build tuples matching probeTuple
+	private int matchPos; // Next match to output
+	private int leftCount; // Tuples read from left input
+	private int rightCount; // Tuples read from right input
+
+	public HashJoin(Operator[] in, EquiJoinPredicate p, int bsize, int bfr) {
+		super(in, bfr, bsize);
+		pred = p;
+		arraySize = bsize * bfr;
+	}
+
+	/*
+	 * Always builds the hash table on the right input (partitioning both inputs if it does not fit) so output is in
+	 * left input order when the right input fits in memory. Used by IndexNestedLoopJoin.
+	 */
+	void setBuildRight() {
+		buildRightOnly = true;
+		buildInput = 1;
+	}
+
+	/**
+	 * Sets the input the hash table is built on (it should be the smaller input). Input sizes are then not estimated.
+	 *
+	 * @param left
+	 *            true to build on the left input, false to build on the right input
+	 */
+	public void setBuildLeft(boolean left) {
+		if (!buildRightOnly)
+			buildInput = left ? 0 : 1;
+	}
+
+	public void init() throws IOException {
+		input[0].init();
+		input[1].init();
+		initOutputRelation();
+
+		table = new HashMap<List<Object>, ArrayList<Tuple>>();
+		partitioned = false;
+		probeTuple = null;
+		matches = null;
+		matchPos = 0;
+		leftCount = 0;
+		rightCount = 0;
+
+		// Build on the smaller input (ties go to the right input as it preserves nested-loop output order). Sizes are
+		// estimated only once so rescans do not read the input files again.
+		if (buildInput < 0) {
+			JoinPlanner planner = new JoinPlanner(BUFFER_SIZE, BLOCKING_FACTOR);
+			buildInput = planner.estimateTuples(input[0]) < planner.estimateTuples(input[1]) ? 0 : 1;
+		}
+		buildLeft = buildInput == 0;
+		ArrayList<Tuple> build = readUpTo(input[buildLeft ? 0 : 1], arraySize + 1, buildLeft);
+		if (build.size() <= arraySize) {
+			inputFinished(buildLeft ? leftCount : rightCount);
+			for (int i = 0; i < build.size(); i++)
+				insert(build.get(i), buildLeft);
+			return;
+		}
+
+		// Build input does not fit in memory - partition both inputs
+		if (buildLeft)
+			partition(build, new ArrayList<Tuple>());
+		else
+			partition(new ArrayList<Tuple>(), build);
+	}
+
+	public Tuple next() throws IOException {
+		while (true) {
+			if (matches != null && matchPos < matches.size()) {
+				Tuple build = matches.get(matchPos++);
+				Tuple left = buildLeft ? build : probeTuple;
+				Tuple right = buildLeft ? probeTuple : build;
+				if (partitioned)
+					return outputJoinTuple(left, right, leftPartRelation.getNumAttributes(), partOutputAttrs);
+				return outputJoinTuple(left, right);
+			}
+
+			probeTuple = nextProbe();
+			if (probeTuple == null)
+				return null;
+
+			EquiJoinPredicate p = partitioned ? partPred : pred;
+			List<Object> key = Arrays
+					.asList(buildLeft ? p.getValuesRelation2(probeTuple) : p.getValuesRelation1(probeTuple));
+			matches = table.get(key);
+			matchPos = 0;
+		}
+	}
+
+	public void close() throws IOException {
+		super.close();
+		if (probeFile != null) {
+			closeTempFile(probeFile);
+			probeFile = null;
+		}
+		if (partitioned) {
+			for (int i = curPartition; i < numPartitions; i++) {
+				FileManager.deleteFile(leftPartName[i]);
+				FileManager.deleteFile(rightPartName[i]);
+			}
+			partitioned = false;
+		}
+		table = null;
+	}
+
+	/*
+	 * Returns the next tuple to probe the hash table with (or null if done).
+	 */
+	private Tuple nextProbe() throws IOException {
+		if (partitioned) {
+			while (true) {
+				if (probeFile != null) {
+					Tuple t = new Tuple(buildLeft ? rightPartRelation : leftPartRelation);
+					if (probeFile.read(t))
+						return t;
+
+					// Partition finished - delete it and move on to the next one
+					closeTempFile(probeFile);
+					probeFile = null;
+					FileManager.deleteFile(leftPartName[curPartition]);
+					FileManager.deleteFile(rightPartName[curPartition]);
+					curPartition++;
+				}
+				if (curPartition >= numPartitions)
+					return null;
+				loadPartition(curPartition);
+			}
+		}
+
+		Operator probe = buildLeft ? input[1] : input[0];
+		Tuple t = probe.next();
+		if (t == null) {
+			inputFinished(buildLeft ? rightCount : leftCount);
+			return null;
+		}
+		incrementTuplesRead();
+		if (buildLeft)
+			rightCount++;
+		else
+			leftCount++;
+		return t;
+	}
+
+	/*
+	 * Reads at most max tuples from an input.
+	 */
+	private ArrayList<Tuple> readUpTo(Operator op, int max, boolean left) throws IOException {
+		ArrayList<Tuple> list = new ArrayList<Tuple>();
+		Tuple t;
+		while (list.size() < max && (t = op.next()) != null)
+			list.add(t);
+
+		incrementTuplesRead(list.size());
+		if (left)
+			leftCount += list.size();
+		else
+			rightCount += list.size();
+		return list;
+	}
+
+	/*
+	 * Charges the page reads for an input once it has been read completely.
+	 */
+	private void inputFinished(int count) {
+		incrementPagesRead((int) Math.ceil((double) count / BLOCKING_FACTOR));
+	}
+
+	private void insert(Tuple t, boolean left) {
+		EquiJoinPredicate p = partitioned ? partPred : pred;
+		List<Object> key = Arrays.asList(left ? p.getValuesRelation1(t) : p.getValuesRelation2(t));
+
+		ArrayList<Tuple> list = table.get(key);
+		if (list == null) {
+			list = new ArrayList<Tuple>(2);
+			table.put(key, list);
+		}
+		list.add(t);
+	}
+
+	/*
+	 * Writes both inputs out to partition files (one output page buffered per
+	 * partition) and opens the first partition. Only the attributes needed to
+	 * join and output tuples are written.
+	 */
+	private void partition(ArrayList<Tuple> left, ArrayList<Tuple> right) throws IOException {
+		leftPartAttrs = neededAttributes(0, pred.getRelation1Locs());
+		rightPartAttrs = neededAttributes(1, pred.getRelation2Locs());
+		leftPartRelation = leftPartAttrs == null ? input[0].getOutputRelation()
+				: input[0].getOutputRelation().project(leftPartAttrs);
+		rightPartRelation = rightPartAttrs == null ? input[1].getOutputRelation()
+				: input[1].getOutputRelation().project(rightPartAttrs);
+		partPred = new EquiJoinPredicate(Project.mapAttributes(pred.getRelation1Locs(), leftPartAttrs),
+				Project.mapAttributes(pred.getRelation2Locs(), rightPartAttrs), pred.getKeyType());
+		partOutputAttrs = mapOutputAttributes(leftPartAttrs, rightPartAttrs);
+
+		numPartitions = Math.max(2, BUFFER_SIZE - 1);
+		leftPartName = new String[numPartitions];
+		rightPartName = new String[numPartitions];
+		leftPartCount = new int[numPartitions];
+		rightPartCount = new int[numPartitions];
+
+		partitionInput(input[0], left, leftPartName, leftPartCount, true);
+		partitionInput(input[1], right, rightPartName, rightPartCount, false);
+
+		partitioned = true;
+		curPartition = 0;
+		loadPartition(0);
+	}
+
+	private void partitionInput(Operator op, ArrayList<Tuple> buffered, String[] names, int[] counts, boolean left)
+			throws IOException {
+		BinaryTupleWriter[] out = new BinaryTupleWriter[numPartitions];
+		for (int i = 0; i < numPartitions; i++) {
+			names[i] = FileManager.createTempFileName((left ? "hash_left" : "hash_right") + i);
+			out[i] = FileManager.openTupleWriter(names[i], left ? leftPartRelation : rightPartRelation);
+		}
+
+		for (int i = 0; i < buffered.size(); i++)
+			writePartition(buffered.get(i), out, counts, left);
+		buffered.clear();
+
+		Tuple t;
+		int count = 0;
+		while ((t = op.next()) != null) {
+			writePartition(t, out, counts, left);
+			count++;
+		}
+		incrementTuplesRead(count);
+		if (left)
+			leftCount += count;
+		else
+			rightCount += count;
+		inputFinished(left ? leftCount : rightCount);
+
+		for (int i = 0; i < numPartitions; i++) {
+			closeTempFile(out[i]);
+			incrementPageIOs((int) Math.ceil((double) counts[i] / BLOCKING_FACTOR));
+		}
+	}
+
+	private void writePartition(Tuple t, BinaryTupleWriter[] out, int[] counts, boolean left) throws IOException {
+		Object[] key = left ? pred.getValuesRelation1(t) : pred.getValuesRelation2(t);
+		int p = partitionOf(Arrays.asList(key).hashCode());
+		int[] attrs = left ? leftPartAttrs : rightPartAttrs;
+		out[p].write(attrs == null ? t : new Tuple(t, attrs, left ? leftPartRelation : rightPartRelation));
+		counts[p]++;
+		incrementTupleIOs();
+	}
+
+	/*
+	 * Scrambles the key hash before choosing a partition so that keys in the same
+	 * partition do not share low-order bits in the in-memory hash table.
+	 */
+	private int partitionOf(int hash) {
+		int h = hash * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & 0x7fffffff) % numPartitions;
+	}
+
+	/*
+	 * Builds the hash table on the smaller partition of a pair (the right one if the hash table is always built on
+	 * the right input) and opens the other partition for probing. Partitions are not re-partitioned if a skewed key
+	 * makes one exceed the buffer.
+	 */
+	private void loadPartition(int p) throws IOException {
+		table.clear();
+		buildLeft = !buildRightOnly && leftPartCount[p] < rightPartCount[p];
+		Relation buildRelation = buildLeft ? leftPartRelation : rightPartRelation;
+		BinaryTupleReader in = FileManager.openTupleReader(buildLeft ? leftPartName[p] : rightPartName[p],
+				buildRelation);
+		while (true) {
+			Tuple t = new Tuple(buildRelation);
+			if (!in.read(t))
+				break;
+			insert(t, buildLeft);
+		}
+		closeTempFile(in);
+
+		incrementTupleIOs(rightPartCount[p] + leftPartCount[p]);
+		incrementPageIOs((int) Math.ceil((double) rightPartCount[p] / BLOCKING_FACTOR)
+				+ (int) Math.ceil((double) leftPartCount[p] / BLOCKING_FACTOR));
+
+		probeFile = buildLeft ? FileManager.openTupleReader(rightPartName[p], rightPartRelation)
+				: FileManager.openTupleReader(leftPartName[p], leftPartRelation);
+		matches = null;
+	}
+}
@@ -0,0 +1,130 @@
+package textdb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Performs an index nested-loop join in iterator format. For each outer (left)
+ * tuple the join key is looked up in an index on the inner (right) input so
+ * only matching inner tuples are read. If the inner input is an IndexScan
+ * (possibly wrapped by a ProfiledOperator) its B+-tree index is probed once per
+ * outer tuple (the index must be on the inner join attributes, or have them as
+ * a prefix) and only inner tuples in the scan's range are returned. Output
+ * tuples are then in outer input order.
+ *
+ * Otherwise the join is done by a HashJoin building its hash table on the
+ * inner input within BUFFER_SIZE*BLOCKING_FACTOR tuples. The inner input is
+ * read only once and output is in outer input order if it fits in memory (if
+ * not, both inputs are partitioned and output order is not defined).
+ */
+public class IndexNestedLoopJoin extends JoinOperator {
+	private EquiJoinPredicate pred; // A equi-join comparison class that can handle 1 or more attributes
+
+	// Iterator state variables
+	private IndexScan indexScan; // Inner index scan probed with each outer key (null if hashJoin is used)
+	private HashJoin hashJoin; // Join building a hash table on the inner input (null if indexScan is used)
+	private Tuple tupleLeft; // Current outer tuple
+	private long probes; // Number of index lookups
+
+	/**
+	 * Creates a join probing an IndexScan inner input. The inner input must be an IndexScan as no memory is given
+	 * for a hash table.
+	 */
+	public IndexNestedLoopJoin(Operator[] in, EquiJoinPredicate p) {
+		this(in, p, 0, 0);
+	}
+
+	/**
+	 * Creates a join probing an IndexScan inner input or, if the inner input is not an IndexScan, hashing it in
+	 * bsize pages of bfr tuples.
+	 */
+	public IndexNestedLoopJoin(Operator[] in, EquiJoinPredicate p, int bsize, int bfr) {
+		super(in, bfr, bsize);
+		pred = p;
+		IndexScan scan = indexScanOf(in[1]);
+		if (scan != null) {
+			int[] keys = scan.getIndex().getKeyAttributes();
+			int[] locs = p.getRelation2Locs();
+			if (locs.length > keys.length || !Arrays.equals(locs, Arrays.copyOf(keys, locs.length)))
+				throw new IllegalArgumentException("Index on " + Arrays.toString(keys)
+						+ " cannot be probed with inner join attributes " + Arrays.toString(locs));
+		}
+	}
+
+	/*
+	 * Returns the IndexScan an operator is (unwrapping profiled operators) or null if it is not an IndexScan.
+	 */
+	private static IndexScan indexScanOf(Operator op) {
+		while (op instanceof ProfiledOperator)
+			op = ((ProfiledOperator) op).getOperator();
+		return op instanceof IndexScan ? (IndexScan) op : null;
+	}
+
+	public void init() throws IOException {
+		tupleLeft = null;
+		probes = 0;
+
+		// Inputs may have been replaced (e.g. by profile()) since the join was created
+		indexScan = indexScanOf(input[1]);
+		if (indexScan == null) {
+			if (BUFFER_SIZE <= 0 || BLOCKING_FACTOR <= 0)
+				throw new IllegalStateException("Inner input is not an IndexScan and no buffer is given to hash it");
+			hashJoin = new HashJoin(input.clone(), pred, BUFFER_SIZE, BLOCKING_FACTOR);
+			hashJoin.setBuildRight();
+			hashJoin.setOutputAttributes(outputAttrs);
+			hashJoin.init();
+			setOutputRelation(hashJoin.getOutputRelation());
+			return;
+		}
+
+		input[0].init();
+		input[1].init();
+		initOutputRelation();
+	}
+
+	public Tuple next() throws IOException {
+		if (hashJoin != null) {
+			Tuple t = hashJoin.next();
+			if (t != null)
+				incrementTuplesOutput();
+			return t;
+		}
+
+		while (true) {
+			if (tupleLeft != null) {
+				// Matches are read through input[1] so a profiled inner scan times them
+				Tuple match = input[1].next();
+				if (match != null) {
+					incrementTuplesRead();
+					return outputJoinTuple(tupleLeft, match);
+				}
+			}
+
+			tupleLeft = input[0].next();
+			if (tupleLeft == null)
+				return null;
+			incrementTuplesRead();
+
+			// Look up the outer key in the inner index
+			probes++;
+			indexScan.probe(pred.getValuesRelation1(tupleLeft));
+		}
+	}
+
+	/**
+	 * Returns the number of index lookups (one per outer tuple, 0 if the inner input is hashed).
+	 */
+	public long getProbes() {
+		return probes;
+	}
+
+	public void close() throws IOException {
+		if (hashJoin == null) {
+			super.close();
+			return;
+		}
+		hashJoin.close();
+		addCounters(hashJoin);
+		hashJoin = null;
+	}
+}
@@ -0,0 +1,108 @@
+package textdb;
+
+import java.io.*;
+
+/**
+ * Returns the tuples of a TEXT data file with keys in a range (or equal to a
+ * key) using a BTreeIndex on the file, in iterator form. Only the index nodes
+ * on the path to the range and the data pages holding matching lines are read
+ * (both through the shared BufferPool). Output is in key order.
+ */
+public class IndexScan extends Operator {
+	private BTreeIndex index; // Index used to find tuples
+	private Object[] lowKey; // Smallest key returned (null for no lower bound)
+	private Object[] highKey; // Largest key returned (null for no upper bound)
+
+	// Iterator state variables
+	private BTreeIndex.Cursor cursor; // Finds offsets of matching lines
+	private Object[] probeLow; // Lower bound of search started by next call to next() (if probePending)
+	private Object[] probeHigh; // Upper bound of search started by next call to next() (if probePending)
+	private boolean probePending; // True if probe() was called and its search has not been started
+	private PooledInputStream data; // Reads lines of data file
+	private BTreeIndex.LineReader lines; // Reads a line at an offset of data
+
+	/**
+	 * Creates a scan of tuples with keys between low and high inclusive. A key may be a prefix of the index's key
+	 * attributes. A bound is ignored if it is null.
+	 */
+	public IndexScan(BTreeIndex index, Object[] low, Object[] high) {
+		super();
+		this.index = index;
+		lowKey = low;
+		highKey = high;
+		setOutputRelation(index.getDataRelation());
+	}
+
+	/**
+	 * Creates a scan of tuples with keys equal to a key (or key prefix).
+	 */
+	public IndexScan(BTreeIndex index, Object[] key) {
+		this(index, key, key);
+	}
+
+	public BTreeIndex getIndex() {
+		return index;
+	}
+
+	public int[] getSortOrder() {
+		return index.getKeyAttributes();
+	}
+
+	public void init() throws IOException {
+		cursor = index.openCursor();
+		data = FileManager.openPooledInputStream(index.getDataFileName(), BufferPool.getInstance());
+		lines = new BTreeIndex.LineReader(data, 0);
+		probePending = false;
+		cursor.find(lowKey, highKey);
+	}
+
+	/**
+	 * Restarts an initialized scan for tuples with keys equal to a key (or key prefix) that are also in the scan's
+	 * range. Used to probe the index once per outer tuple of an IndexNestedLoopJoin without reopening the index. The
+	 * scan's range is not changed, and the index is searched by the next call to next() so the search is timed with
+	 * the scan when it is profiled.
+	 */
+	public void probe(Object[] key) {
+		probeLow = index.tighterBound(lowKey, key, false);
+		probeHigh = index.tighterBound(highKey, key, true);
+		probePending = true;
+	}
+
+	public Tuple next() throws IOException {
+		if (probePending) {
+			probePending = false;
+			cursor.find(probeLow, probeHigh);
+		}
+		long offset = cursor.next();
+		if (offset < 0)
+			return null;
+		Tuple t = new Tuple(index.getDataRelation());
+		t.parseText(readLine(offset));
+		incrementTuplesRead();
+		incrementTuplesOutput();
+		return t;
+	}
+
+	/*
+	 * Returns the line of the data file at an offset.
+	 */
+	private String readLine(long offset) throws IOException {
+		data.seek(offset);
+		lines.setOffset(offset);
+		String st = lines.readLine();
+		if (st == null)
+			throw new EOFException("Index " + index.getFileName() + " points past end of " + index.getDataFileName());
+		return st;
+	}
+
+	public void close() throws IOException {
+		if (cursor == null)
+			return;
+		incrementPagesRead((int) (cursor.getNodesRead() + data.getPagesRead()));
+		incrementDiskPagesRead(cursor.getDiskPagesRead() + data.getDiskPagesRead());
+		cursor.close();
+		data.close();
+		cursor = null;
+		data = null;
+	}
+}
@@ -0,0 +1,113 @@
+package textdb;
+
+/**
+ * A generic class for joins of a left (input 0) and a right (input 1) input.
+ * Holds the attributes of joined tuples that are output and creates output
+ * tuples and batch rows from a pair of joining tuples.
+ */
+public abstract class JoinOperator extends Operator {
+	protected int[] outputAttrs; // Attributes of joined tuple output (null for all)
+	protected int leftArity; // Number of attributes of the left input (set by initOutputRelation())
+
+	JoinOperator(Operator[] in, int bfr, int bs) {
+		super(in, bfr, bs);
+	}
+
+	/**
+	 * Sets the attributes of joined tuples that are output (by default all).
+	 * Indexes refer to the attributes of the left input followed by those of
+	 * the right input, so a join only copies the attributes needed above it.
+	 *
+	 * @param attrs
+	 *            attribute indexes of joined tuple to output (null for all)
+	 */
+	public void setOutputAttributes(int[] attrs) {
+		outputAttrs = attrs == null ? null : attrs.clone();
+	}
+
+	/*
+	 * Sets the output relation from the relations of the (initialized) inputs - all attributes of both inputs unless
+	 * output attributes are set.
+	 */
+	protected void initOutputRelation() {
+		Relation left = input[0].getOutputRelation();
+		leftArity = left.getNumAttributes();
+		Relation out = new Relation(left);
+		out.mergeRelation(input[1].getOutputRelation());
+		setOutputRelation(outputAttrs == null ? out : out.project(outputAttrs));
+	}
+
+	protected Tuple outputJoinTuple(Tuple left, Tuple right) {
+		return outputJoinTuple(left, right, leftArity, outputAttrs);
+	}
+
+	/*
+	 * Creates an output tuple from left tuples with len1 attributes (e.g. tuples of a projected left input) and right
+	 * tuples. attrs are the output attributes of their concatenation (null for all).
+	 */
+	protected Tuple outputJoinTuple(Tuple left, Tuple right, int len1, int[] attrs) {
+		Tuple t = attrs == null ? new Tuple(left, right, getOutputRelation())
+				: new Tuple(left, right, len1, attrs, getOutputRelation());
+		incrementTuplesOutput();
+		return t;
+	}
+
+	protected void addJoinRow(TupleBatch batch, Tuple left, Tuple right) {
+		addJoinRow(batch, left, right, leftArity, outputAttrs);
+	}
+
+	/*
+	 * Adds a row to a batch from left tuples with len1 attributes and right tuples (see outputJoinTuple()).
+	 */
+	protected void addJoinRow(TupleBatch batch, Tuple left, Tuple right, int len1, int[] attrs) {
+		batch.addTuples(left, right, len1, attrs);
+		incrementTuplesOutput();
+	}
+
+	/*
+	 * Returns the attributes of an input needed by the join when its tuples are written to temporary files: its join
+	 * attributes followed by its other output attributes. Returns null if all attributes are output.
+	 */
+	protected int[] neededAttributes(int in, int[] joinAttrs) {
+		if (outputAttrs == null)
+			return null;
+		int offset = in == 0 ? 0 : leftArity;
+		int end = in == 0 ? leftArity : Integer.MAX_VALUE;
+		int[] needed = new int[joinAttrs.length + outputAttrs.length];
+		int n = 0;
+		for (int i = 0; i < joinAttrs.length; i++)
+			n = addAttribute(needed, n, joinAttrs[i]);
+		for (int i = 0; i < outputAttrs.length; i++)
+			if (outputAttrs[i] >= offset && outputAttrs[i] < end)
+				n = addAttribute(needed, n, outputAttrs[i] - offset);
+		return java.util.Arrays.copyOf(needed, n);
+	}
+
+	private static int addAttribute(int[] attrs, int n, int attr) {
+		for (int i = 0; i < n; i++)
+			if (attrs[i] == attr)
+				return n;
+		attrs[n] = attr;
+		return n + 1;
+	}
+
+	/*
+	 * Maps the output attributes to the attributes of the concatenation of projections of the inputs (see
+	 * neededAttributes(), null keeps all attributes of an input).
+	 */
+	protected int[] mapOutputAttributes(int[] leftKept, int[] rightKept) {
+		if (outputAttrs == null)
+			return null;
+		int len1 = leftKept == null ? leftArity : leftKept.length;
+		int[] mapped = new int[outputAttrs.length];
+		for (int i = 0; i < outputAttrs.length; i++) {
+			int a = outputAttrs[i];
+			if (a < leftArity)
+				mapped[i] = leftKept == null ? a : Project.mapAttributes(new int[] { a }, leftKept)[0];
+			else
+				mapped[i] = len1 + (rightKept == null ? a - leftArity
+						: Project.mapAttributes(new int[] { a - leftArity }, rightKept)[0]);
+		}
+		return mapped;
+	}
+}
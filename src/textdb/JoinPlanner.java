@@ -0,0 +1,251 @@
+package textdb;
+
+import java.io.IOException;
+
+/**
+ * Chooses the join algorithm for an equi-join of two inputs by estimating the
+ * cost of an (indexed) block nested-loop join, a hash join and a sort-merge
+ * join with BUFFER_SIZE pages of BLOCKING_FACTOR tuples each. Cost is measured
+ * in page I/Os plus a CPU term of CPU_COST_PER_TUPLE page I/Os per tuple
+ * processed. Input sizes are estimated from the files of text scans (see
+ * TextFileScan.estimateTuples()) or read from the footers of sorted tables.
+ * An input that is already sorted on the join key (see Operator.getSortOrder())
+ * is not sorted again by a merge join.
+ *
+ * The cost of producing the inputs is the same for every algorithm so only the
+ * I/O to read the inputs and the algorithm's own I/O are counted.
+ */
+public class JoinPlanner {
+	static public final double CPU_COST_PER_TUPLE = 0.01; // Page I/Os that cost as much as processing one tuple
+	static public final long DEFAULT_TUPLES = 1000; // Estimated size of an input that cannot be estimated
+
+	public enum Strategy {
+		NESTED_LOOP, HASH, MERGE
+	}
+
+	private int bufferSize; // Number of pages available to a join
+	private int blockingFactor; // Number of tuples per page
+
+	public JoinPlanner(int bsize, int bfr) {
+		bufferSize = Math.max(3, bsize);
+		blockingFactor = Math.max(1, bfr);
+	}
+
+	/**
+	 * Creates the cheapest join of two inputs.
+	 *
+	 * @param left
+	 *            left input
+	 * @param right
+	 *            right input
+	 * @param pred
+	 *            equi-join predicate
+	 * @return join operator (a merge join sorts only the inputs that are not already sorted on the key)
+	 * @throws IOException
+	 *             if an input file cannot be read to estimate its size
+	 */
+	public Operator createJoin(Operator left, Operator right, EquiJoinPredicate pred) throws IOException {
+		long leftTuples = estimateTuples(left);
+		long rightTuples = estimateTuples(right);
+		Strategy s = choose(leftTuples, rightTuples, isSortedOn(left, pred.getRelation1Locs()),
+				isSortedOn(right, pred.getRelation2Locs()));
+		return createJoin(s, left, right, pred, leftTuples < rightTuples);
+	}
+
+	/**
+	 * Creates a join of two inputs with the given strategy. A hash join estimates its input sizes itself the first time
+	 * it is initialized to choose the input to build on.
+	 */
+	public Operator createJoin(Strategy s, Operator left, Operator right, EquiJoinPredicate pred) {
+		return createJoin(s, left, right, pred, null);
+	}
+
+	/*
+	 * Creates a join with the given strategy. A hash join builds on the left input if buildLeft is true, on the right
+	 * input if it is false and on the input it estimates to be smaller if it is null.
+	 */
+	private Operator createJoin(Strategy s, Operator left, Operator right, EquiJoinPredicate pred, Boolean buildLeft) {
+		Operator[] in = { left, right };
+		if (s == Strategy.NESTED_LOOP)
+			return new NestedLoopJoin(in, pred, bufferSize, blockingFactor, true);
+		if (s == Strategy.HASH) {
+			HashJoin join = new HashJoin(in, pred, bufferSize, blockingFactor);
+			if (buildLeft != null)
+				join.setBuildLeft(buildLeft);
+			return join;
+		}
+
+		if (!isSortedOn(left, pred.getRelation1Locs()))
+			in[0] = new MergeSort(left, bufferSize, blockingFactor, keySorter(pred.getRelation1Locs()));
+		if (!isSortedOn(right, pred.getRelation2Locs()))
+			in[1] = new MergeSort(right, bufferSize, blockingFactor, keySorter(pred.getRelation2Locs()));
+		return new MergeJoin(in, pred);
+	}
+
+	/**
+	 * Creates a join that runs as parallel pipelines: both inputs are repartitioned on their join keys into
+	 * pipelines partitions, each partition pair is joined on its own thread with BUFFER_SIZE/pipelines pages, and the
+	 * results are gathered. Each pipeline is a hash join, or a merge join if it is cheaper (pipelines read their
+	 * inputs once so a nested-loop join is not used).
+	 *
+	 * @param left
+	 *            left input
+	 * @param right
+	 *            right input
+	 * @param pred
+	 *            equi-join predicate
+	 * @param pipelines
+	 *            number of parallel pipelines
+	 * @return gather of the pipelines' output (tuples are not in any particular order)
+	 * @throws IOException
+	 *             if an input file cannot be read to estimate its size
+	 */
+	public Operator createParallelJoin(Operator left, Operator right, EquiJoinPredicate pred, int pipelines)
+			throws IOException {
+		int n = Math.max(1, pipelines);
+		JoinPlanner sub = new JoinPlanner(bufferSize / n, blockingFactor);
+		long leftTuples = (estimateTuples(left) + n - 1) / n;
+		long rightTuples = (estimateTuples(right) + n - 1) / n;
+		boolean leftSorted = isSortedOn(left, pred.getRelation1Locs());
+		boolean rightSorted = isSortedOn(right, pred.getRelation2Locs());
+		Strategy s = sub.estimateCost(Strategy.MERGE, leftTuples, rightTuples, leftSorted, rightSorted) < sub
+				.estimateCost(Strategy.HASH, leftTuples, rightTuples, leftSorted, rightSorted) ? Strategy.MERGE
+						: Strategy.HASH;
+
+		RepartitionExchange leftParts = new RepartitionExchange(left, pred.getRelation1Locs(), n);
+		RepartitionExchange rightParts = new RepartitionExchange(right, pred.getRelation2Locs(), n);
+		Operator[] joins = new Operator[n];
+		for (int i = 0; i < n; i++)
+			joins[i] = sub.createJoin(s, leftParts.getPort(i), rightParts.getPort(i), pred, leftTuples < rightTuples);
+		return new GatherExchange(joins);
+	}
+
+	/**
+	 * Returns the strategy with the lowest estimated cost (ties go to the first strategy in Strategy order).
+	 */
+	public Strategy choose(Operator left, Operator right, EquiJoinPredicate pred) throws IOException {
+		return choose(estimateTuples(left), estimateTuples(right), isSortedOn(left, pred.getRelation1Locs()),
+				isSortedOn(right, pred.getRelation2Locs()));
+	}
+
+	private Strategy choose(long leftTuples, long rightTuples, boolean leftSorted, boolean rightSorted) {
+		Strategy best = null;
+		double bestCost = 0;
+		for (Strategy s : Strategy.values()) {
+			double cost = estimateCost(s, leftTuples, rightTuples, leftSorted, rightSorted);
+			if (best == null || cost < bestCost) {
+				best = s;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Estimates the cost of a join strategy in page I/Os (including the CPU term).
+	 *
+	 * @param s
+	 *            join strategy
+	 * @param leftTuples
+	 *            estimated tuples in left input
+	 * @param rightTuples
+	 *            estimated tuples in right input
+	 * @param leftSorted
+	 *            true if left input is sorted on the join key
+	 * @param rightSorted
+	 *            true if right input is sorted on the join key
+	 * @return estimated cost
+	 */
+	public double estimateCost(Strategy s, long leftTuples, long rightTuples, boolean leftSorted, boolean rightSorted) {
+		long leftPages = pages(leftTuples);
+		long rightPages = pages(rightTuples);
+
+		if (s == Strategy.NESTED_LOOP) {
+			// Inner input is scanned once per outer block and probes the block's hash index
+			long blocks = Math.max(1, (leftTuples + (long) bufferSize * blockingFactor - 1) / ((long) bufferSize * blockingFactor));
+			return leftPages + blocks * rightPages + CPU_COST_PER_TUPLE * (leftTuples + blocks * rightTuples);
+		}
+
+		if (s == Strategy.HASH) {
+			// Build in memory if smaller input fits, otherwise partition both inputs (written and read back)
+			long io = leftPages + rightPages;
+			long cpu = leftTuples + rightTuples;
+			if (Math.min(leftTuples, rightTuples) > (long) bufferSize * blockingFactor) {
+				io += 2 * (leftPages + rightPages);
+				cpu *= 2;
+			}
+			return io + CPU_COST_PER_TUPLE * cpu;
+		}
+
+		// Merge join: sort inputs that are not sorted, then merge
+		double cost = leftPages + rightPages + CPU_COST_PER_TUPLE * (leftTuples + rightTuples);
+		if (!leftSorted)
+			cost += sortCost(leftTuples);
+		if (!rightSorted)
+			cost += sortCost(rightTuples);
+		return cost;
+	}
+
+	/**
+	 * Estimates the number of tuples output by an operator.
+	 */
+	public long estimateTuples(Operator op) throws IOException {
+		if (op instanceof TextFileScan)
+			return ((TextFileScan) op).estimateTuples();
+		if (op instanceof SortedTableScan)
+			return ((SortedTableScan) op).getTable().getNumTuples();
+		if (op instanceof ProfiledOperator)
+			return estimateTuples(((ProfiledOperator) op).getOperator());
+		if (op instanceof MergeSort)
+			return estimateTuples(op.getInputs()[0]);
+
+		Operator[] in = op.getInputs();
+		if (in.length == 2) // Equi-join: assume each tuple of the larger input matches one tuple
+			return Math.max(estimateTuples(in[0]), estimateTuples(in[1]));
+		if (in.length == 1)
+			return estimateTuples(in[0]);
+		return op.getTuplesOutput() > 0 ? op.getTuplesOutput() : DEFAULT_TUPLES;
+	}
+
+	/**
+	 * Returns true if an operator's output is sorted in ascending order on the given attributes.
+	 */
+	public static boolean isSortedOn(Operator op, int[] attrs) {
+		int[] order = op.getSortOrder();
+		if (order == null || order.length < attrs.length)
+			return false;
+		for (int i = 0; i < attrs.length; i++)
+			if (order[i] != attrs[i])
+				return false;
+		return true;
+	}
+
+	/*
+	 * I/Os to sort an input: runs of BUFFER_SIZE pages are written and read back once per merge pass (no I/O if the
+	 * input fits in the buffer).
+	 */
+	private double sortCost(long tuples) {
+		long pages = pages(tuples);
+		long runs = (pages + bufferSize - 1) / bufferSize;
+		double cpu = CPU_COST_PER_TUPLE * tuples * Math.max(1, Math.log(Math.max(2, tuples)) / Math.log(2));
+		if (runs <= 1)
+			return cpu;
+
+		int fanIn = Math.max(2, bufferSize - 1);
+		int passes = 0;
+		for (long r = runs; r > 1; r = (r + fanIn - 1) / fanIn)
+			passes++;
+		return 2.0 * pages * passes + cpu;
+	}
+
+	private long pages(long tuples) {
+		return (tuples + blockingFactor - 1) / blockingFactor;
+	}
+
+	private static SortComparator keySorter(int[] attrs) {
+		boolean[] asc = new boolean[attrs.length];
+		for (int i = 0; i < asc.length; i++)
+			asc[i] = true;
+		return new SortComparator(attrs.clone(), asc);
+	}
+}
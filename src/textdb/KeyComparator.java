@@ -0,0 +1,198 @@
+package textdb;
+
+/**
+ * Compares the key attributes of two tuples. Each key layout (single INT key,
+ * multiple INT keys, STRING keys, other keys) has its own final subclass so a
+ * call site that always sees one layout stays monomorphic and can be inlined.
+ * Use forKeys() to get the comparator for a layout.
+ */
+public abstract class KeyComparator {
+	/**
+	 * Compares the keys of two tuples.
+	 *
+	 * @return negative if t1's key is less than t2's key, 0 if equal, positive otherwise
+	 */
+	public abstract int compare(Tuple t1, Tuple t2);
+
+	/**
+	 * Returns true if the keys of two tuples are equal.
+	 */
+	public abstract boolean isEqual(Tuple t1, Tuple t2);
+
+	/**
+	 * Returns the key class (EquiJoinPredicate.INT_KEY, STRING_KEY or OBJECT_KEY) of an attribute type.
+	 */
+	public static int keyClass(int attrType) {
+		if (attrType == Attribute.TYPE_INT || attrType == Attribute.TYPE_SMALLINT)
+			return EquiJoinPredicate.INT_KEY;
+		if (attrType == Attribute.TYPE_STRING || attrType == Attribute.TYPE_CHAR)
+			return EquiJoinPredicate.STRING_KEY;
+		return EquiJoinPredicate.OBJECT_KEY;
+	}
+
+	/**
+	 * Creates the comparator for a key layout.
+	 *
+	 * @param locs1
+	 *            key attribute indexes in first tuple
+	 * @param locs2
+	 *            key attribute indexes in second tuple
+	 * @param keyClass
+	 *            EquiJoinPredicate.INT_KEY or STRING_KEY if all key attributes are of that class, OBJECT_KEY
+	 *            otherwise
+	 * @param asc
+	 *            true for each attribute sorted in ascending order (null if all ascending)
+	 * @return comparator
+	 */
+	public static KeyComparator forKeys(int[] locs1, int[] locs2, int keyClass, boolean[] asc) {
+		boolean allAsc = true;
+		if (asc != null)
+			for (int i = 0; i < asc.length; i++)
+				allAsc &= asc[i];
+
+		if (keyClass == EquiJoinPredicate.INT_KEY) {
+			if (locs1.length == 1 && allAsc)
+				return new SingleIntKey(locs1[0], locs2[0]);
+			return new MultiIntKey(locs1, locs2, directions(asc, locs1.length));
+		}
+		if (keyClass == EquiJoinPredicate.STRING_KEY)
+			return new StringKey(locs1, locs2, directions(asc, locs1.length));
+		return new ObjectKey(locs1, locs2, directions(asc, locs1.length));
+	}
+
+	/*
+	 * Returns 1 for each ascending attribute and -1 for each descending attribute.
+	 */
+	private static int[] directions(boolean[] asc, int n) {
+		int[] dir = new int[n];
+		for (int i = 0; i < n; i++)
+			dir[i] = (asc == null || asc[i]) ? 1 : -1;
+		return dir;
+	}
+
+	/**
+	 * Single ascending INT or SMALLINT key.
+	 */
+	static final class SingleIntKey extends KeyComparator {
+		private final int loc1; // Key index in first tuple
+		private final int loc2; // Key index in second tuple
+
+		SingleIntKey(int loc1, int loc2) {
+			this.loc1 = loc1;
+			this.loc2 = loc2;
+		}
+
+		public int compare(Tuple t1, Tuple t2) {
+			return Integer.compare(t1.getInt(loc1), t2.getInt(loc2));
+		}
+
+		public boolean isEqual(Tuple t1, Tuple t2) {
+			return t1.getInt(loc1) == t2.getInt(loc2);
+		}
+	}
+
+	/**
+	 * Several INT or SMALLINT keys (or one descending key).
+	 */
+	static final class MultiIntKey extends KeyComparator {
+		private final int[] locs1; // Key indexes in first tuple
+		private final int[] locs2; // Key indexes in second tuple
+		private final int[] dir; // 1 if ascending, -1 if descending
+
+		MultiIntKey(int[] locs1, int[] locs2, int[] dir) {
+			this.locs1 = locs1.clone();
+			this.locs2 = locs2.clone();
+			this.dir = dir;
+		}
+
+		public int compare(Tuple t1, Tuple t2) {
+			for (int i = 0; i < locs1.length; i++) {
+				int val = Integer.compare(t1.getInt(locs1[i]), t2.getInt(locs2[i]));
+				if (val != 0)
+					return val * dir[i];
+			}
+			return 0;
+		}
+
+		public boolean isEqual(Tuple t1, Tuple t2) {
+			for (int i = 0; i < locs1.length; i++)
+				if (t1.getInt(locs1[i]) != t2.getInt(locs2[i]))
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * One or more STRING or CHAR keys.
+	 */
+	static final class StringKey extends KeyComparator {
+		private final int[] locs1; // Key indexes in first tuple
+		private final int[] locs2; // Key indexes in second tuple
+		private final int[] dir; // 1 if ascending, -1 if descending
+
+		StringKey(int[] locs1, int[] locs2, int[] dir) {
+			this.locs1 = locs1.clone();
+			this.locs2 = locs2.clone();
+			this.dir = dir;
+		}
+
+		public int compare(Tuple t1, Tuple t2) {
+			for (int i = 0; i < locs1.length; i++) {
+				int val = ((String) t1.getObject(locs1[i])).compareTo((String) t2.getObject(locs2[i]));
+				if (val != 0)
+					return val * dir[i];
+			}
+			return 0;
+		}
+
+		public boolean isEqual(Tuple t1, Tuple t2) {
+			for (int i = 0; i < locs1.length; i++)
+				if (!t1.getObject(locs1[i]).equals(t2.getObject(locs2[i])))
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Keys of other or mixed types compared as Comparable objects (unboxed INT
+	 * values are still compared without boxing).
+	 */
+	static final class ObjectKey extends KeyComparator {
+		private final int[] locs1; // Key indexes in first tuple
+		private final int[] locs2; // Key indexes in second tuple
+		private final int[] dir; // 1 if ascending, -1 if descending
+
+		ObjectKey(int[] locs1, int[] locs2, int[] dir) {
+			this.locs1 = locs1.clone();
+			this.locs2 = locs2.clone();
+			this.dir = dir;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public int compare(Tuple t1, Tuple t2) {
+			for (int i = 0; i < locs1.length; i++) {
+				int l1 = locs1[i], l2 = locs2[i];
+				int val;
+				if (t1.isIntField(l1) && t2.isIntField(l2))
+					val = Integer.compare(t1.getInt(l1), t2.getInt(l2));
+				else
+					val = ((Comparable) t1.getObject(l1)).compareTo(t2.getObject(l2));
+				if (val != 0)
+					return val * dir[i];
+			}
+			return 0;
+		}
+
+		public boolean isEqual(Tuple t1, Tuple t2) {
+			for (int i = 0; i < locs1.length; i++) {
+				int l1 = locs1[i], l2 = locs2[i];
+				if (t1.isIntField(l1) && t2.isIntField(l2)) {
+					if (t1.getInt(l1) != t2.getInt(l2))
+						return false;
+				} else if (!t1.getObject(l1).equals(t2.getObject(l2)))
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -1,59 +1,240 @@
 package textdb;
 
 import java.io.*;
+import java.util.ArrayList;
 
 /**
- * Contains code for performing an external merge join in iterator format.
+ * Contains code for performing an external merge join in iterator format. Both
+ * inputs must be sorted on the join attributes. Left tuples with the same key
+ * are buffered (up to the merge buffer size in memory, the rest in a temporary
+ * file) and joined with every right tuple having that key. If output
+ * attributes are set, only the join attributes and output attributes of left
+ * tuples are written to the temporary file.
  */
-public class MergeJoin extends Operator {
-	private int MERGE_BUFFER_SIZE = 10000; // The number of tuples that can be buffered with the same key.
+public class MergeJoin extends JoinOperator {
+	static public final int DEFAULT_MERGE_BUFFER_SIZE = 10000; // Tuples with the same key buffered in memory by default
+	private final int mergeBufferSize; // The number of tuples that can be buffered with the same key.
 	private EquiJoinPredicate pred; // A equi-join comparison class that can handle 1 or more attributes
+	private KeyComparator keyComp; // Comparator of pred specialized for its key type
 	// Iterator state variables
 	private Tuple tupleLeft;
 	private Tuple tupleRight;
+	private Tuple outLeft; // Left tuple joining with tupleRight found by advance()
+
+	// Buffered run of left tuples with the same key
+	private ArrayList<Tuple> run; // Run tuples kept in memory
+	private boolean inRun; // True if tupleRight is being joined with the current run
+	private int runPos; // Next run tuple in memory to join with tupleRight
+	private String spillFileName; // File holding run tuples past mergeBufferSize (null if none)
+	private int spillCount; // Tuples in spill file
+	private BinaryTupleReader spillFile; // Reader for spill file while joining with tupleRight
+	private int[] spillAttrs; // Left attributes written to the spill file (null for all)
+	private Relation spillRelation; // Relation of spilled tuples
+	private int[] spillOutputAttrs; // Output attributes of a spilled tuple joined with tupleRight (null for all)
+	private boolean outLeftSpilled; // True if outLeft was read from the spill file
 
 	public MergeJoin(Operator[] in, EquiJoinPredicate p) {
-		super(in, 0, 0);
+		this(in, p, DEFAULT_MERGE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a join buffering at most mergeBufferSize left tuples with the same key in memory. Spill file I/O is
+	 * counted in pages of one tuple.
+	 */
+	public MergeJoin(Operator[] in, EquiJoinPredicate p, int mergeBufferSize) {
+		this(in, p, mergeBufferSize, 1);
+	}
+
+	/**
+	 * Creates a join buffering at most mergeBufferSize left tuples with the same key in memory. Spill file I/O is
+	 * counted in pages of bfr tuples.
+	 */
+	public MergeJoin(Operator[] in, EquiJoinPredicate p, int mergeBufferSize, int bfr) {
+		super(in, bfr, 0);
+		if (mergeBufferSize < 1)
+			throw new IllegalArgumentException("Merge buffer size must be at least 1: " + mergeBufferSize);
+		if (bfr < 1)
+			throw new IllegalArgumentException("Blocking factor must be at least 1: " + bfr);
 		pred = p;
+		keyComp = p.getKeyComparator();
+		this.mergeBufferSize = mergeBufferSize;
+	}
+
+	public int[] getSortOrder() {
+		// Output is in join key order (left attributes come first in output tuples)
+		return Project.mapAttributes(pred.getRelation1Locs().clone(), outputAttrs);
 	}
 
 	public void init() throws IOException {
 		input[0].init();
 		input[1].init();
+		initOutputRelation();
 
-		// Create output relation - keep all attributes of both tuples
-		Relation out = new Relation(input[0].getOutputRelation());
-		out.mergeRelation(input[1].getOutputRelation());
-		setOutputRelation(out);
+		// Spilled left tuples keep only the attributes needed to join and output them
+		spillAttrs = neededAttributes(0, pred.getRelation1Locs());
+		spillRelation = spillAttrs == null ? input[0].getOutputRelation()
+				: input[0].getOutputRelation().project(spillAttrs);
+		spillOutputAttrs = mapOutputAttributes(spillAttrs, null);
 
-		// TODO: YOUR SETUP CODE HERE
-		tupleLeft= input[0].next();
+		run = new ArrayList<Tuple>();
+		inRun = false;
+		spillFileName = null;
+		spillFile = null;
+		tupleLeft = nextLeft();
+		tupleRight = nextRight();
 	}
 
 	public Tuple next() throws IOException {
-        // TODO: YOUR SETUP CODE HERE
-        // check if we have moved through all the tuples in a relation
-        while(tupleLeft != null){
-            tupleRight = input[1].next();
-            while(tupleRight !=null){
-                if(pred.isEqual(tupleLeft, tupleRight)){
-                  outputJoinTuple(tupleLeft, tupleRight);
+		if (!advance())
+			return null;
+		if (outLeftSpilled)
+			return outputJoinTuple(outLeft, tupleRight, spillRelation.getNumAttributes(), spillOutputAttrs);
+		return outputJoinTuple(outLeft, tupleRight);
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException {
+		// Copy values of matching pairs into batch columns without creating joined tuples
+		batch.reset();
+		while (!batch.isFull() && advance()) {
+			if (outLeftSpilled)
+				addJoinRow(batch, outLeft, tupleRight, spillRelation.getNumAttributes(), spillOutputAttrs);
+			else
+				addJoinRow(batch, outLeft, tupleRight);
+		}
+		return !batch.isEmpty();
+	}
+
+	/*
+	 * Finds the next pair of joining tuples (outLeft, tupleRight). Returns false
+	 * if there are no more.
+	 */
+	private boolean advance() throws IOException {
+		while (true) {
+			if (inRun) {
+				// Join tupleRight with the next tuple in the run
+				outLeft = nextRunTuple();
+				if (outLeft != null)
+					return true;
+
+				// Run finished for this right tuple - rejoin run if the next right tuple has the same key
+				tupleRight = nextRight();
+				if (tupleRight != null && keyComp.compare(run.get(0), tupleRight) == 0) {
+					resetRun();
+					continue;
 				}
-					 tupleRight= input[1].next();
-            }
-			input[1].init();
-			tupleLeft = input[0].next();
-        }
-        return null;
-}
+				clearRun();
+				continue;
+			}
+
+			if (tupleLeft == null || tupleRight == null)
+				return false;
+
+			int val = keyComp.compare(tupleLeft, tupleRight);
+			if (val < 0)
+				tupleLeft = nextLeft();
+			else if (val > 0)
+				tupleRight = nextRight();
+			else {
+				loadRun();
+				resetRun();
+			}
+		}
+	}
 
 	public void close() throws IOException {
 		super.close();
+		clearRun();
+	}
+
+	private Tuple nextLeft() throws IOException {
+		Tuple t = input[0].next();
+		if (t != null)
+			incrementTuplesRead();
+		return t;
 	}
 
-	private Tuple outputJoinTuple(Tuple left, Tuple right) {
-		Tuple t = new Tuple(left, right, getOutputRelation());
-		incrementTuplesOutput();
+	private Tuple nextRight() throws IOException {
+		Tuple t = input[1].next();
+		if (t != null)
+			incrementTuplesRead();
 		return t;
 	}
+
+	/*
+	 * Buffers all left tuples with the same key as tupleRight. Tuples past
+	 * mergeBufferSize are written to a temporary file.
+	 */
+	private void loadRun() throws IOException {
+		BinaryTupleWriter out = null;
+		while (tupleLeft != null && keyComp.compare(tupleLeft, tupleRight) == 0) {
+			if (run.size() < mergeBufferSize)
+				run.add(tupleLeft);
+			else {
+				if (out == null) {
+					spillFileName = FileManager.createTempFileName("merge_join_run");
+					out = FileManager.openTupleWriter(spillFileName, spillRelation);
+					spillCount = 0;
+				}
+				out.write(spillAttrs == null ? tupleLeft : new Tuple(tupleLeft, spillAttrs, spillRelation));
+				incrementTupleIOs();
+				spillCount++;
+			}
+			tupleLeft = nextLeft();
+		}
+		if (out != null) {
+			closeTempFile(out);
+			incrementPageIOs(spillPages());
+		}
+		inRun = true;
+	}
+
+	/*
+	 * Starts joining tupleRight with the first tuple of the run.
+	 */
+	private void resetRun() throws IOException {
+		runPos = 0;
+		if (spillFile != null)
+			closeTempFile(spillFile);
+		spillFile = null;
+	}
+
+	private Tuple nextRunTuple() throws IOException {
+		outLeftSpilled = false;
+		if (runPos < run.size())
+			return run.get(runPos++);
+
+		if (spillFileName == null)
+			return null;
+
+		if (spillFile == null) {
+			// Every pass over the spill file reads all of its pages
+			spillFile = FileManager.openTupleReader(spillFileName, spillRelation);
+			incrementPageIOs(spillPages());
+		}
+
+		Tuple t = new Tuple(spillRelation);
+		if (!spillFile.read(t))
+			return null;
+		incrementTupleIOs();
+		outLeftSpilled = true;
+		return t;
+	}
+
+	private int spillPages() {
+		return (int) Math.ceil((double) spillCount / BLOCKING_FACTOR);
+	}
+
+	private void clearRun() throws IOException {
+		inRun = false;
+		if (run != null)
+			run.clear();
+		if (spillFile != null) {
+			closeTempFile(spillFile);
+			spillFile = null;
+		}
+		if (spillFileName != null) {
+			FileManager.deleteFile(spillFileName);
+			spillFileName = null;
+		}
+	}
 }
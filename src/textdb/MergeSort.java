@@ -4,19 +4,35 @@ package textdb;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
 
 /**
- * An iterator performing a two-pass external merge sort. Note that REQUIRES input iterator to support hasNext() method.
+ * An iterator performing an external merge sort. The input is read with next() only (one tuple past a full buffer
+ * is read to find out if the input fits in memory). Sorted runs are created by replacement selection so runs are on
+ * average twice the buffer size (and a single run is produced if the input is already sorted). If there are more runs
+ * than the merge fan-in (by default BUFFER_SIZE-1), intermediate passes merge groups of runs until the final merge can
+ * be done in one pass. Optionally, runs can be sorted and written by worker threads while the caller's thread keeps
+ * reading the input.
  */
 public class MergeSort extends Operator {
 	private Tuple[] buffer;							// Dynamic buffer of tuples (set when MergeSort is initialized)
+	private int[] heapRun;							// Run number of each tuple in buffer during replacement selection
+	private long[] heapSeq;							// Arrival order of each tuple in buffer (keeps sort stable)
+	private int heapSize;							// Number of tuples in replacement selection heap
 	private int arraySize;							// Size of buffer array in tuples
-	private BufferedOutputStream outFile;			// Writer for output file
-	private BufferedInputStream[] mergeFile;		// Array to store readers for input files created after partition step
+	private BinaryTupleWriter outFile;				// Writer for output file
+	private BinaryTupleReader[] mergeFile;			// Array to store readers for input files created after partition step
 	private ArrayList<String> mergeFileName;		// Stores file names of partition files
 	private int numFiles;							// Number of partition files
+	private int[] mergeHeap;						// Heap of run indexes ordered by the run's current tuple in buffer
+	private int mergeFanIn;							// Maximum number of runs merged at the same time
+	private int sortThreads;						// Chunks sorted while the next one is read (0 to create runs on caller's thread)
 	private boolean onePass;						// True if only need one pass of input (input file fit into buffer)
 	private int curTuple;							// Current tuple position in buffer (used only for one pass)
+	private Tuple lookahead;						// Input tuple read past a full buffer and not yet used (null if none)
 	private SortComparator sorter;					// Contains information on which attributes and how to sort them (ASC or DESC)
 	private Operator input;							// Input operator (used as a convenience as can also use in[0] in Operator superclass
 
@@ -27,11 +43,75 @@ public class MergeSort extends Operator {
 		input = in;
 		sorter = sc;
 		arraySize = bsize*bfr;
+		mergeFanIn = Math.max(2, bsize-1);
 		setOutputRelation(in.getOutputRelation());
 	}
 
+	/**
+	 * Creates a sort that keeps only the attributes needed above it. The input is projected on the needed attributes
+	 * before it is buffered so attributes that are not needed (such as long strings) are not written to run files. The
+	 * output relation has the needed attributes in the given order and the sort comparator's attribute indexes refer
+	 * to the input relation.
+	 *
+	 * @param neededAttrs
+	 * 		input attributes output by the sort (must include the sort attributes)
+	 */
+	public MergeSort(Operator in, int bsize, int bfr, SortComparator sc, int[] neededAttrs)
+	{	this(new Project(in, neededAttrs), bsize, bfr, projectComparator(sc, neededAttrs));
+	}
+
+	/*
+	 * Returns a comparator on the same attributes as sc for tuples projected on the given attributes.
+	 */
+	private static SortComparator projectComparator(SortComparator sc, int[] neededAttrs)
+	{	int[] idx = sc.getAttributeIndexes();
+		int[] mapped = Project.mapAttributes(idx, neededAttrs);
+		if (mapped == null || mapped.length != idx.length)
+			throw new IllegalArgumentException("Sort attributes " + Arrays.toString(idx) + " are not in needed attributes "
+					+ Arrays.toString(neededAttrs));
+		return new SortComparator(mapped, sc.getSortAscending());
+	}
+
+	/**
+	 * Sets the maximum number of runs merged at the same time (at least 2).
+	 *
+	 * @param fanIn
+	 * 		number of runs merged in one pass
+	 */
+	public void setMergeFanIn(int fanIn)
+	{	mergeFanIn = Math.max(2, Math.min(fanIn, arraySize));
+	}
+
+	/**
+	 * Creates runs in parallel: the caller's thread reads the input into chunks of the buffer that are sorted and written
+	 * by tasks in the common ForkJoinPool (shared by all sorts). The buffer is split into threads+1 chunks so the total
+	 * number of tuples in memory is still BUFFER_SIZE*BLOCKING_FACTOR and a sort never has more than threads+1 chunks
+	 * waiting to be written. Runs are chunk sized (replacement selection is not used).
+	 *
+	 * @param threads
+	 * 		chunks sorted while the caller's thread reads the next one (0 to create runs on the caller's thread)
+	 */
+	public void setParallelRunGeneration(int threads)
+	{	sortThreads = Math.max(0, threads);
+	}
+
+	public int[] getSortOrder()
+	{	boolean[] asc = sorter.getSortAscending();
+		for (int i=0; i < asc.length; i++)
+			if (!asc[i])
+				return null;			// Only ascending orders are reported
+		return sorter.getAttributeIndexes();
+	}
+
+	protected void setInput(int i, Operator in)
+	{	super.setInput(i, in);
+		input = in;
+	}
+
 	public void init() throws IOException, FileNotFoundException
 	{	input.init();
+		setOutputRelation(input.getOutputRelation());
+		sorter.setRelation(input.getOutputRelation());
 
 		// Initialize buffer
 		buffer = new Tuple[arraySize];
@@ -40,17 +120,10 @@ public class MergeSort extends Operator {
 		partition();
 
 		if (!onePass)
-		{	// Create file array
-			mergeFile = new BufferedInputStream[numFiles];
-
-			// Open all input files and set initial cursor
-			for (int i = 0; i < numFiles; ++i)
-			{	mergeFile[i] = FileManager.openInputFile( (String) mergeFileName.get(i));
-
-				buffer[i] = new Tuple(input.getOutputRelation());
-				if (!buffer[i].read(mergeFile[i]))	// Read a tuple from input
-					break;
-			}
+		{	// Merge runs until few enough are left for the final merge
+			if (numFiles > mergeFanIn)
+				intermediatePasses();
+			openRuns();
 		}
 		else
 		{	// Just output tuples currently in sorted buffer
@@ -68,89 +141,421 @@ public class MergeSort extends Operator {
 		}
 		else
 		{	// Merging tuples
-			while (numFiles > 0)
-			{
-				// Find next output line
-				int minIdx = 0;
-				for (int i = 1; i < numFiles; i++)
-				{	 if (sorter.compare(buffer[i], buffer[minIdx]) < 0)
-						minIdx = i;
+			return mergeNext();
+		}
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException
+	{	// Copy values of sorted tuples into batch columns without creating new tuples
+		batch.reset();
+		if (onePass)
+		{	while (!batch.isFull() && curTuple < arraySize && buffer[curTuple] != null)
+				batch.addTuple(buffer[curTuple++]);
+		}
+		else
+		{	while (!batch.isFull() && numFiles > 0)
+			{	int minIdx = mergeHeap[0];
+				batch.addTuple(buffer[minIdx]);
+				advanceRun(minIdx);
+			}
+		}
+		return !batch.isEmpty();
+	}
+
+	/*
+	 * Opens all runs in mergeFileName and builds the merge heap on their first tuples.
+	 */
+	private void openRuns() throws IOException, FileNotFoundException
+	{	// Create file array
+		mergeFile = new BinaryTupleReader[numFiles];
+
+		// Open all input files and set initial cursor
+		mergeHeap = new int[numFiles];
+		int runs = numFiles;
+		numFiles = 0;
+		for (int i = 0; i < runs; ++i)
+		{	mergeFile[i] = FileManager.openTupleReader( (String) mergeFileName.get(i), input.getOutputRelation());
+
+			buffer[i] = new Tuple(input.getOutputRelation());
+			if (!mergeFile[i].read(buffer[i]))	// Read a tuple from input
+				deleteRun(i);
+			else
+				mergeHeap[numFiles++] = i;
+		}
+		for (int i = numFiles/2 - 1; i >= 0; i--)
+			mergeSiftDown(i);
+	}
+
+	/*
+	 * Returns the next tuple of the merge of the open runs (or null if all runs are finished).
+	 */
+	private Tuple mergeNext() throws IOException
+	{	if (numFiles == 0)
+			return null;	// No more tuples to return
+
+		// Smallest record is at the top of the heap
+		int minIdx = mergeHeap[0];
+		Tuple t = new Tuple(buffer[minIdx]);
+		advanceRun(minIdx);
+		return t;
+	}
+
+	/*
+	 * Reads the next tuple of the run at the top of the merge heap.
+	 */
+	private void advanceRun(int minIdx) throws IOException
+	{	 // Get the next line from this file
+		if (!mergeFile[minIdx].read(buffer[minIdx]))
+		{	// This file is finished - close it, delete it and remove it from the heap
+			deleteRun(minIdx);
+			numFiles--;
+			mergeHeap[0] = mergeHeap[numFiles];
+		}
+		mergeSiftDown(0);
+	}
+
+	/*
+	 * Merges consecutive groups of at most mergeFanIn runs into longer runs until at most mergeFanIn runs remain.
+	 * Consecutive runs are merged so that the sort stays stable.
+	 */
+	private void intermediatePasses() throws IOException, FileNotFoundException
+	{	while (numFiles > mergeFanIn)
+		{	ArrayList<String> runs = mergeFileName;
+			ArrayList<String> newRuns = new ArrayList<String>(runs.size()/mergeFanIn + 1);
+
+			for (int start = 0; start < runs.size(); start += mergeFanIn)
+			{	int end = Math.min(start + mergeFanIn, runs.size());
+				if (end - start == 1)
+				{	newRuns.add(runs.get(start));		// Single run left over - carry to next pass
+					continue;
 				}
 
-				// Return smallest record
-				Tuple t = new Tuple(buffer[minIdx]);
-
-				 // Get the next line from this file
-				if (!buffer[minIdx].read(mergeFile[minIdx]))
-				{	// This file is finished - close it and replace it and delete it
-					FileManager.closeFile(mergeFile[minIdx]);
-					numFiles--;
-					File tmpFile = new File( (String) mergeFileName.get(minIdx));
-					tmpFile.delete();
-					buffer[minIdx]=buffer[numFiles];
-					mergeFile[minIdx]=mergeFile[numFiles];
-					mergeFileName.set(minIdx,mergeFileName.get(numFiles));
-					mergeFileName.remove(numFiles);
+				mergeFileName = new ArrayList<String>(runs.subList(start, end));
+				numFiles = end - start;
+				openRuns();
+
+				String st = FileManager.createTempFileName("merge_pass_run"+newRuns.size());
+				newRuns.add(st);
+				outFile = FileManager.openTupleWriter(st, input.getOutputRelation());
+				int count = 0;
+				Tuple t;
+				while ( (t = mergeNext()) != null)
+				{	outFile.write(t);
+					count++;
 				}
-				return t;
+				closeTempFile(outFile);
+
+				int pages = (int) Math.ceil((double)count/BLOCKING_FACTOR);
+				incrementTupleIOs(count*2);		// Intermediate run written and read back
+				incrementPageIOs(pages*2);
 			}
-			return null;	// No more tuples to return
+
+			mergeFileName = newRuns;
+			numFiles = newRuns.size();
 		}
+		mergeFile = null;
+	}
+
+	private void deleteRun(int i) throws IOException
+	{	closeTempFile(mergeFile[i]);
+		mergeFile[i] = null;
+		FileManager.deleteFile((String) mergeFileName.get(i));
+	}
+
+	/*
+	 * Restores heap order of run indexes below position i. Ties go to the earlier run so the merge is stable.
+	 */
+	private void mergeSiftDown(int i)
+	{	while (true)
+		{	int min = i;
+			int left = 2*i + 1;
+			int right = left + 1;
+			if (left < numFiles && mergeLess(mergeHeap[left], mergeHeap[min]))
+				min = left;
+			if (right < numFiles && mergeLess(mergeHeap[right], mergeHeap[min]))
+				min = right;
+			if (min == i)
+				return;
+
+			int r = mergeHeap[i];
+			mergeHeap[i] = mergeHeap[min];
+			mergeHeap[min] = r;
+			i = min;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean mergeLess(int run1, int run2)
+	{	int val = sorter.compare(buffer[run1], buffer[run2]);
+		return val < 0 || (val == 0 && run1 < run2);
 	}
 
 	public void close() throws IOException
 	{	// Input iterator is closed after partition phase
+		// Remove any runs not fully merged
+		if (!onePass && mergeFile != null)
+		{	for (int i = 0; i < mergeFile.length; i++)
+				if (mergeFile[i] != null)
+					deleteRun(i);
+			numFiles = 0;
+		}
 	}
 
 
 
-	@SuppressWarnings("unchecked")
 	private void partition() throws IOException, FileNotFoundException
 	{
-		// Create sorted sublists (partitions)
+		// Fill buffer with the start of the input
 		numFiles = 0;
-		while (true)
-		{	int count = 0;
-			while (count < arraySize)
-			{	if ( (buffer[count] = input.next()) == null)						// Read a tuple from input
-						break;
+		onePass = false;
+		mergeFileName.clear();
+		int count = 0;
+		while (count < arraySize)
+		{	if ( (buffer[count] = input.next()) == null)						// Read a tuple from input
+				break;
+			count++;
+		}
+
+		// Check for single pass case (a full buffer is followed by a lookahead tuple if input is left to read)
+		lookahead = count < arraySize ? null : input.next();
+		if (lookahead == null)
+		{	incrementPagesRead((int)Math.ceil((double)count/BLOCKING_FACTOR));	// As require only single read of input
+			incrementTuplesRead(count);
+			incrementTuplesOutput(count);
+			onePass = true;
+			singlePass(count);
+			return;
+		}
+
+		if (sortThreads > 0)
+		{	parallelPartition(count);
+			return;
+		}
+
+		// Create sorted sublists (runs) by replacement selection
+		heapRun = new int[arraySize];
+		heapSeq = new long[arraySize];
+		long seq = 0;
+		for (heapSize = 0; heapSize < count; heapSize++)
+		{	heapRun[heapSize] = 0;
+			heapSeq[heapSize] = seq++;
+		}
+		for (int i = heapSize/2 - 1; i >= 0; i--)
+			siftDown(i);
+
+		int curRun = 0;
+		int runCount = 0;
+		outFile = FileManager.openTupleWriter(generateTmpFileName(numFiles), input.getOutputRelation());
+		while (heapSize > 0)
+		{	if (heapRun[0] != curRun)
+			{	// Smallest tuple belongs to next run - start a new run file
+				finishRun(runCount);
+				curRun++;
+				runCount = 0;
+				outFile = FileManager.openTupleWriter(generateTmpFileName(numFiles), input.getOutputRelation());
+			}
+
+			Tuple last = buffer[0];
+			outFile.write(last);
+			runCount++;
+
+			Tuple t = nextInput();
+			if (t != null)
+			{	// New tuple can only go in current run if it is not smaller than tuple just written
 				count++;
+				buffer[0] = t;
+				heapRun[0] = sorter.compare(t, last) >= 0 ? curRun : curRun+1;
+				heapSeq[0] = seq++;
 			}
+			else
+			{	heapSize--;
+				buffer[0] = buffer[heapSize];
+				heapRun[0] = heapRun[heapSize];
+				heapSeq[0] = heapSeq[heapSize];
+				buffer[heapSize] = null;
+			}
+			siftDown(0);
+		}
+		finishRun(runCount);
+
+		incrementPagesRead((int) Math.ceil((double)count/BLOCKING_FACTOR));		// Read from input
+		incrementTuplesRead(count);
+		incrementTuplesOutput(count);
+		heapRun = null;
+		heapSeq = null;
+		input.close();
+	}
+
+	/*
+	 * Returns the next input tuple (the lookahead tuple first).
+	 */
+	private Tuple nextInput() throws IOException
+	{	Tuple t = lookahead;
+		if (t == null)
+			return input.next();
+		lookahead = null;
+		return t;
+	}
+
+	private void finishRun(int count) throws IOException
+	{	closeTempFile(outFile);
+		int pages = (int) Math.ceil((double)count/BLOCKING_FACTOR);
+		incrementTupleIOs(count*2);		// Tuple I/Os not including input
+		incrementPageIOs(pages*2);		// Page I/Os not including input
+		numFiles++;
+	}
+
+	/*
+	 * Heap order for replacement selection: by run number, then sort order, then arrival order.
+	 */
+	@SuppressWarnings("unchecked")
+	private int heapCompare(int i, int j)
+	{	if (heapRun[i] != heapRun[j])
+			return heapRun[i] < heapRun[j] ? -1 : 1;
+		int val = sorter.compare(buffer[i], buffer[j]);
+		if (val != 0)
+			return val;
+		return Long.compare(heapSeq[i], heapSeq[j]);
+	}
 
-			// Check for single pass case
-			if (numFiles==0 && (count < arraySize || !input.hasNext()))	// Filled up buffer but no input left to read
-			{	incrementPagesRead((int)Math.ceil((double)count/BLOCKING_FACTOR));	// As require only single read of input
-				incrementTuplesRead(count);
-				incrementTuplesOutput(count);
-				onePass = true;
-				singlePass(count);
+	private void siftDown(int i)
+	{	while (true)
+		{	int min = i;
+			int left = 2*i + 1;
+			int right = left + 1;
+			if (left < heapSize && heapCompare(left, min) < 0)
+				min = left;
+			if (right < heapSize && heapCompare(right, min) < 0)
+				min = right;
+			if (min == i)
 				return;
+
+			Tuple t = buffer[i];
+			buffer[i] = buffer[min];
+			buffer[min] = t;
+			int r = heapRun[i];
+			heapRun[i] = heapRun[min];
+			heapRun[min] = r;
+			long q = heapSeq[i];
+			heapSeq[i] = heapSeq[min];
+			heapSeq[min] = q;
+			i = min;
+		}
+	}
+
+	/*
+	 * Creates sorted runs of chunks of the input on worker threads. The buffer already holds count tuples. A tuple permit
+	 * is taken for every tuple read and only returned once its run is written, so the reader waits when all memory is in use.
+	 * If the input or a run fails, the runs are deleted and the input is closed.
+	 */
+	private void parallelPartition(int count) throws IOException, FileNotFoundException
+	{	ArrayList<ForkJoinTask<Long>> tasks = new ArrayList<ForkJoinTask<Long>>();
+		try
+		{	parallelPartition(count, tasks);
+		}
+		catch (Throwable e)
+		{	// Wait for runs being written before deleting them
+			for (int i = 0; i < tasks.size(); i++)
+				tasks.get(i).quietlyJoin();
+			for (int i = 0; i < mergeFileName.size(); i++)
+				FileManager.deleteFile(mergeFileName.get(i));
+			mergeFileName.clear();
+			numFiles = 0;
+			lookahead = null;
+			try
+			{	input.close();
+			}
+			catch (Throwable closeError)
+			{	e.addSuppressed(closeError);
 			}
+			throw e;
+		}
+	}
 
-			// Sort tuples in buffer
-			if (count > 0)
-			{	Arrays.sort(buffer, 0, count, sorter);
+	private void parallelPartition(int count, ArrayList<ForkJoinTask<Long>> tasks) throws IOException
+	{	int chunkSize = Math.max(1, arraySize/(sortThreads+1));
+		Semaphore free = new Semaphore(arraySize);		// Caps the chunks this sort has in memory (and in the pool)
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int total = count;
 
-				// Write out sorted sublist
-				outFile = FileManager.openOutputFile(generateTmpFileName(numFiles));
-				for (int i=0; i < count; i++)
-					buffer[i].write(outFile);
+		try
+		{	// Hand out tuples already in buffer
+			free.acquireUninterruptibly(arraySize);
+			for (int start = 0; start < count; start += chunkSize)
+			{	int n = Math.min(chunkSize, count-start);
+				tasks.add(submitRun(pool, free, Arrays.copyOfRange(buffer, start, start+n), n));
+			}
+			Arrays.fill(buffer, null);
 
-				FileManager.closeFile(outFile);
-				int pages = (int) Math.ceil((double)count/BLOCKING_FACTOR);
-				incrementPagesRead(pages);		// Read from input
-				incrementTuplesRead(count);
-				incrementTuplesOutput(count);
-				incrementTupleIOs(count*2);		// Tuple I/Os not including input
-				incrementPageIOs(pages*2);		// Page I/Os not including input
-				numFiles++;
+			// Keep reading input while earlier chunks are sorted
+			while (true)
+			{	free.acquireUninterruptibly(chunkSize);
+				Tuple[] chunk = new Tuple[chunkSize];
+				int n = 0;
+				while (n < chunkSize && (chunk[n] = nextInput()) != null)
+					n++;
+				if (n < chunkSize)
+					free.release(chunkSize-n);
+				if (n == 0)
+					break;
+				total += n;
+				tasks.add(submitRun(pool, free, chunk, n));
+			}
+
+			for (int i = 0; i < tasks.size(); i++)
+			{	incrementBytesWritten(tasks.get(i).get());
+				incrementTempFiles();					// Run was written and closed
 			}
-			else
-				break;											// Read entire file
 		}
+		catch (InterruptedException e)
+		{	Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while creating sorted runs", e);
+		}
+		catch (ExecutionException e)
+		{	throw new IOException("Unable to create sorted run", e.getCause());
+		}
+
+		incrementPagesRead((int) Math.ceil((double)total/BLOCKING_FACTOR));		// Read from input
+		incrementTuplesRead(total);
+		incrementTuplesOutput(total);
 		input.close();
 	}
 
+	/*
+	 * Submits a chunk of tuples to be sorted and written as the next run. Counters are updated on the caller's thread
+	 * (the task returns the number of bytes written).
+	 */
+	private ForkJoinTask<Long> submitRun(ForkJoinPool pool, final Semaphore free, final Tuple[] chunk, final int n)
+	{	final String fileName = generateTmpFileName(numFiles);
+		int pages = (int) Math.ceil((double)n/BLOCKING_FACTOR);
+		incrementTupleIOs(n*2);			// Tuple I/Os not including input
+		incrementPageIOs(pages*2);		// Page I/Os not including input
+		numFiles++;
+
+		return pool.submit(() ->
+		{	try
+			{	sortChunk(chunk, n);
+				BinaryTupleWriter out = FileManager.openTupleWriter(fileName, input.getOutputRelation());
+				try
+				{	for (int i=0; i < n; i++)
+						out.write(chunk[i]);
+				}
+				finally
+				{	FileManager.closeFile(out);
+				}
+				return out.getBytesWritten();
+			}
+			finally
+			{	free.release(n);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private void sortChunk(Tuple[] chunk, int n)
+	{	Arrays.sort(chunk, 0, n, sorter);
+	}
+
 	private String generateTmpFileName(int i)
 	{	String st = FileManager.createTempFileName("merge_run"+i);
 		mergeFileName.add(st);
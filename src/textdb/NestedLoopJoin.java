@@ -1,21 +1,42 @@
 package textdb;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 /**
- * Performs a standard nested-loop join in iterator format. 
+ * Performs a nested-loop join in iterator format. By default the inner input is
+ * rescanned for every outer tuple. If a buffer size is given, a block
+ * nested-loop join is performed that buffers BUFFER_SIZE*BLOCKING_FACTOR outer
+ * tuples and scans the inner input once per block.
  */
-public class NestedLoopJoin extends Operator
+public class NestedLoopJoin extends JoinOperator
 {
 	private EquiJoinPredicate pred;			// A equi-join comparison class that can handle 1 or more attributes
+	private boolean useIndex;				// True if a hash index is built on the join keys of each outer block
 
 	// Iterator state variables
-	private Tuple tupleLeft;
+	private Tuple[] block;					// Buffered outer tuples
+	private int blockCount;					// Number of tuples currently in block
+	private int blockPos;					// Next outer tuple in block to compare with tupleRight
+	private HashMap<List<Object>, ArrayList<Tuple>> blockIndex;	// Outer tuples in block by join key (if useIndex)
+	private ArrayList<Tuple> matches;		// Outer tuples in block matching tupleRight (if useIndex)
 	private Tuple tupleRight;
+	private Tuple outLeft;					// Outer tuple joining with tupleRight found by advance()
+	private int leftCount;					// Total tuples read from outer input
+	private int rightCount;					// Tuples read from inner input in current pass
+	private boolean leftDone;				// True once the outer input has been read completely
 
 	public NestedLoopJoin(Operator []in, EquiJoinPredicate p)
-	{	super(in, 0, 0);
+	{	this(in, p, 0, 0, false);
+	}
+
+	public NestedLoopJoin(Operator []in, EquiJoinPredicate p, int bsize, int bfr, boolean index)
+	{	super(in, bfr, bsize);
 		pred = p;
+		useIndex = index;
 	}
 
 	public void init() throws IOException
@@ -24,47 +45,128 @@ public class NestedLoopJoin extends Operator
 		input[0].init();
 		input[1].init();
 
-		// Create output relation - keep all attributes of both tuples
-		Relation out = new Relation(input[0].getOutputRelation());
-		out.mergeRelation(input[1].getOutputRelation());
-		setOutputRelation(out);
+		initOutputRelation();
 
-		// TODO: YOUR SETUP CODE HERE
-		// Read first tuple of left input
-		tupleLeft = input[0].next();
+		// A tuple nested-loop join is a block nested-loop join with a block of one tuple
+		block = new Tuple[Math.max(1, BUFFER_SIZE*BLOCKING_FACTOR)];
+		if (useIndex)
+			blockIndex = new HashMap<List<Object>, ArrayList<Tuple>>();
+		leftCount = 0;
+		rightCount = 0;
+		leftDone = false;
+		tupleRight = null;
+		matches = null;
 
+		// Read first block of left input
+		readBlock();
 	}
 
 
 	public Tuple next() throws IOException
+	{	if (!advance())
+			return null;
+		return outputJoinTuple(outLeft, tupleRight);
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException
+	{	// Copy values of matching pairs into batch columns without creating joined tuples
+		batch.reset();
+		while (!batch.isFull() && advance())
+			addJoinRow(batch, outLeft, tupleRight);
+		return !batch.isEmpty();
+	}
+
+	/*
+	 * Finds the next pair of joining tuples (outLeft, tupleRight). Returns false if there are no more.
+	 */
+	private boolean advance() throws IOException
 	{
-		// TODO
-		// Implement next() portion of iterator to return the next joined tuple
-		// Use boolean to determine if tupleLeft joins with tupleRight with pred.isEqual(tupleLeft,tupleRight)
-		do{
+		while (blockCount > 0)
+		{	// Output remaining outer tuples in block that join with tupleRight
+			if (tupleRight != null)
+			{	if (useIndex)
+				{	if (matches != null && blockPos < matches.size())
+					{	outLeft = matches.get(blockPos++);
+						return true;
+					}
+				}
+				else
+				{	while (blockPos < blockCount)
+					{	Tuple tupleLeft = block[blockPos++];
+						if (pred.isEqual(tupleLeft, tupleRight))
+						{	outLeft = tupleLeft;
+							return true;
+						}
+					}
+				}
+			}
+
 			tupleRight = input[1].next();
-			if(tupleRight == null){
+			if (tupleRight == null)
+			{	// Inner input finished - rescan it for the next outer block
 				input[1].close();
-				tupleLeft = input[0].next();
-				if(tupleLeft == null){
-					return null;
-				}
+				innerPassFinished();
+				if (!readBlock())
+					return false;
 				input[1].init();
-				tupleRight = input[1].next();
+				continue;
 			}
-		}while(!pred.isEqual(tupleLeft, tupleRight));
+			incrementTuplesRead();
+			rightCount++;
 
-		return outputJoinTuple(tupleLeft, tupleRight);
+			blockPos = 0;
+			if (useIndex)
+				matches = blockIndex.get(Arrays.asList(pred.getValuesRelation2(tupleRight)));
+		}
+		return false;
 	}
 
 	public void close() throws IOException
 	{	super.close();
+		block = null;
+		blockIndex = null;
 	}
 
-	private Tuple outputJoinTuple(Tuple left, Tuple right)
-	{	Tuple t = new Tuple(left, right, getOutputRelation());
-		incrementTuplesOutput();
-		return t;
+	/*
+	 * Fills the block with the next outer tuples. Returns false if there are no outer tuples left.
+	 */
+	private boolean readBlock() throws IOException
+	{	blockCount = 0;
+		if (leftDone)
+			return false;
+		if (useIndex)
+			blockIndex.clear();
+
+		Tuple t;
+		while (blockCount < block.length && (t = input[0].next()) != null)
+		{	block[blockCount++] = t;
+			if (useIndex)
+			{	List<Object> key = Arrays.asList(pred.getValuesRelation1(t));
+				ArrayList<Tuple> list = blockIndex.get(key);
+				if (list == null)
+				{	list = new ArrayList<Tuple>(2);
+					blockIndex.put(key, list);
+				}
+				list.add(t);
+			}
+		}
+		incrementTuplesRead(blockCount);
+		leftCount += blockCount;
+
+		if (blockCount < block.length && !leftDone)
+		{	leftDone = true;
+			if (BLOCKING_FACTOR > 0)
+				incrementPagesRead((int) Math.ceil((double) leftCount/BLOCKING_FACTOR));	// Outer input read once
+		}
+		return blockCount > 0;
 	}
-}
 
+	/*
+	 * Charges the pages read by one full scan of the inner input.
+	 */
+	private void innerPassFinished()
+	{	if (BLOCKING_FACTOR > 0)
+			incrementPagesRead((int) Math.ceil((double) rightCount/BLOCKING_FACTOR));
+		rightCount = 0;
+	}
+}
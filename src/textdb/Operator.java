@@ -11,7 +11,8 @@ public abstract class Operator {
 	protected Relation outputRelation; 		// Output relation produced by this operator
 
 	// I/O related properties
-	protected int BUFFER_SIZE; 				// Number of pages that can be buffered by this operation
+	protected int BUFFER_SIZE; 				// Number of pages that can be buffered by this operation (the shared
+											// BufferPool is not included)
 	protected int BLOCKING_FACTOR; 			// Number of tuples per page
 	protected int tuplesOutput; 			// Total # of tuples output of this operator
 	protected int tuplesRead; 				// Total # of tuples read by this operator from its inputs only
@@ -20,6 +21,11 @@ public abstract class Operator {
 											// including read from its sources)
 	protected int internalPageIOs; 			// Total # of pages read/written by this operator for its own processing (not
 											// including read from its sources)
+	protected int tempFilesWritten; 		// Total # of temporary files written by this operator
+	protected long bytesRead; 				// Total # of bytes read by this operator from files (not including its sources)
+	protected long bytesWritten; 			// Total # of bytes written by this operator to temporary files
+	protected long diskPagesRead; 			// Total # of buffer pool pages this operator had to read from disk (pages
+											// found in the pool are not counted)
 
 	Operator() {
 		this(null, 0, 0);
@@ -38,6 +44,10 @@ public abstract class Operator {
 		pagesRead = 0;
 		internalTupleIOs = 0;
 		internalPageIOs = 0;
+		tempFilesWritten = 0;
+		bytesRead = 0;
+		bytesWritten = 0;
+		diskPagesRead = 0;
 	}
 
 	// Iterator methods
@@ -45,6 +55,30 @@ public abstract class Operator {
 
 	abstract public Tuple next() throws IOException;
 
+	/*
+	 * Batch iterator methods. Returns the next (up to TupleBatch.DEFAULT_SIZE) output tuples in column form or null
+	 * if there are no more tuples. Can be mixed with calls to next().
+	 */
+	public TupleBatch nextBatch() throws IOException {
+		TupleBatch batch = new TupleBatch(getOutputRelation());
+		if (!nextBatch(batch))
+			return null;
+		return batch;
+	}
+
+	/*
+	 * Fills a batch (created with this operator's output relation) with the next output tuples. Returns false if
+	 * there are no more tuples. By default calls next() for each tuple - operators override this to fill the batch
+	 * without creating tuples.
+	 */
+	public boolean nextBatch(TupleBatch batch) throws IOException {
+		batch.reset();
+		Tuple t;
+		while (!batch.isFull() && (t = next()) != null)
+			batch.addTuple(t);
+		return !batch.isEmpty();
+	}
+
 	/*
 	 * Note: Do NOT assume all operators implement hasNext().
 	 */
@@ -57,11 +91,34 @@ public abstract class Operator {
 			input[i].close();
 	}
 
+	/*
+	 * Returns the attribute indexes the output is known to be sorted on in ascending order (null if unknown). Used by
+	 * the planner to avoid sorting sorted inputs.
+	 */
+	public int[] getSortOrder() {
+		return null;
+	}
+
 	// By default, operators are not buffered/threaded
 	public boolean isBuffered() {
 		return false;
 	}
 	
+	/*
+	 * Returns the input operators (empty array for a scan).
+	 */
+	public Operator[] getInputs() {
+		return input == null ? new Operator[0] : input.clone();
+	}
+
+	/*
+	 * Replaces an input operator (used to wrap inputs, e.g. for profiling). Operators that keep their own reference
+	 * to an input must override this to update it.
+	 */
+	protected void setInput(int i, Operator in) {
+		input[i] = in;
+	}
+
 	public void setOutputRelation(Relation r) {
 		outputRelation = r;
 	}
@@ -111,6 +168,55 @@ public abstract class Operator {
 		internalPageIOs += i;
 	}
 
+	protected void incrementTempFiles() {
+		tempFilesWritten++;
+	}
+
+	protected void incrementBytesRead(long i) {
+		bytesRead += i;
+	}
+
+	protected void incrementBytesWritten(long i) {
+		bytesWritten += i;
+	}
+
+	protected void incrementDiskPagesRead(long i) {
+		diskPagesRead += i;
+	}
+
+	/*
+	 * Adds the read and I/O counters of an operator this operator runs internally (not one of its inputs) to its own
+	 * counters. Tuples output are not added.
+	 */
+	protected void addCounters(Operator op) {
+		tuplesRead += op.getTuplesRead();
+		pagesRead += op.getPagesRead();
+		internalTupleIOs += op.getTupleIOs();
+		internalPageIOs += op.getPageIOs();
+		tempFilesWritten += op.getTempFilesWritten();
+		bytesRead += op.getBytesRead();
+		bytesWritten += op.getBytesWritten();
+		diskPagesRead += op.getDiskPagesRead();
+	}
+
+	/*
+	 * Closes a temporary file writer and counts the file and bytes written.
+	 */
+	protected void closeTempFile(BinaryTupleWriter out) throws IOException {
+		FileManager.closeFile(out);
+		incrementTempFiles();
+		incrementBytesWritten(out.getBytesWritten());
+	}
+
+	/*
+	 * Closes a temporary file reader and counts the bytes read.
+	 */
+	protected void closeTempFile(BinaryTupleReader in) throws IOException {
+		incrementBytesRead(in.getBytesRead());
+		incrementDiskPagesRead(in.getDiskPagesRead());
+		FileManager.closeFile(in);
+	}
+
 	public int getTuplesOutput() {
 		return tuplesOutput;
 	}
@@ -130,4 +236,20 @@ public abstract class Operator {
 	public int getPageIOs() {
 		return internalPageIOs;
 	}
+
+	public int getTempFilesWritten() {
+		return tempFilesWritten;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public long getDiskPagesRead() {
+		return diskPagesRead;
+	}
 }
@@ -0,0 +1,127 @@
+package textdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file sequentially one BufferPool page at a time. Pages that are
+ * cached are not read from disk. Counts the pages read (from cache or disk) and
+ * the pages that had to be read from disk.
+ */
+public class PooledInputStream extends InputStream {
+	private BufferPool pool; // Pool pages are read through
+	private FileChannel ch; // File being read (only used when a page is not cached)
+	private String path; // Canonical path of file
+	private long length; // File length when opened
+	private long modified; // File modification time when opened
+	private long position; // Offset in file of next byte to read
+	private long pageNo; // Number of current page
+	private byte[] page; // Current page (null before the first read)
+	private int pos; // Offset in current page of next byte to read
+	private long pagesRead; // Pages read (from cache or disk)
+	long diskPagesRead; // Pages read from disk (incremented by pool)
+
+	public PooledInputStream(String fname, BufferPool pool) throws IOException {
+		this.pool = pool;
+		path = BufferPool.canonicalPath(fname);
+		ch = FileChannel.open(Paths.get(fname), StandardOpenOption.READ);
+		length = ch.size();
+		modified = new File(fname).lastModified(); // After opening so a file replaced before the open is not stale
+	}
+
+	/*
+	 * Makes the page holding position the current page. Returns false at end of file.
+	 */
+	private boolean fill() throws IOException {
+		if (page != null && pos < page.length)
+			return true;
+		if (position >= length)
+			return false;
+		if (ch == null)
+			throw new IOException("Stream closed");
+		pageNo = position / BufferPool.PAGE_SIZE;
+		page = pool.getPage(new BufferPool.PageId(path, length, modified, pageNo), ch, length, this);
+		pos = (int) (position - pageNo * BufferPool.PAGE_SIZE);
+		pagesRead++;
+		return true;
+	}
+
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		position++;
+		return page[pos++] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(len, page.length - pos);
+		System.arraycopy(page, pos, b, off, n);
+		pos += n;
+		position += n;
+		return n;
+	}
+
+	/**
+	 * Skips bytes without reading the pages skipped over.
+	 */
+	public long skip(long n) throws IOException {
+		long skipped = Math.max(0, Math.min(n, length - position));
+		position += skipped;
+		if (page != null && position < (pageNo + 1) * BufferPool.PAGE_SIZE)
+			pos = (int) (position - pageNo * BufferPool.PAGE_SIZE);
+		else
+			page = null; // Next read loads the page holding position
+		return skipped;
+	}
+
+	/**
+	 * Moves to an offset in the file (the page holding it is read by the next read).
+	 */
+	public void seek(long offset) {
+		position = Math.max(0, Math.min(length, offset));
+		if (page != null && position >= pageNo * BufferPool.PAGE_SIZE && position < (pageNo + 1) * BufferPool.PAGE_SIZE)
+			pos = (int) (position - pageNo * BufferPool.PAGE_SIZE);
+		else
+			page = null;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, length - position);
+	}
+
+	public void close() throws IOException {
+		if (ch != null)
+			ch.close();
+		ch = null;
+	}
+
+	/**
+	 * Returns the number of pages read (from cache or disk).
+	 */
+	public long getPagesRead() {
+		return pagesRead;
+	}
+
+	/**
+	 * Returns the number of pages that were not cached and were read from disk.
+	 */
+	public long getDiskPagesRead() {
+		return diskPagesRead;
+	}
+}
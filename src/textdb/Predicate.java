@@ -0,0 +1,568 @@
+package textdb;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * A selection predicate on the attributes of a tuple: comparisons of an
+ * attribute with a constant combined with AND, OR and NOT. A predicate is
+ * created with the static factory methods and compiled for a relation with
+ * compile(), which converts each constant to the type of its attribute (see
+ * Attribute.convert()) and chooses a specialized comparison so INT and
+ * SMALLINT attributes are compared without boxing.
+ *
+ * A compiled predicate can also be evaluated on a line of text in the format
+ * read by TextFileScan (see TextLine) so a scan can reject lines without
+ * building a tuple or parsing the fields the predicate does not use.
+ *
+ * As in SQL, a comparison with a NULL or missing field is UNKNOWN and a tuple
+ * is only accepted if the predicate is TRUE. NOT is pushed down to the
+ * comparisons (NOT of a comparison is the comparison with the opposite
+ * operator, and NOT of AND/OR is OR/AND of the NOTs) so NOT of an UNKNOWN
+ * comparison is also rejected. A constant outside the range of an INT or
+ * SMALLINT attribute (or not a whole number) is compared exactly: e.g.
+ * a SMALLINT attribute is always less than 40000.
+ */
+public abstract class Predicate {
+	public enum Op {
+		EQ, NE, LT, LE, GT, GE;
+
+		/**
+		 * Returns true if a comparison result (negative, zero or positive) satisfies the operator.
+		 */
+		public boolean test(int cmp) {
+			switch (this) {
+			case EQ:
+				return cmp == 0;
+			case NE:
+				return cmp != 0;
+			case LT:
+				return cmp < 0;
+			case LE:
+				return cmp <= 0;
+			case GT:
+				return cmp > 0;
+			default:
+				return cmp >= 0;
+			}
+		}
+
+		/**
+		 * Returns the operator that is true exactly when this one is false.
+		 */
+		public Op negate() {
+			switch (this) {
+			case EQ:
+				return NE;
+			case NE:
+				return EQ;
+			case LT:
+				return GE;
+			case LE:
+				return GT;
+			case GT:
+				return LE;
+			default:
+				return LT;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a tuple satisfies the (compiled) predicate.
+	 */
+	public abstract boolean matches(Tuple t);
+
+	/**
+	 * Returns true if the tuple in a line of text satisfies the (compiled) predicate.
+	 */
+	public abstract boolean matches(TextLine line);
+
+	/**
+	 * Returns the predicate compiled for tuples of a relation.
+	 */
+	public abstract Predicate compile(Relation r);
+
+	/**
+	 * Returns the negation of the predicate with NOT pushed down to the comparisons. A comparison with a NULL field
+	 * is false in both the predicate and its negation.
+	 */
+	public abstract Predicate negate();
+
+	/**
+	 * Returns a comparison of an attribute with a constant (a String is parsed according to the attribute type).
+	 */
+	public static Predicate compare(int attr, Op op, Object constant) {
+		return new Comparison(attr, op, constant);
+	}
+
+	public static Predicate and(Predicate... preds) {
+		return new And(preds.clone());
+	}
+
+	public static Predicate or(Predicate... preds) {
+		return new Or(preds.clone());
+	}
+
+	public static Predicate not(Predicate pred) {
+		return new Not(pred);
+	}
+
+	/*
+	 * Returns true if attribute attr of a tuple is present and not NULL.
+	 */
+	static boolean hasValue(Tuple t, int attr) {
+		return attr < t.numValues() && !t.isNull(attr);
+	}
+
+	/**
+	 * Comparison of an attribute with a constant that has not been compiled.
+	 */
+	static final class Comparison extends Predicate {
+		private final int attr; // Attribute compared
+		private final Op op; // Comparison operator
+		private final Object constant; // Constant compared with
+
+		Comparison(int attr, Op op, Object constant) {
+			this.attr = attr;
+			this.op = op;
+			this.constant = constant;
+		}
+
+		public boolean matches(Tuple t) {
+			throw new IllegalStateException("Predicate has not been compiled");
+		}
+
+		public boolean matches(TextLine line) {
+			throw new IllegalStateException("Predicate has not been compiled");
+		}
+
+		public Predicate compile(Relation r) {
+			int type = r.getAttributeType(attr);
+			if (constant == null)
+				return new NullComparison();
+			if (type == Attribute.TYPE_INT || type == Attribute.TYPE_SMALLINT)
+				return compileInt(type);
+			Object c = Attribute.convert(constant, type);
+			if (type == Attribute.TYPE_STRING || type == Attribute.TYPE_CHAR)
+				return new StringComparison(attr, op, (String) c);
+			return new ObjectComparison(attr, op, c, type);
+		}
+
+		/*
+		 * Compiles a comparison of an INT or SMALLINT attribute. A constant outside the attribute's range gives the
+		 * same result for every value, and a constant that is not a whole number c is compared as floor(c).
+		 */
+		private Predicate compileInt(int type) {
+			BigDecimal c;
+			try {
+				c = constant instanceof BigDecimal ? (BigDecimal) constant : new BigDecimal(constant.toString().trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Constant " + constant + " is not a number", e);
+			}
+			long min = type == Attribute.TYPE_INT ? Integer.MIN_VALUE : Short.MIN_VALUE;
+			long max = type == Attribute.TYPE_INT ? Integer.MAX_VALUE : Short.MAX_VALUE;
+			if (c.compareTo(BigDecimal.valueOf(max)) > 0)
+				return new ConstantComparison(attr, op.test(-1)); // Every value is below constant
+			if (c.compareTo(BigDecimal.valueOf(min)) < 0)
+				return new ConstantComparison(attr, op.test(1)); // Every value is above constant
+			BigDecimal floor = c.setScale(0, RoundingMode.FLOOR);
+			if (floor.compareTo(c) == 0)
+				return new IntComparison(attr, op, floor.intValueExact());
+
+			// No value equals c, and a value is below c exactly when it is at most floor(c)
+			switch (op) {
+			case EQ:
+				return new ConstantComparison(attr, false);
+			case NE:
+				return new ConstantComparison(attr, true);
+			case LT:
+			case LE:
+				return new IntComparison(attr, Op.LE, floor.intValueExact());
+			default:
+				return new IntComparison(attr, Op.GT, floor.intValueExact());
+			}
+		}
+
+		public Predicate negate() {
+			return new Comparison(attr, op.negate(), constant);
+		}
+
+		public String toString() {
+			return "$" + attr + " " + op + " " + constant;
+		}
+	}
+
+	/**
+	 * Comparison of an INT or SMALLINT attribute with an int constant.
+	 */
+	static final class IntComparison extends Predicate {
+		private final int attr; // Attribute compared
+		private final Op op; // Comparison operator
+		private final int constant; // Constant compared with
+
+		IntComparison(int attr, Op op, int constant) {
+			this.attr = attr;
+			this.op = op;
+			this.constant = constant;
+		}
+
+		public boolean matches(Tuple t) {
+			return hasValue(t, attr) && op.test(Integer.compare(t.getInt(attr), constant));
+		}
+
+		public boolean matches(TextLine line) {
+			return line.hasField(attr) && op.test(Integer.compare(line.getInt(attr), constant));
+		}
+
+		public Predicate compile(Relation r) {
+			return this;
+		}
+
+		public Predicate negate() {
+			return new IntComparison(attr, op.negate(), constant);
+		}
+
+		public String toString() {
+			return "$" + attr + " " + op + " " + constant;
+		}
+	}
+
+	/**
+	 * Comparison of a STRING or CHAR attribute with a string constant.
+	 */
+	static final class StringComparison extends Predicate {
+		private final int attr; // Attribute compared
+		private final Op op; // Comparison operator
+		private final String constant; // Constant compared with
+
+		StringComparison(int attr, Op op, String constant) {
+			this.attr = attr;
+			this.op = op;
+			this.constant = constant;
+		}
+
+		public boolean matches(Tuple t) {
+			return hasValue(t, attr) && op.test(t.getString(attr).compareTo(constant));
+		}
+
+		public boolean matches(TextLine line) {
+			return line.hasField(attr) && op.test(line.compareField(attr, constant));
+		}
+
+		public Predicate compile(Relation r) {
+			return this;
+		}
+
+		public Predicate negate() {
+			return new StringComparison(attr, op.negate(), constant);
+		}
+
+		public String toString() {
+			return "$" + attr + " " + op + " '" + constant + "'";
+		}
+	}
+
+	/**
+	 * Comparison of an attribute of another type with a constant of the attribute's type.
+	 */
+	static final class ObjectComparison extends Predicate {
+		private final int attr; // Attribute compared
+		private final Op op; // Comparison operator
+		private final Comparable<Object> constant; // Constant compared with
+		private final int type; // Attribute type
+
+		@SuppressWarnings("unchecked")
+		ObjectComparison(int attr, Op op, Object constant, int type) {
+			this.attr = attr;
+			this.op = op;
+			this.constant = (Comparable<Object>) constant;
+			this.type = type;
+		}
+
+		public boolean matches(Tuple t) {
+			if (!hasValue(t, attr))
+				return false;
+			// Values read from text are strings so they are converted to the constant's type
+			return op.test(-constant.compareTo(Attribute.convert(t.getObject(attr), type)));
+		}
+
+		public boolean matches(TextLine line) {
+			return line.hasField(attr) && op.test(-constant.compareTo(Attribute.convert(line.getString(attr), type)));
+		}
+
+		public Predicate compile(Relation r) {
+			return this;
+		}
+
+		public Predicate negate() {
+			return new ObjectComparison(attr, op.negate(), constant, type);
+		}
+
+		public String toString() {
+			return "$" + attr + " " + op + " " + constant;
+		}
+	}
+
+	/**
+	 * Comparison of an INT or SMALLINT attribute with a constant that has the same result for every non-NULL value
+	 * (e.g. a constant outside the attribute's range).
+	 */
+	static final class ConstantComparison extends Predicate {
+		private final int attr; // Attribute compared
+		private final boolean result; // Result for a non-NULL value
+
+		ConstantComparison(int attr, boolean result) {
+			this.attr = attr;
+			this.result = result;
+		}
+
+		public boolean matches(Tuple t) {
+			return result && hasValue(t, attr);
+		}
+
+		public boolean matches(TextLine line) {
+			return result && line.hasField(attr);
+		}
+
+		public Predicate compile(Relation r) {
+			return this;
+		}
+
+		public Predicate negate() {
+			return new ConstantComparison(attr, !result);
+		}
+
+		public String toString() {
+			return "$" + attr + " IS NOT NULL AND " + String.valueOf(result).toUpperCase();
+		}
+	}
+
+	/**
+	 * Comparison with a NULL constant (UNKNOWN, so never true, even when negated).
+	 */
+	static final class NullComparison extends Predicate {
+		public boolean matches(Tuple t) {
+			return false;
+		}
+
+		public boolean matches(TextLine line) {
+			return false;
+		}
+
+		public Predicate compile(Relation r) {
+			return this;
+		}
+
+		public Predicate negate() {
+			return this;
+		}
+
+		public String toString() {
+			return "NULL";
+		}
+	}
+
+	static final class And extends Predicate {
+		private final Predicate[] preds; // Predicates that must all be true
+
+		And(Predicate[] preds) {
+			this.preds = preds;
+		}
+
+		public boolean matches(Tuple t) {
+			for (Predicate p : preds)
+				if (!p.matches(t))
+					return false;
+			return true;
+		}
+
+		public boolean matches(TextLine line) {
+			for (Predicate p : preds)
+				if (!p.matches(line))
+					return false;
+			return true;
+		}
+
+		public Predicate compile(Relation r) {
+			Predicate[] compiled = new Predicate[preds.length];
+			for (int i = 0; i < preds.length; i++)
+				compiled[i] = preds[i].compile(r);
+			return new And(compiled);
+		}
+
+		public Predicate negate() {
+			Predicate[] negated = new Predicate[preds.length];
+			for (int i = 0; i < preds.length; i++)
+				negated[i] = preds[i].negate();
+			return new Or(negated);
+		}
+
+		public String toString() {
+			return "AND" + Arrays.toString(preds);
+		}
+	}
+
+	static final class Or extends Predicate {
+		private final Predicate[] preds; // Predicates of which one must be true
+
+		Or(Predicate[] preds) {
+			this.preds = preds;
+		}
+
+		public boolean matches(Tuple t) {
+			for (Predicate p : preds)
+				if (p.matches(t))
+					return true;
+			return false;
+		}
+
+		public boolean matches(TextLine line) {
+			for (Predicate p : preds)
+				if (p.matches(line))
+					return true;
+			return false;
+		}
+
+		public Predicate compile(Relation r) {
+			Predicate[] compiled = new Predicate[preds.length];
+			for (int i = 0; i < preds.length; i++)
+				compiled[i] = preds[i].compile(r);
+			return new Or(compiled);
+		}
+
+		public Predicate negate() {
+			Predicate[] negated = new Predicate[preds.length];
+			for (int i = 0; i < preds.length; i++)
+				negated[i] = preds[i].negate();
+			return new And(negated);
+		}
+
+		public String toString() {
+			return "OR" + Arrays.toString(preds);
+		}
+	}
+
+	/**
+	 * Negation of a predicate, evaluated as the predicate with NOT pushed down to its comparisons (so a comparison
+	 * with a NULL field is false whether or not it is negated).
+	 */
+	static final class Not extends Predicate {
+		private final Predicate pred; // Predicate negated
+		private final Predicate negated; // Predicate with NOT pushed down
+
+		Not(Predicate pred) {
+			this.pred = pred;
+			negated = pred.negate();
+		}
+
+		public boolean matches(Tuple t) {
+			return negated.matches(t);
+		}
+
+		public boolean matches(TextLine line) {
+			return negated.matches(line);
+		}
+
+		public Predicate compile(Relation r) {
+			return negated.compile(r);
+		}
+
+		public Predicate negate() {
+			return pred;
+		}
+
+		public String toString() {
+			return "NOT(" + pred + ")";
+		}
+	}
+
+	/**
+	 * A line of text with fields separated by whitespace. Fields are located only as far as the highest field a
+	 * predicate asks for, and INT fields are parsed in place, so no objects are created to evaluate a predicate on
+	 * INT and STRING fields.
+	 */
+	public static final class TextLine {
+		private char[] chars; // Characters of line
+		private int end; // End of line in chars
+		private char[] own; // Buffer chars are copied into for a line given as a String
+		private int[] starts = new int[8]; // Start of each field found
+		private int[] ends = new int[8]; // End of each field found
+		private int numFound; // Number of fields found
+		private int scanPos; // Position in chars after last field found
+
+		/**
+		 * Sets the line to a string.
+		 */
+		public TextLine set(String st) {
+			int len = st.length();
+			if (own == null || own.length < len)
+				own = new char[Math.max(128, len)];
+			st.getChars(0, len, own, 0);
+			return set(own, 0, len);
+		}
+
+		/**
+		 * Sets the line to characters [start, end) of an array (which is not copied).
+		 */
+		public TextLine set(char[] chars, int start, int end) {
+			this.chars = chars;
+			this.end = end;
+			numFound = 0;
+			scanPos = start;
+			return this;
+		}
+
+		/**
+		 * Returns true if the line has field i.
+		 */
+		public boolean hasField(int i) {
+			while (numFound <= i) {
+				int p = scanPos;
+				while (p < end && FastTextFileScan.isSpace(chars[p]))
+					p++;
+				if (p >= end)
+					return false;
+				if (numFound == starts.length) {
+					starts = Arrays.copyOf(starts, numFound * 2);
+					ends = Arrays.copyOf(ends, numFound * 2);
+				}
+				starts[numFound] = p;
+				while (p < end && !FastTextFileScan.isSpace(chars[p]))
+					p++;
+				ends[numFound++] = p;
+				scanPos = p;
+			}
+			return true;
+		}
+
+		/**
+		 * Returns field i (which must exist) parsed as an int.
+		 */
+		public int getInt(int i) {
+			return FastTextFileScan.parseInt(chars, starts[i], ends[i]);
+		}
+
+		/**
+		 * Returns field i (which must exist) as a string.
+		 */
+		public String getString(int i) {
+			return new String(chars, starts[i], ends[i] - starts[i]);
+		}
+
+		/**
+		 * Compares field i (which must exist) with a string as String.compareTo() does.
+		 */
+		public int compareField(int i, String st) {
+			int len = ends[i] - starts[i];
+			int n = Math.min(len, st.length());
+			for (int k = 0; k < n; k++) {
+				char c = chars[starts[i] + k];
+				if (c != st.charAt(k))
+					return c - st.charAt(k);
+			}
+			return len - st.length();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package textdb;
+
+import java.io.IOException;
+
+/**
+ * Runs an input operator on a background thread that fills a bounded queue
+ * with chunks of tuples, so reading and parsing the input (or the merge phase
+ * of a MergeSort) overlaps with the work of the operator consuming it. The
+ * input is initialized on the caller's thread (so its output relation is
+ * known when init() returns) and is only used by the background thread until
+ * close() stops the thread and closes it.
+ */
+public class PrefetchOperator extends Operator {
+	static public final int CHUNK_SIZE = ChunkQueue.CHUNK_SIZE; // Tuples handed to the consumer at a time
+	static public final int DEFAULT_QUEUE_CHUNKS = 4; // Default number of chunks buffered ahead of consumer
+
+	private int queueChunks; // Maximum number of chunks in queue
+	private ChunkQueue queue; // Chunks read by background thread
+	private Thread producer; // Background thread reading input
+	private Tuple[] chunk; // Chunk being output
+	private int chunkPos; // Next tuple in chunk
+	private boolean done; // True once END has been taken from queue
+
+	public PrefetchOperator(Operator in) {
+		this(in, DEFAULT_QUEUE_CHUNKS);
+	}
+
+	public PrefetchOperator(Operator in, int chunks) {
+		super(new Operator[] { in }, 0, 0);
+		queueChunks = Math.max(1, chunks);
+	}
+
+	public void init() throws IOException {
+		stopProducer(); // In case init() is called again without close()
+		input[0].init();
+
+		queue = new ChunkQueue(queueChunks);
+		chunk = null;
+		chunkPos = 0;
+		done = false;
+		ChunkQueue q = queue;
+		producer = ChunkQueue.start(() -> q.fill(input[0]), "prefetch-" + input[0].getClass().getSimpleName());
+	}
+
+	public Tuple next() throws IOException {
+		if (chunk == null || chunkPos >= chunk.length) {
+			if (!nextChunk())
+				return null;
+		}
+		Tuple t = chunk[chunkPos];
+		chunk[chunkPos++] = null;
+		incrementTuplesRead();
+		incrementTuplesOutput();
+		return t;
+	}
+
+	public boolean hasNext() throws IOException {
+		return (chunk != null && chunkPos < chunk.length) || nextChunk();
+	}
+
+	/*
+	 * Waits for the next chunk from the background thread. Returns false at the end of the input and rethrows an
+	 * exception thrown by the input.
+	 */
+	private boolean nextChunk() throws IOException {
+		if (done)
+			return false;
+		chunk = queue.take();
+		chunkPos = 0;
+		if (chunk == ChunkQueue.END) {
+			done = true;
+			chunk = null;
+			queue.rethrow("Prefetch of input failed");
+			return false;
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		stopProducer();
+		queue = null;
+		chunk = null;
+		super.close();
+	}
+
+	/*
+	 * Stops the background thread and waits for it to finish its current chunk.
+	 */
+	private void stopProducer() {
+		if (producer == null)
+			return;
+		queue.close();
+		ChunkQueue.join(producer);
+		producer = null;
+	}
+
+	// Tuples are read ahead by a background thread
+	public boolean isBuffered() {
+		return true;
+	}
+
+	public Relation getOutputRelation() {
+		return input[0].getOutputRelation();
+	}
+
+	public int[] getSortOrder() {
+		return input[0].getSortOrder();
+	}
+}
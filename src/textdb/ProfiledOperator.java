@@ -0,0 +1,287 @@
+package textdb;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Wraps an operator and records the wall and CPU time spent in its init(),
+ * next()/nextBatch() and close() calls. profile() wraps every operator in a
+ * plan so each operator's time can be reported both including its inputs and
+ * by itself (self time). After the plan has been run, explain() and toJSON()
+ * return an EXPLAIN ANALYZE-style report with the counters of each operator.
+ *
+ * CPU time is measured for the calling thread only (work done by worker
+ * threads, such as parallel run generation in MergeSort, is included in wall
+ * time but not CPU time).
+ */
+public class ProfiledOperator extends Operator {
+	static private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	static private final boolean cpuSupported = threads.isCurrentThreadCpuTimeSupported()
+			&& threads.isThreadCpuTimeEnabled();
+
+	private Operator op; // Operator being profiled
+	private ProfiledOperator[] children; // Profiles of input operators
+	private long initWall, nextWall, closeWall; // Wall time (ns) in each method including inputs
+	private long initCpu, nextCpu, closeCpu; // CPU time (ns) in each method including inputs
+	private long calls; // Number of next() and nextBatch() calls
+
+	private ProfiledOperator(Operator op, ProfiledOperator[] children) {
+		super();
+		this.op = op;
+		this.children = children;
+	}
+
+	/**
+	 * Wraps every operator in a plan for profiling. The inputs of the plan's
+	 * operators are replaced by their profiled versions.
+	 *
+	 * @param root
+	 *            root operator of plan
+	 * @return profiled root operator (run this instead of root)
+	 */
+	public static ProfiledOperator profile(Operator root) {
+		if (root instanceof ProfiledOperator)
+			return (ProfiledOperator) root;
+
+		Operator[] in = root.getInputs();
+		ProfiledOperator[] children = new ProfiledOperator[in.length];
+		for (int i = 0; i < in.length; i++) {
+			children[i] = profile(in[i]);
+			root.setInput(i, children[i]);
+		}
+		return new ProfiledOperator(root, children);
+	}
+
+	// Iterator methods
+	public void init() throws IOException {
+		long wall = System.nanoTime(), cpu = cpuTime();
+		try {
+			op.init();
+		} finally {
+			initWall += System.nanoTime() - wall;
+			initCpu += cpuTime() - cpu;
+		}
+	}
+
+	public Tuple next() throws IOException {
+		long wall = System.nanoTime(), cpu = cpuTime();
+		try {
+			return op.next();
+		} finally {
+			nextWall += System.nanoTime() - wall;
+			nextCpu += cpuTime() - cpu;
+			calls++;
+		}
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException {
+		long wall = System.nanoTime(), cpu = cpuTime();
+		try {
+			return op.nextBatch(batch);
+		} finally {
+			nextWall += System.nanoTime() - wall;
+			nextCpu += cpuTime() - cpu;
+			calls++;
+		}
+	}
+
+	public boolean hasNext() throws IOException {
+		return op.hasNext();
+	}
+
+	public void close() throws IOException {
+		long wall = System.nanoTime(), cpu = cpuTime();
+		try {
+			op.close();
+		} finally {
+			closeWall += System.nanoTime() - wall;
+			closeCpu += cpuTime() - cpu;
+		}
+	}
+
+	public int[] getSortOrder() {
+		return op.getSortOrder();
+	}
+
+	public boolean isBuffered() {
+		return op.isBuffered();
+	}
+
+	public void setOutputRelation(Relation r) {
+		op.setOutputRelation(r);
+	}
+
+	public Relation getOutputRelation() {
+		return op.getOutputRelation();
+	}
+
+	// Counters of profiled operator
+	public int getTuplesOutput() {
+		return op.getTuplesOutput();
+	}
+
+	public int getTuplesRead() {
+		return op.getTuplesRead();
+	}
+
+	public int getPagesRead() {
+		return op.getPagesRead();
+	}
+
+	public int getTupleIOs() {
+		return op.getTupleIOs();
+	}
+
+	public int getPageIOs() {
+		return op.getPageIOs();
+	}
+
+	public int getTempFilesWritten() {
+		return op.getTempFilesWritten();
+	}
+
+	public long getBytesRead() {
+		return op.getBytesRead();
+	}
+
+	public long getBytesWritten() {
+		return op.getBytesWritten();
+	}
+
+	public long getDiskPagesRead() {
+		return op.getDiskPagesRead();
+	}
+
+	// Profile methods
+	public Operator getOperator() {
+		return op;
+	}
+
+	public ProfiledOperator[] getChildren() {
+		return children.clone();
+	}
+
+	public long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * Returns wall time (ns) spent in this operator and its inputs.
+	 */
+	public long getWallTime() {
+		return initWall + nextWall + closeWall;
+	}
+
+	/**
+	 * Returns CPU time (ns) spent in this operator and its inputs (0 if not supported by JVM).
+	 */
+	public long getCpuTime() {
+		return initCpu + nextCpu + closeCpu;
+	}
+
+	/**
+	 * Returns wall time (ns) spent in this operator only.
+	 */
+	public long getSelfWallTime() {
+		long t = getWallTime();
+		for (int i = 0; i < children.length; i++)
+			t -= children[i].getWallTime();
+		return Math.max(0, t);
+	}
+
+	/**
+	 * Returns CPU time (ns) spent in this operator only.
+	 */
+	public long getSelfCpuTime() {
+		long t = getCpuTime();
+		for (int i = 0; i < children.length; i++)
+			t -= children[i].getCpuTime();
+		return Math.max(0, t);
+	}
+
+	/**
+	 * Returns output tuples per second of wall time (including inputs).
+	 */
+	public double getRowsPerSecond() {
+		long t = getWallTime();
+		return t == 0 ? 0 : getTuplesOutput() * 1e9 / t;
+	}
+
+	/**
+	 * Returns a text report of the plan with one line per operator (inputs are indented below their operator).
+	 */
+	public String explain() {
+		StringBuilder sb = new StringBuilder();
+		explain(sb, 0);
+		return sb.toString();
+	}
+
+	private void explain(StringBuilder sb, int depth) {
+		for (int i = 0; i < depth; i++)
+			sb.append("  ");
+		if (depth > 0)
+			sb.append("-> ");
+		sb.append(op.getClass().getSimpleName());
+		sb.append(String.format(" (rows=%d, time=%.3f ms, self=%.3f ms", getTuplesOutput(), getWallTime() / 1e6,
+				getSelfWallTime() / 1e6));
+		if (cpuSupported)
+			sb.append(String.format(", cpu=%.3f ms, self cpu=%.3f ms", getCpuTime() / 1e6, getSelfCpuTime() / 1e6));
+		sb.append(String.format(", init=%.3f ms, next=%.3f ms, close=%.3f ms", initWall / 1e6, nextWall / 1e6,
+				closeWall / 1e6));
+		sb.append(String.format(", rows/s=%.0f, calls=%d", getRowsPerSecond(), calls));
+		sb.append(", tuples read=").append(getTuplesRead());
+		sb.append(", pages read=").append(getPagesRead());
+		sb.append(", page IOs=").append(getPageIOs());
+		sb.append(", disk pages read=").append(getDiskPagesRead());
+		sb.append(", bytes read=").append(getBytesRead());
+		sb.append(", bytes written=").append(getBytesWritten());
+		sb.append(", temp files=").append(getTempFilesWritten());
+		sb.append(")\n");
+		for (int i = 0; i < children.length; i++)
+			children[i].explain(sb, depth + 1);
+	}
+
+	/**
+	 * Returns the report of the plan as a JSON object. Inputs are in the "inputs" array of their operator. Times are in
+	 * nanoseconds.
+	 */
+	public String toJSON() {
+		StringBuilder sb = new StringBuilder();
+		toJSON(sb);
+		return sb.toString();
+	}
+
+	private void toJSON(StringBuilder sb) {
+		sb.append("{\"operator\":\"").append(op.getClass().getSimpleName()).append('"');
+		sb.append(",\"rows\":").append(getTuplesOutput());
+		sb.append(",\"calls\":").append(calls);
+		sb.append(",\"wallNanos\":{\"init\":").append(initWall).append(",\"next\":").append(nextWall)
+				.append(",\"close\":").append(closeWall).append(",\"total\":").append(getWallTime())
+				.append(",\"self\":").append(getSelfWallTime()).append('}');
+		if (cpuSupported)
+			sb.append(",\"cpuNanos\":{\"init\":").append(initCpu).append(",\"next\":").append(nextCpu)
+					.append(",\"close\":").append(closeCpu).append(",\"total\":").append(getCpuTime())
+					.append(",\"self\":").append(getSelfCpuTime()).append('}');
+		sb.append(",\"rowsPerSecond\":").append(Math.round(getRowsPerSecond()));
+		sb.append(",\"tuplesRead\":").append(getTuplesRead());
+		sb.append(",\"pagesRead\":").append(getPagesRead());
+		sb.append(",\"tupleIOs\":").append(getTupleIOs());
+		sb.append(",\"pageIOs\":").append(getPageIOs());
+		sb.append(",\"diskPagesRead\":").append(getDiskPagesRead());
+		sb.append(",\"bytesRead\":").append(getBytesRead());
+		sb.append(",\"bytesWritten\":").append(getBytesWritten());
+		sb.append(",\"tempFiles\":").append(getTempFilesWritten());
+		sb.append(",\"inputs\":[");
+		for (int i = 0; i < children.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			children[i].toJSON(sb);
+		}
+		sb.append("]}");
+	}
+
+	private static long cpuTime() {
+		return cpuSupported ? threads.getCurrentThreadCpuTime() : 0;
+	}
+}
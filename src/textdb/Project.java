@@ -0,0 +1,84 @@
+package textdb;
+
+import java.io.*;
+
+/**
+ * Performs a projection in iterator format: outputs the given attributes of
+ * each input tuple (in the given order). Duplicates are not removed. Placing a
+ * projection below a sort or join keeps attributes that are not needed (such
+ * as long strings) out of run files and join tuples. INT and SMALLINT values
+ * are copied without boxing.
+ */
+public class Project extends Operator {
+	private int[] attrs; // Input attributes output
+
+	public Project(Operator in, int[] attrs) {
+		super(new Operator[] { in }, 0, 0);
+		this.attrs = attrs.clone();
+		if (in.getOutputRelation() != null)
+			setOutputRelation(in.getOutputRelation().project(this.attrs));
+	}
+
+	public int[] getAttributes() {
+		return attrs;
+	}
+
+	/**
+	 * Returns the prefix of the input sort order that is kept by the projection
+	 * (as output attribute indexes) or null if the first sort attribute is not kept.
+	 */
+	public int[] getSortOrder() {
+		return mapAttributes(input[0].getSortOrder(), attrs);
+	}
+
+	public void init() throws IOException {
+		input[0].init();
+		setOutputRelation(input[0].getOutputRelation().project(attrs));
+	}
+
+	public Tuple next() throws IOException {
+		Tuple t = input[0].next();
+		if (t == null)
+			return null;
+		incrementTuplesRead();
+		incrementTuplesOutput();
+		return new Tuple(t, attrs, getOutputRelation());
+	}
+
+	public boolean hasNext() throws IOException {
+		return input[0].hasNext();
+	}
+
+	/**
+	 * Maps attribute indexes of a tuple to their positions in a projection of it.
+	 * Returns the longest prefix of the attributes that are all kept or null if
+	 * none are (or attributes is null).
+	 *
+	 * @param attributes
+	 *            attribute indexes of the tuple
+	 * @param kept
+	 *            attribute indexes kept by the projection (null for all)
+	 */
+	public static int[] mapAttributes(int[] attributes, int[] kept) {
+		if (attributes == null || kept == null)
+			return attributes;
+		int[] mapped = new int[attributes.length];
+		int n = 0;
+		for (; n < attributes.length; n++) {
+			int pos = indexOf(kept, attributes[n]);
+			if (pos < 0)
+				break;
+			mapped[n] = pos;
+		}
+		if (n == 0)
+			return null;
+		return n == mapped.length ? mapped : java.util.Arrays.copyOf(mapped, n);
+	}
+
+	private static int indexOf(int[] a, int v) {
+		for (int i = 0; i < a.length; i++)
+			if (a[i] == v)
+				return i;
+		return -1;
+	}
+}
@@ -0,0 +1,296 @@
+package textdb;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs many operator trees (queries) concurrently. Each query runs on its own
+ * virtual thread when the Java runtime supports them (Java 21 or later), so
+ * queries blocked on file I/O do not each hold a platform thread. On older
+ * runtimes queries run on a fixed pool of platform threads.
+ *
+ * The number of MergeSort operators running at the same time is capped, as
+ * each one may spill runs to temporary files. A query acquires a permit for
+ * each of its sorts before it starts and releases them when it ends, so
+ * queries never wait while holding permits. A query with more sorts than the
+ * cap is rejected.
+ *
+ * The latency of each query (from submission to completion, including time
+ * waiting for permits) is recorded by query name and in aggregate.
+ */
+public class QueryRunner implements AutoCloseable {
+	static public final String ALL_QUERIES = "*"; // Name of aggregate latency statistics
+
+	private ExecutorService executor; // Runs queries
+	private boolean virtualThreads; // True if executor creates a virtual thread per query
+	private int maxSorts; // Maximum number of sorts running at the same time
+	private Semaphore sortPermits; // Permits for running sorts
+	private Map<String, LatencyStats> stats; // Latency statistics by query name (and ALL_QUERIES)
+
+	/**
+	 * Creates a runner that uses virtual threads if available, otherwise a pool of 4 platform threads per processor.
+	 *
+	 * @param maxSorts
+	 *            maximum number of MergeSort operators (which may spill to temporary files) running at once
+	 */
+	public QueryRunner(int maxSorts) {
+		this(maxSorts, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a runner.
+	 *
+	 * @param maxSorts
+	 *            maximum number of MergeSort operators (which may spill to temporary files) running at once
+	 * @param platformThreads
+	 *            number of platform threads if virtual threads are not available
+	 */
+	public QueryRunner(int maxSorts, int platformThreads) {
+		this.maxSorts = Math.max(1, maxSorts);
+		sortPermits = new Semaphore(this.maxSorts, true);
+		stats = new LinkedHashMap<String, LatencyStats>();
+		stats.put(ALL_QUERIES, new LatencyStats());
+
+		executor = newVirtualThreadExecutor();
+		virtualThreads = executor != null;
+		if (executor == null)
+			executor = Executors.newFixedThreadPool(Math.max(1, platformThreads));
+	}
+
+	/*
+	 * Returns Executors.newVirtualThreadPerTaskExecutor() if the runtime has it (called by reflection so the code
+	 * compiles and runs on Java 17), otherwise null.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Submits a query that counts its output tuples.
+	 *
+	 * @param name
+	 *            name used to group latency statistics
+	 * @param plan
+	 *            root operator of query
+	 * @return future result of query
+	 */
+	public Future<QueryResult> submit(String name, Operator plan) {
+		return submit(name, plan, null);
+	}
+
+	/**
+	 * Submits a query that passes each output tuple to a consumer (called on the query's thread).
+	 *
+	 * @param name
+	 *            name used to group latency statistics
+	 * @param plan
+	 *            root operator of query
+	 * @param sink
+	 *            consumer of output tuples (null to only count them)
+	 * @return future result of query
+	 * @throws IllegalArgumentException
+	 *             if the plan has more MergeSort operators than may run at once
+	 */
+	public Future<QueryResult> submit(String name, Operator plan, Consumer<Tuple> sink) {
+		final long submitted = System.nanoTime();
+		final int permits = countSorts(plan);
+		if (permits > maxSorts)
+			throw new IllegalArgumentException(
+					"Query " + name + " has " + permits + " sorts but at most " + maxSorts + " may run at once");
+		return executor.submit(() -> {
+			long start = System.nanoTime();
+			sortPermits.acquire(permits);
+			long running = System.nanoTime();
+			long rows = 0;
+			try {
+				plan.init();
+				Tuple t;
+				while ((t = plan.next()) != null) {
+					if (sink != null)
+						sink.accept(t);
+					rows++;
+				}
+			} finally {
+				try {
+					plan.close();
+				} finally {
+					sortPermits.release(permits);
+					record(name, System.nanoTime() - submitted);
+				}
+			}
+			long end = System.nanoTime();
+			return new QueryResult(name, rows, end - submitted, start - submitted, running - start, end - running);
+		});
+	}
+
+	/*
+	 * Counts the MergeSort operators in a plan.
+	 */
+	private static int countSorts(Operator op) {
+		if (op instanceof ProfiledOperator)
+			return countSorts(((ProfiledOperator) op).getOperator());
+		int count = op instanceof MergeSort ? 1 : 0;
+		for (Operator in : op.getInputs())
+			count += countSorts(in);
+		return count;
+	}
+
+	private void record(String name, long nanos) {
+		LatencyStats s;
+		synchronized (stats) {
+			s = stats.get(name);
+			if (s == null) {
+				s = new LatencyStats();
+				stats.put(name, s);
+			}
+		}
+		s.add(nanos);
+		if (!ALL_QUERIES.equals(name))
+			stats.get(ALL_QUERIES).add(nanos);
+	}
+
+	/**
+	 * Returns the latency statistics of queries with a given name (ALL_QUERIES for all queries) or null if none.
+	 */
+	public LatencyStats getLatencyStats(String name) {
+		synchronized (stats) {
+			return stats.get(name);
+		}
+	}
+
+	/**
+	 * Returns one line of latency statistics per query name (aggregate first).
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		synchronized (stats) {
+			for (Map.Entry<String, LatencyStats> e : stats.entrySet())
+				sb.append(String.format("%-20s %s%n", e.getKey(), e.getValue()));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Stops accepting queries and waits for running queries to finish.
+	 */
+	public void close() throws IOException {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for queries", e);
+		}
+	}
+
+	/**
+	 * Result of one query. Times are in nanoseconds.
+	 */
+	public static class QueryResult {
+		private String name; // Query name
+		private long rows; // Tuples output
+		private long latency; // Time from submission to completion
+		private long queued; // Time waiting for a thread
+		private long waitingForSorts; // Time waiting for sort permits
+		private long running; // Time running plan
+
+		QueryResult(String name, long rows, long latency, long queued, long waitingForSorts, long running) {
+			this.name = name;
+			this.rows = rows;
+			this.latency = latency;
+			this.queued = queued;
+			this.waitingForSorts = waitingForSorts;
+			this.running = running;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getLatency() {
+			return latency;
+		}
+
+		public long getQueuedTime() {
+			return queued;
+		}
+
+		public long getSortWaitTime() {
+			return waitingForSorts;
+		}
+
+		public long getRunningTime() {
+			return running;
+		}
+	}
+
+	/**
+	 * Latencies (in nanoseconds) of completed queries.
+	 */
+	public static class LatencyStats {
+		private ArrayList<Long> latencies = new ArrayList<Long>(); // Latency of each query
+		private long[] sorted; // Sorted latencies (null if a latency was added since last sort)
+
+		synchronized void add(long nanos) {
+			latencies.add(nanos);
+			sorted = null;
+		}
+
+		public synchronized int getCount() {
+			return latencies.size();
+		}
+
+		/**
+		 * Returns the latency that p percent of queries did not exceed (nearest rank) or 0 if there are no queries.
+		 */
+		public synchronized long getPercentile(double p) {
+			if (latencies.isEmpty())
+				return 0;
+			if (sorted == null) {
+				sorted = new long[latencies.size()];
+				for (int i = 0; i < sorted.length; i++)
+					sorted[i] = latencies.get(i);
+				Arrays.sort(sorted);
+			}
+			int rank = (int) Math.ceil(p / 100 * sorted.length);
+			return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+		}
+
+		public synchronized long getMean() {
+			long sum = 0;
+			for (long l : latencies)
+				sum += l;
+			return latencies.isEmpty() ? 0 : sum / latencies.size();
+		}
+
+		public String toString() {
+			return String.format("count=%d mean=%.3f ms p50=%.3f ms p90=%.3f ms p99=%.3f ms max=%.3f ms", getCount(),
+					getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6,
+					getPercentile(100) / 1e6);
+		}
+	}
+}
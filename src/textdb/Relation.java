@@ -5,6 +5,7 @@ package textdb;
  */
 public class Relation {
 	private Attribute[] attributes;
+	private volatile IntSlots intSlots; // Int slots of attributes (null until first needed or attributes change)
 
 	public Relation() {
 		attributes = null;
@@ -32,6 +33,37 @@ public class Relation {
 		return attributes[index];
 	}
 
+	/**
+	 * Returns the int slot of each attribute. INT and SMALLINT attributes are
+	 * numbered from 0 in attribute order, other attributes are -1. Tuples of this
+	 * relation store INT and SMALLINT values unboxed in an int array using these
+	 * slots.
+	 */
+	public int[] getIntSlots() {
+		if (attributes == null)
+			return new int[0];
+		return intSlots().slots;
+	}
+
+	public int getNumIntSlots() {
+		if (attributes == null)
+			return 0;
+		return intSlots().count;
+	}
+
+	/*
+	 * Returns the int slots of the current attributes. Slots are computed once and published with final fields so
+	 * threads creating tuples of a shared relation at the same time see complete slots.
+	 */
+	private IntSlots intSlots() {
+		IntSlots s = intSlots;
+		if (s == null || s.attributes != attributes) {
+			s = new IntSlots(attributes);
+			intSlots = s;
+		}
+		return s;
+	}
+
 	public void mergeRelation(Relation r) {
 		if (attributes == null) {
 			attributes = new Attribute[r.attributes.length];
@@ -50,6 +82,17 @@ public class Relation {
 
 			attributes = attr;
 		}
+		intSlots = null;
+	}
+
+	/**
+	 * Returns a relation with the given attributes of this relation (in the given order).
+	 */
+	public Relation project(int[] attrs) {
+		Attribute[] attr = new Attribute[attrs.length];
+		for (int i = 0; i < attrs.length; i++)
+			attr[i] = new Attribute(attributes[attrs[i]]);
+		return new Relation(attr);
 	}
 
 	public String toString() {
@@ -60,4 +103,27 @@ public class Relation {
 		}
 		return sb.toString();
 	}
+
+	/**
+	 * Int slots of an array of attributes.
+	 */
+	private static final class IntSlots {
+		final Attribute[] attributes; // Attributes slots were computed for
+		final int[] slots; // Int slot of each attribute (-1 if not INT or SMALLINT)
+		final int count; // Number of INT and SMALLINT attributes
+
+		IntSlots(Attribute[] attributes) {
+			this.attributes = attributes;
+			slots = new int[attributes.length];
+			int n = 0;
+			for (int i = 0; i < attributes.length; i++) {
+				int type = attributes[i].getType();
+				if (type == Attribute.TYPE_INT || type == Attribute.TYPE_SMALLINT)
+					slots[i] = n++;
+				else
+					slots[i] = -1;
+			}
+			count = n;
+		}
+	}
 }
@@ -0,0 +1,27 @@
+package textdb;
+
+import java.io.IOException;
+
+/**
+ * Exchange that sends each tuple to the port for the hash of its key
+ * attributes (see Exchange.partition()). Repartitioning both inputs of an
+ * equi-join on their join keys with the same number of ports puts all tuples
+ * that can join in the same pipeline.
+ */
+public class RepartitionExchange extends Exchange {
+	private int[] keyLocs; // Key attribute indexes hashed
+
+	public RepartitionExchange(Operator in, int[] keys, int numPorts) {
+		super(in, numPorts);
+		keyLocs = keys.clone();
+	}
+
+	public RepartitionExchange(Operator in, int[] keys, int numPorts, int chunks) {
+		super(in, numPorts, chunks);
+		keyLocs = keys.clone();
+	}
+
+	protected void route(Tuple t) throws IOException {
+		emit(partition(t, keyLocs, getNumPorts()), t);
+	}
+}
@@ -0,0 +1,68 @@
+package textdb;
+
+import java.io.*;
+
+/**
+ * Performs a selection in iterator format: outputs the input tuples that
+ * satisfy a predicate. If the input is a TextFileScan the predicate is pushed
+ * into the scan, which rejects non-matching lines before building tuples, and
+ * the selection passes the scan's output through.
+ */
+public class Select extends Operator {
+	private Predicate pred; // Predicate as given
+	private Predicate compiled; // Predicate compiled for the input relation
+	private boolean pushedDown; // True if the input scan applies the predicate
+
+	public Select(Operator in, Predicate p) {
+		super(new Operator[] { in }, 0, 0);
+		pred = p;
+		if (in instanceof TextFileScan && ((TextFileScan) in).getPredicate() == null) {
+			((TextFileScan) in).setPredicate(p);
+			pushedDown = true;
+		}
+	}
+
+	public Predicate getPredicate() {
+		return pred;
+	}
+
+	/**
+	 * Returns true if the predicate is applied by the input scan.
+	 */
+	public boolean isPushedDown() {
+		return pushedDown;
+	}
+
+	public int[] getSortOrder() {
+		return input[0].getSortOrder();
+	}
+
+	public void init() throws IOException {
+		input[0].init();
+		setOutputRelation(input[0].getOutputRelation());
+		compiled = pushedDown ? null : pred.compile(getOutputRelation());
+	}
+
+	public Tuple next() throws IOException {
+		Tuple t;
+		while ((t = input[0].next()) != null) {
+			incrementTuplesRead();
+			if (compiled == null || compiled.matches(t)) {
+				incrementTuplesOutput();
+				return t;
+			}
+		}
+		return null;
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException {
+		if (!pushedDown)
+			return super.nextBatch(batch);
+
+		// Scan fills the batch with matching lines only
+		boolean more = input[0].nextBatch(batch);
+		incrementTuplesRead(batch.getSize());
+		incrementTuplesOutput(batch.getSize());
+		return more;
+	}
+}
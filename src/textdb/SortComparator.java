@@ -3,7 +3,8 @@ package textdb;
 import java.util.Comparator;
 
 /**
- * Used by sorting algorithms to perform tuple comparisons.
+ * Used by sorting algorithms to perform tuple comparisons. Once the relation being sorted
+ * is known (setRelation()) comparisons use a KeyComparator specialized for the key types.
  */
 @SuppressWarnings("rawtypes")
 public class SortComparator implements Comparator
@@ -11,42 +12,60 @@ public class SortComparator implements Comparator
 	private int[] attrLocs;				// Indexes of attributes to be sorted
 	private boolean[] sortAsc;			// True if attribute is to be sorted in ascending order
 	private int numAttrs;				// Number of attributes being compared
+	private KeyComparator keyComp;		// Comparator specialized for key types
+	private int keyClass;				// Key class keyComp was created for (0 if not specialized)
 
 	public SortComparator(int[] idx, boolean []sa)
 	{	attrLocs = idx;
 		sortAsc = sa;
 		numAttrs = idx.length;
+		keyComp = KeyComparator.forKeys(attrLocs, attrLocs, EquiJoinPredicate.OBJECT_KEY, sortAsc);
+	}
+
+	public int[] getAttributeIndexes()
+	{	return attrLocs.clone();
+	}
+
+	public boolean[] getSortAscending()
+	{	return sortAsc.clone();
 	}
 
 	public void shiftComparator(int i)
 	{
 		for (int j = 0; j < numAttrs; j++)
 			attrLocs[j] += i;
+		keyComp = KeyComparator.forKeys(attrLocs, attrLocs, keyClass == 0 ? EquiJoinPredicate.OBJECT_KEY : keyClass, sortAsc);
 	}
 
-	@SuppressWarnings("unchecked")
-	public int compare(Object o1, Object o2)
-	{	Tuple t1 = (Tuple) o1;
-		Tuple t2 = (Tuple) o2;
-
-		for (int i=0; i < numAttrs; i++)
-		{	// val is positive if t1.attr > t2.attr, 0 if equal, negative otherwise
-			int val = ((Comparable) t1.getObject(attrLocs[i])).compareTo(t2.getObject(attrLocs[i]));
-
-			if (sortAsc[i])
-			{	if (val > 0)
-					return 1;		// T1 is greater than T2 if sorting in ascending order
-				else if (val < 0)
-					return -1;		// T1 is less than T2 if sorting in ascending order
-			}
-			else
-			{	if (val < 0)
-					return 1;		// T1 is greater than T2 if sorting in descending order
-				else if (val > 0)
-					return -1;		// T1 is less than T2 if sorting in descending order
-			}
+	/**
+	 * Specializes the comparator for the key attribute types of the relation being sorted.
+	 * If the comparator is shared by sorts of relations with different key types it stays generic.
+	 * 
+	 * @param r
+	 * 		relation of tuples compared
+	 */
+	public synchronized void setRelation(Relation r)
+	{	int cls = KeyComparator.keyClass(r.getAttributeType(attrLocs[0]));
+		for (int i=1; i < numAttrs; i++)
+			if (KeyComparator.keyClass(r.getAttributeType(attrLocs[i])) != cls)
+				cls = EquiJoinPredicate.OBJECT_KEY;
+
+		if (keyClass != 0 && keyClass != cls)
+			cls = EquiJoinPredicate.OBJECT_KEY;		// Used for different key types
+		if (cls != keyClass)
+		{	keyClass = cls;
+			keyComp = KeyComparator.forKeys(attrLocs, attrLocs, cls, sortAsc);
 		}
-		return 0;					// T1 and T2 are equal in all attributes
 	}
-}
 
+	public int compare(Object o1, Object o2)
+	{	return keyComp.compare((Tuple) o1, (Tuple) o2);
+	}
+
+	/**
+	 * Compares two tuples without the Object casts of compare().
+	 */
+	public int compare(Tuple t1, Tuple t2)
+	{	return keyComp.compare(t1, t2);
+	}
+}
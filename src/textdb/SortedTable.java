@@ -0,0 +1,363 @@
+package textdb;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A persistent table file holding tuples sorted (ascending) on key attributes.
+ * Tuples are stored in the binary record format of Tuple.write() in pages of
+ * up to BLOCKING_FACTOR records. A footer at the end of the file holds the
+ * schema, the key attributes and, for each page, its offset, size, number of
+ * records and its smallest and largest key. The file ends with the offset of
+ * the footer and a magic number.
+ *
+ * A table is read with SortedTableScan, whose output is known to be sorted on
+ * the key attributes so a MergeJoin can read two tables without sorting them.
+ */
+public class SortedTable {
+	static public final int MAGIC = 0x53544231; // "STB1"
+
+	private String fileName; // Table file
+	private Relation relation; // Schema of tuples in table
+	private int[] keyAttrs; // Attributes table is sorted on
+	private int blockingFactor; // Maximum number of records per page
+	private long numTuples; // Number of tuples in table
+	private long[] pageOffsets; // Offset of each page in file
+	private int[] pageLengths; // Size of each page in bytes
+	private int[] pageCounts; // Number of records in each page
+	private Object[][] minKeys; // Smallest key of each page
+	private Object[][] maxKeys; // Largest key of each page
+
+	private SortedTable(String fileName) {
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Writes the output of an operator to a sorted table file. The input is sorted with a MergeSort unless it is
+	 * already sorted on the key attributes (see Operator.getSortOrder()).
+	 *
+	 * @param fileName
+	 *            table file to create
+	 * @param input
+	 *            operator producing tuples of table
+	 * @param keyAttrs
+	 *            attributes to sort table on
+	 * @param bufferSize
+	 *            number of pages available to sort input
+	 * @param bfr
+	 *            number of records per page of table (and tuples per page for sort)
+	 * @return table written
+	 * @throws IOException
+	 *             if an I/O error occurs or the input is not sorted on the key attributes
+	 */
+	public static SortedTable create(String fileName, Operator input, int[] keyAttrs, int bufferSize, int bfr)
+			throws IOException {
+		boolean[] asc = new boolean[keyAttrs.length];
+		for (int i = 0; i < asc.length; i++)
+			asc[i] = true;
+		SortComparator sorter = new SortComparator(keyAttrs.clone(), asc);
+		Operator in = input;
+		if (!JoinPlanner.isSortedOn(input, keyAttrs))
+			in = new MergeSort(input, bufferSize, bfr, sorter);
+
+		SortedTable table = new SortedTable(fileName);
+		table.keyAttrs = keyAttrs.clone();
+		table.blockingFactor = Math.max(1, bfr);
+		in.init();
+		try {
+			table.relation = in.getOutputRelation();
+			sorter.setRelation(table.relation);
+			table.write(in, sorter);
+		} finally {
+			in.close();
+		}
+		return table;
+	}
+
+	/*
+	 * Writes pages of tuples from an input followed by the footer.
+	 */
+	private void write(Operator in, SortComparator sorter) throws IOException {
+		ArrayList<Long> offsets = new ArrayList<Long>();
+		ArrayList<Integer> lengths = new ArrayList<Integer>();
+		ArrayList<Integer> counts = new ArrayList<Integer>();
+		ArrayList<Object[]> mins = new ArrayList<Object[]>();
+		ArrayList<Object[]> maxs = new ArrayList<Object[]>();
+
+		ByteArrayOutputStream pageBytes = new ByteArrayOutputStream();
+		BufferedOutputStream pageOut = new BufferedOutputStream(pageBytes);
+		BufferedOutputStream out = FileManager.openOutputFile(fileName);
+		try {
+			long offset = 0;
+			int count = 0;
+			Object[] firstKey = null;
+			Tuple last = null, t;
+			numTuples = 0;
+			while ((t = in.next()) != null) {
+				if (last != null && sorter.compare(last, t) > 0)
+					throw new IOException("Input of sorted table " + fileName + " is not sorted on its key");
+				if (count == 0)
+					firstKey = getKey(t);
+				t.write(pageOut);
+				last = t;
+				count++;
+				numTuples++;
+
+				if (count == blockingFactor) {
+					offset += writePage(out, pageOut, pageBytes, offset, count, firstKey, last, offsets, lengths, counts,
+							mins, maxs);
+					count = 0;
+				}
+			}
+			if (count > 0)
+				offset += writePage(out, pageOut, pageBytes, offset, count, firstKey, last, offsets, lengths, counts, mins,
+						maxs);
+
+			pageOffsets = new long[offsets.size()];
+			pageLengths = new int[offsets.size()];
+			pageCounts = new int[offsets.size()];
+			for (int i = 0; i < pageOffsets.length; i++) {
+				pageOffsets[i] = offsets.get(i);
+				pageLengths[i] = lengths.get(i);
+				pageCounts[i] = counts.get(i);
+			}
+			minKeys = mins.toArray(new Object[0][]);
+			maxKeys = maxs.toArray(new Object[0][]);
+			writeFooter(out, offset);
+		} finally {
+			FileManager.closeFile(out);
+		}
+	}
+
+	private long writePage(BufferedOutputStream out, BufferedOutputStream pageOut, ByteArrayOutputStream pageBytes,
+			long offset, int count, Object[] firstKey, Tuple last, ArrayList<Long> offsets, ArrayList<Integer> lengths,
+			ArrayList<Integer> counts, ArrayList<Object[]> mins, ArrayList<Object[]> maxs) throws IOException {
+		pageOut.flush();
+		int len = pageBytes.size();
+		pageBytes.writeTo(out);
+		pageBytes.reset();
+		offsets.add(offset);
+		lengths.add(len);
+		counts.add(count);
+		mins.add(firstKey);
+		maxs.add(getKey(last));
+		return len;
+	}
+
+	private void writeFooter(BufferedOutputStream out, long footerOffset) throws IOException {
+		DataOutputStream dout = new DataOutputStream(out);
+		int numAttrs = relation.getNumAttributes();
+		dout.writeInt(numAttrs);
+		for (int i = 0; i < numAttrs; i++) {
+			Attribute a = relation.getAttribute(i);
+			dout.writeUTF(a.getName());
+			dout.writeInt(a.getType());
+			dout.writeInt(a.getLength());
+		}
+		dout.writeInt(keyAttrs.length);
+		for (int i = 0; i < keyAttrs.length; i++)
+			dout.writeInt(keyAttrs[i]);
+		dout.writeInt(blockingFactor);
+		dout.writeLong(numTuples);
+		dout.writeInt(pageOffsets.length);
+		for (int i = 0; i < pageOffsets.length; i++) {
+			dout.writeLong(pageOffsets[i]);
+			dout.writeInt(pageLengths[i]);
+			dout.writeInt(pageCounts[i]);
+			writeKey(dout, minKeys[i]);
+			writeKey(dout, maxKeys[i]);
+		}
+		dout.writeLong(footerOffset);
+		dout.writeInt(MAGIC);
+		dout.flush();
+	}
+
+	private void writeKey(DataOutputStream dout, Object[] key) throws IOException {
+		for (int i = 0; i < keyAttrs.length; i++) {
+			Object val = key[i];
+			dout.writeBoolean(val == null);
+			if (val == null)
+				continue;
+			int type = relation.getAttributeType(keyAttrs[i]);
+			if (type == Attribute.TYPE_INT || type == Attribute.TYPE_SMALLINT)
+				dout.writeInt(((Number) val).intValue());
+			else
+				dout.writeUTF(val.toString());
+		}
+	}
+
+	private Object[] readKey(DataInputStream din) throws IOException {
+		Object[] key = new Object[keyAttrs.length];
+		for (int i = 0; i < keyAttrs.length; i++) {
+			if (din.readBoolean())
+				continue;
+			int type = relation.getAttributeType(keyAttrs[i]);
+			if (type == Attribute.TYPE_INT)
+				key[i] = din.readInt();
+			else if (type == Attribute.TYPE_SMALLINT)
+				key[i] = (short) din.readInt();
+			else {
+				String st = din.readUTF();
+				if (type == Attribute.TYPE_DECIMAL)
+					key[i] = new BigDecimal(st);
+				else if (type == Attribute.TYPE_TIMESTAMP)
+					key[i] = java.sql.Timestamp.valueOf(st);
+				else if (type == Attribute.TYPE_DATE)
+					key[i] = java.sql.Date.valueOf(st);
+				else
+					key[i] = st;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Opens an existing table file by reading its footer.
+	 *
+	 * @param fileName
+	 *            table file
+	 * @return table
+	 * @throws IOException
+	 *             if the file cannot be read or is not a sorted table
+	 */
+	public static SortedTable open(String fileName) throws IOException {
+		SortedTable table = new SortedTable(fileName);
+		try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = ch.size();
+			ByteBuffer trailer = ByteBuffer.allocate(12);
+			if (size < 12 || ch.read(trailer, size - 12) != 12 || trailer.getInt(8) != MAGIC)
+				throw new IOException(fileName + " is not a sorted table");
+			long footerOffset = trailer.getLong(0);
+			if (footerOffset < 0 || footerOffset > size - 12)
+				throw new IOException(fileName + " has a corrupt footer");
+
+			ByteBuffer footer = ByteBuffer.allocate((int) (size - 12 - footerOffset));
+			while (footer.hasRemaining())
+				if (ch.read(footer, footerOffset + footer.position()) < 0)
+					throw new EOFException(fileName + " has a truncated footer");
+			table.readFooter(new DataInputStream(new ByteArrayInputStream(footer.array())));
+		}
+		return table;
+	}
+
+	private void readFooter(DataInputStream din) throws IOException {
+		int numAttrs = din.readInt();
+		Attribute[] attrs = new Attribute[numAttrs];
+		for (int i = 0; i < numAttrs; i++)
+			attrs[i] = new Attribute(din.readUTF(), din.readInt(), din.readInt());
+		relation = new Relation(attrs);
+		keyAttrs = new int[din.readInt()];
+		for (int i = 0; i < keyAttrs.length; i++)
+			keyAttrs[i] = din.readInt();
+		blockingFactor = din.readInt();
+		numTuples = din.readLong();
+		int numPages = din.readInt();
+		pageOffsets = new long[numPages];
+		pageLengths = new int[numPages];
+		pageCounts = new int[numPages];
+		minKeys = new Object[numPages][];
+		maxKeys = new Object[numPages][];
+		for (int i = 0; i < numPages; i++) {
+			pageOffsets[i] = din.readLong();
+			pageLengths[i] = din.readInt();
+			pageCounts[i] = din.readInt();
+			minKeys[i] = readKey(din);
+			maxKeys[i] = readKey(din);
+		}
+	}
+
+	/**
+	 * Returns the key attribute values of a tuple.
+	 */
+	public Object[] getKey(Tuple t) {
+		Object[] key = new Object[keyAttrs.length];
+		for (int i = 0; i < keyAttrs.length; i++)
+			key[i] = t.getObject(keyAttrs[i]);
+		return key;
+	}
+
+	/**
+	 * Compares two keys (or key prefixes) attribute by attribute. NULL sorts first. Returns 0 if one key is a prefix
+	 * of the other.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static int compareKeys(Object[] k1, Object[] k2) {
+		int n = Math.min(k1.length, k2.length);
+		for (int i = 0; i < n; i++) {
+			if (k1[i] == null || k2[i] == null) {
+				if (k1[i] != k2[i])
+					return k1[i] == null ? -1 : 1;
+				continue;
+			}
+			int c = ((Comparable) k1[i]).compareTo(k2[i]);
+			if (c != 0)
+				return c;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the first page that may hold a key greater than or equal to low (the number of pages if none).
+	 */
+	public int findFirstPage(Object[] low) {
+		// Pages are in key order so the pages whose largest key is below low come first
+		int lo = 0, hi = maxKeys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compareKeys(maxKeys[mid], low) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public Relation getRelation() {
+		return relation;
+	}
+
+	public int[] getKeyAttributes() {
+		return keyAttrs.clone();
+	}
+
+	public int getBlockingFactor() {
+		return blockingFactor;
+	}
+
+	public long getNumTuples() {
+		return numTuples;
+	}
+
+	public int getNumPages() {
+		return pageOffsets.length;
+	}
+
+	public long getPageOffset(int page) {
+		return pageOffsets[page];
+	}
+
+	public int getPageLength(int page) {
+		return pageLengths[page];
+	}
+
+	public int getPageCount(int page) {
+		return pageCounts[page];
+	}
+
+	public Object[] getMinKey(int page) {
+		return minKeys[page].clone();
+	}
+
+	public Object[] getMaxKey(int page) {
+		return maxKeys[page].clone();
+	}
+}
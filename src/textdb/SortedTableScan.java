@@ -0,0 +1,140 @@
+package textdb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Scans a SortedTable in iterator form. Output is sorted on the table's key
+ * attributes (see getSortOrder()) so a MergeJoin can read it without a
+ * MergeSort. The file is read a table page at a time through the shared
+ * BufferPool. An optional key range limits the scan to the pages whose
+ * smallest and largest keys overlap it.
+ */
+public class SortedTableScan extends Operator {
+	private SortedTable table; // Table being scanned
+	private Object[] lowKey; // Smallest key returned (null for no lower bound)
+	private Object[] highKey; // Largest key returned (null for no upper bound)
+
+	// Iterator state variables
+	private InputStream in; // Stream reading table file
+	private long filePos; // Offset in file of next byte of stream
+	private int page; // Next page to read
+	private int lastPage; // Page after last page of scan
+	private byte[] pageBytes; // Bytes of current page
+	private ByteBuffer pageBuf; // Current page (null if no more pages)
+
+	/**
+	 * Creates a scan of a table file (the schema is read from the file's footer).
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read or is not a sorted table
+	 */
+	public SortedTableScan(String fileName) throws IOException {
+		this(SortedTable.open(fileName));
+	}
+
+	public SortedTableScan(SortedTable table) {
+		super();
+		this.table = table;
+		setOutputRelation(table.getRelation());
+	}
+
+	/**
+	 * Limits the scan to tuples with keys between low and high inclusive. A key may be a prefix of the table's key
+	 * attributes. A bound is ignored if it is null.
+	 */
+	public void setKeyRange(Object[] low, Object[] high) {
+		lowKey = low;
+		highKey = high;
+	}
+
+	public SortedTable getTable() {
+		return table;
+	}
+
+	public int[] getSortOrder() {
+		return table.getKeyAttributes();
+	}
+
+	public void init() throws IOException {
+		// Pages outside the key range are not read
+		page = lowKey == null ? 0 : table.findFirstPage(lowKey);
+		lastPage = table.getNumPages();
+		if (highKey != null)
+			while (lastPage > page && SortedTable.compareKeys(table.getMinKey(lastPage - 1), highKey) > 0)
+				lastPage--;
+
+		in = FileManager.openPooledInputStream(table.getFileName());
+		if (in == null)
+			in = FileManager.openInputFile(table.getFileName());
+		filePos = 0;
+		pageBuf = null;
+		nextPage();
+	}
+
+	public Tuple next() throws IOException {
+		while (pageBuf != null) {
+			if (!pageBuf.hasRemaining()) {
+				nextPage();
+				continue;
+			}
+
+			Tuple t = new Tuple(table.getRelation());
+			t.read(pageBuf);
+			incrementTuplesRead();
+			if (lowKey != null && SortedTable.compareKeys(table.getKey(t), lowKey) < 0)
+				continue;
+			if (highKey != null && SortedTable.compareKeys(table.getKey(t), highKey) > 0) {
+				pageBuf = null; // Tuples are in key order so none of the rest are in range
+				return null;
+			}
+			incrementTuplesOutput();
+			return t;
+		}
+		return null;
+	}
+
+	/*
+	 * Reads the next page of the scan into pageBuf (null if there are no more pages).
+	 */
+	private void nextPage() throws IOException {
+		if (page >= lastPage) {
+			pageBuf = null;
+			return;
+		}
+
+		long offset = table.getPageOffset(page);
+		while (filePos < offset) {
+			long n = in.skip(offset - filePos);
+			if (n <= 0)
+				throw new EOFException("Sorted table " + table.getFileName() + " is truncated");
+			filePos += n;
+		}
+
+		int len = table.getPageLength(page);
+		if (pageBytes == null || pageBytes.length < len)
+			pageBytes = new byte[len];
+		int pos = 0;
+		while (pos < len) {
+			int n = in.read(pageBytes, pos, len - pos);
+			if (n < 0)
+				throw new EOFException("Sorted table " + table.getFileName() + " is truncated");
+			pos += n;
+		}
+		filePos += len;
+		incrementPagesRead();
+		incrementBytesRead(len);
+		pageBuf = ByteBuffer.wrap(pageBytes, 0, len);
+		page++;
+	}
+
+	public void close() throws IOException {
+		if (in == null)
+			return;
+		if (in instanceof PooledInputStream)
+			incrementDiskPagesRead(((PooledInputStream) in).getDiskPagesRead());
+		in.close();
+		in = null;
+		pageBuf = null;
+	}
+}
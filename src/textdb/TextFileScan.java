@@ -1,15 +1,23 @@
 package textdb;
 
 import java.io.*;
+import java.util.StringTokenizer;
 
 /**
  * Performs a file scan in iterator form.  File is assumed to be on disk in TEXT form.  
  */
 public class TextFileScan extends Operator
 {
+	static public final int SAMPLE_LINES = 100;		// Lines read to estimate number of tuples in file
+
 	protected String inFileName;					// Name of input file to scan
 	protected BufferedReader inFile;				// Used to read from text file
+	protected PooledInputStream pooledIn;			// Buffer pool stream under inFile (null if pool is disabled)
 	protected Relation inputRelation;				// Schema of file being scanned
+	protected boolean atEnd;						// True once the end of the file has been reached
+	protected int[] sortOrder;						// Attributes the file is known to be sorted on (null if unknown)
+	protected Predicate predicate;					// Compiled predicate lines must satisfy (null if none)
+	protected Predicate.TextLine line;				// Line being tested with predicate
 
 
 	public TextFileScan(String inName, Relation r)
@@ -22,13 +30,37 @@ public class TextFileScan extends Operator
 	public void init() throws FileNotFoundException, IOException
 	{
 		// TODO: Assign a new BufferedReader to inFile with the FileManager class
-		FileManager f = new FileManager();
-		inFile= f.openTextInputFile(inFileName);
+		// Read through the shared buffer pool so rescans of the file are served from memory
+		pooledIn = FileManager.openPooledInputStream(inFileName);
+		if (pooledIn != null)
+			inFile = new BufferedReader(new InputStreamReader(pooledIn));
+		else
+		{	FileManager f = new FileManager();
+			inFile= f.openTextInputFile(inFileName);
+		}
+		atEnd = false;
 		
 	}
 
+	/*
+	 * Pushes a selection predicate into the scan. Lines that do not satisfy it are rejected before a tuple is built
+	 * (only the fields the predicate uses are located and parsed). Rejected lines count as tuples read.
+	 */
+	public void setPredicate(Predicate p)
+	{	predicate = (p == null) ? null : p.compile(inputRelation);
+		if (line == null)
+			line = new Predicate.TextLine();
+	}
+
+	public Predicate getPredicate()
+	{	return predicate;
+	}
+
 	public Tuple next() throws IOException
 	{
+		if (predicate != null)
+			return nextMatching();
+
 		Tuple t = null;
 
 		// TODO: YOUR CODE TO CREATE A NEW TUPLE AND READ FROM TEXT FILE HERE		
@@ -36,13 +68,113 @@ public class TextFileScan extends Operator
 		t = new Tuple(inputRelation); 		
 
 		if(!t.readText(inFile))
+		{	endOfFile();
 			return null;
+		}
 		
 		incrementTuplesRead();		
 		incrementTuplesOutput();
 		return t;
 	}
 
+	/*
+	 * Returns the next tuple whose line satisfies the predicate.
+	 */
+	private Tuple nextMatching() throws IOException
+	{	String st;
+		while ((st = inFile.readLine()) != null)
+		{	incrementTuplesRead();
+			if (!predicate.matches(line.set(st)))
+				continue;
+
+			Tuple t = new Tuple(inputRelation);
+			t.parseText(st);
+			incrementTuplesOutput();
+			return t;
+		}
+		endOfFile();
+		return null;
+	}
+
+	public boolean nextBatch(TupleBatch batch) throws IOException
+	{	// Parse lines straight into batch columns (INT values are not boxed)
+		batch.reset();
+		int numAttrs = inputRelation.getNumAttributes();
+		String st;
+		while (!batch.isFull() && (st = inFile.readLine()) != null)
+		{	if (predicate != null && !predicate.matches(line.set(st)))
+			{	incrementTuplesRead();
+				continue;
+			}
+			int row = batch.addRow();
+			StringTokenizer myTokenizer = new StringTokenizer(st);
+			for (int i=0; i < numAttrs; i++)
+			{	if (!myTokenizer.hasMoreTokens())
+					batch.setObject(row, i, null);		// Line has fewer fields than relation
+				else if (inputRelation.getAttributeType(i) == Attribute.TYPE_INT)
+					batch.setInt(row, i, Integer.parseInt(myTokenizer.nextToken()));
+				else
+					batch.setObject(row, i, myTokenizer.nextToken());
+			}
+			incrementTuplesRead();
+			incrementTuplesOutput();
+		}
+		if (!batch.isFull())
+			endOfFile();
+		return !batch.isEmpty();
+	}
+
+	/*
+	 * Counts the bytes of the file as read the first time the end of the file is reached.
+	 */
+	protected void endOfFile()
+	{	if (!atEnd)
+		{	atEnd = true;
+			incrementBytesRead(new File(inFileName).length());
+		}
+	}
+
+	/*
+	 * Declares that the file is sorted in ascending order on the given attributes.
+	 */
+	public void setSortOrder(int[] attrs)
+	{	sortOrder = attrs;
+	}
+
+	public int[] getSortOrder()
+	{	return sortOrder;
+	}
+
+	/*
+	 * Returns the size of the file in bytes.
+	 */
+	public long getFileSize()
+	{	return new File(inFileName).length();
+	}
+
+	/*
+	 * Estimates the number of tuples in the file from the file size and the average length of the first
+	 * SAMPLE_LINES lines (exact if the file has no more lines than that).
+	 */
+	public long estimateTuples() throws IOException
+	{	BufferedReader reader = FileManager.openTextInputFile(inFileName);
+		long chars = 0;
+		int lines = 0;
+		try
+		{	String st;
+			while (lines < SAMPLE_LINES && (st = reader.readLine()) != null)
+			{	chars += st.length()+1;
+				lines++;
+			}
+			if (lines < SAMPLE_LINES)
+				return lines;
+		}
+		finally
+		{	FileManager.closeFile(reader);
+		}
+		return Math.max(lines, Math.round(getFileSize()/((double) chars/lines)));
+	}
+
 	public boolean hasNext() throws IOException
 	{	return inFile.ready();
 	}
@@ -50,9 +182,17 @@ public class TextFileScan extends Operator
 	public void close() throws IOException
 	{
 		// TODO: YOUR CODE HERE TO CLOSE File using FileManager
+		if (inFile == null)
+			return;								// Not initialized (e.g. a sibling pipeline failed)
 		try{
 			FileManager f = new FileManager();
 			f.closeFile(inFile);
+			inFile = null;
+			if (pooledIn != null)
+			{	incrementPagesRead((int) pooledIn.getPagesRead());
+				incrementDiskPagesRead(pooledIn.getDiskPagesRead());
+				pooledIn = null;
+			}
 		}catch(Exception e){
 			e.printStackTrace();
 		}
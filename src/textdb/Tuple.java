@@ -43,12 +43,14 @@ I/O Methods
 -----------
 public boolean readText(BufferedReader in) throws IOException
 public void writeText(PrintWriter out)
- - read/write tuples in text format
+public void parseText(String st)
+ - read/write tuples in text format (parseText sets values from a line already read)
  - if no schema is given, readText will create a new schema where all attributes are strings
 
 public boolean read(BufferedReader in) throws IOException
+public boolean read(ByteBuffer in) throws IOException
 public void write(PrintWriter out)
- - read/write tuples in binary format
+ - read/write tuples in binary format (ByteBuffer version reads from a page of a sorted table)
 
 Other Methods
 -------------
@@ -62,6 +64,9 @@ public String toString()
 Implementation Details
 ----------------------
 - a tuple is an array of Object references in memory
+- INT and SMALLINT values are kept unboxed in an int array (indexed by the relation's int slots) until addField() or
+  storing a non-int value (e.g. NULL) requires them to be boxed into the Object array. Methods that only read a tuple
+  (including getValues()) never change it, so tuples can be read by many threads at once.
 - On disk tuple is of the form:
 recordHeader numFields isNull[] offset[] fld1Data ... fldNData
 
@@ -74,6 +79,7 @@ recordHeader numFields isNull[] offset[] fld1Data ... fldNData
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.StringTokenizer;
 
 /**
@@ -82,10 +88,25 @@ import java.util.StringTokenizer;
 public class Tuple
 {
 	/**
-	 * Array of field values
+	 * Array of field values (entries for values stored in ints are not used while the tuple is packed)
 	 */
 	protected Object[] values;						
 	
+	/**
+	 * INT and SMALLINT values indexed by the relation's int slots (used while the tuple is packed)
+	 */
+	protected int[] ints;
+
+	/**
+	 * Int slot of each attribute (-1 if not INT or SMALLINT) or null if tuple has no int slots
+	 */
+	protected int[] slots;
+
+	/**
+	 * True if INT and SMALLINT values are stored in ints rather than values
+	 */
+	protected boolean packed;
+
 	/**
 	 * Relational schema describing tuple format
 	 */
@@ -93,13 +114,19 @@ public class Tuple
 
 	
 	/**
-	 * Copy constructor.
+	 * Creates an empty tuple for a relation. INT and SMALLINT values are stored unboxed.
 	 * @param r
-	 * 		relation to copy
+	 * 		relation of tuple
 	 */
 	public Tuple(Relation r) 						
 	{	relation = r; 
 		values = new Object[r.getNumAttributes()]; 
+		int numInts = r.getNumIntSlots();
+		if (numInts > 0)
+		{	slots = r.getIntSlots();
+			ints = new int[numInts];
+			packed = true;
+		}
 	}
 	
 	/**
@@ -128,6 +155,11 @@ public class Tuple
 		values = new Object[t.values.length];
 		for (int i=0; i < t.values.length; i++)
 			values[i] = t.values[i];
+		if (t.packed)
+		{	slots = t.slots;
+			ints = t.ints.clone();
+			packed = true;
+		}
 	}
 	
 	/**
@@ -142,14 +174,85 @@ public class Tuple
 	 */
 	public Tuple(Tuple t1, Tuple t2, Relation r)
 	{	relation = r;
-		values = new Object[t1.values.length+t2.values.length];
-		for (int i=0; i < t1.values.length; i++)
-			values[i] = t1.values[i];
+		int len1 = t1.values.length;
+		values = new Object[len1+t2.values.length];
+
+		int numInts1 = t1.packed ? t1.ints.length : 0;
+		int numInts2 = t2.packed ? t2.ints.length : 0;
+		if (t1.packed && t2.packed && r.getNumAttributes() == values.length && r.getNumIntSlots() == numInts1+numInts2)
+		{	// Int slots of joined relation are those of t1 followed by those of t2
+			for (int i=0; i < len1; i++)
+				values[i] = t1.values[i];
+			for (int i=0; i < t2.values.length; i++)
+				values[i+len1] = t2.values[i];
+			slots = r.getIntSlots();
+			ints = new int[numInts1+numInts2];
+			System.arraycopy(t1.ints, 0, ints, 0, numInts1);
+			System.arraycopy(t2.ints, 0, ints, numInts1, numInts2);
+			packed = true;
+			return;
+		}
+
+		for (int i=0; i < len1; i++)
+			values[i] = t1.getObject(i);
 
 		for (int i=0; i < t2.values.length; i++)
-			values[i+t1.values.length] = t2.values[i];
+			values[i+len1] = t2.getObject(i);
 	}
 	
+	/**
+	 * Creates a new tuple with the given attributes of another tuple. INT and SMALLINT values are not boxed.
+	 * 
+	 * @param t
+	 * 		tuple projected
+	 * @param idx
+	 * 		attribute indexes of t to keep
+	 * @param r
+	 * 		relation describing new tuple (attributes idx of t's relation)
+	 */
+	public Tuple(Tuple t, int[] idx, Relation r)
+	{	this(r);
+		for (int i=0; i < idx.length; i++)
+			copyField(i, t, idx[i]);
+	}
+
+	/**
+	 * Creates a new tuple with the given attributes of the concatenation of tuple 1 and tuple 2 (so a join only copies
+	 * the attributes it outputs). INT and SMALLINT values are not boxed.
+	 * 
+	 * @param t1
+	 * 		first tuple
+	 * @param t2
+	 * 		second tuple
+	 * @param len1
+	 * 		number of attributes of the first tuple's relation (a missing value of t1 is NULL)
+	 * @param idx
+	 * 		attribute indexes to keep (indexes from len1 on are attributes of t2)
+	 * @param r
+	 * 		relation describing new tuple
+	 */
+	public Tuple(Tuple t1, Tuple t2, int len1, int[] idx, Relation r)
+	{	this(r);
+		for (int i=0; i < idx.length; i++)
+		{	if (idx[i] >= len1)
+				copyField(i, t2, idx[i]-len1);
+			else if (idx[i] < t1.numValues())
+				copyField(i, t1, idx[i]);
+			else
+				setValue(i, null);
+		}
+	}
+
+	/*
+	 * Sets value i to value j of another tuple.
+	 */
+	private void copyField(int i, Tuple t, int j)
+	{	if (t.isIntField(j) && packed && slots[i] >= 0)
+			ints[slots[i]] = t.ints[t.slots[j]];
+		else
+			setValue(i, t.getObject(j));
+	}
+
 	/*
 	 *  Utility Methods
 	 */
@@ -166,7 +269,7 @@ public class Tuple
 	{	Object[] tmp = new Object[idx.length];
 
 		for (int i=0; i < idx.length; i++)
-			tmp[i] = values[idx[i]];
+			tmp[i] = getObject(idx[i]);
 
 		return tmp;
 	}
@@ -178,7 +281,8 @@ public class Tuple
 	 * 		value to add
 	 */
 	public void addField(Object val)
-	{	Object[] tmp = new Object[values.length+1];
+	{	unpack();
+		Object[] tmp = new Object[values.length+1];
 		for (int i=0; i < values.length; i++)
 			tmp[i] = values[i];
 		tmp[values.length] = val;
@@ -186,13 +290,14 @@ public class Tuple
 	}
 
 	/**
-	 * Retrieves the tuple values.
+	 * Retrieves the tuple values. If INT and SMALLINT values are stored unboxed, returns a new array holding them
+	 * boxed (the tuple is not changed, so changes to the array do not change the tuple).
 	 * 
 	 * @return
 	 * 		array of tuple values
 	 */
 	public Object[] getValues() 					
-	{	return values; 
+	{	return packed ? boxedValues() : values;
 	}
 	
 	/**
@@ -202,7 +307,9 @@ public class Tuple
 	 * 		array of tuple values
 	 */
 	public void setValues (Object[] vals) 			
-	{	values = vals; }
+	{	values = vals;
+		packed = false;
+	}
 	
 	/**
 	 * Returns number of values in tuple.
@@ -223,7 +330,60 @@ public class Tuple
 	 * 		value
 	 */
 	public void setValue(int i, Object o)			
-	{	values[i] = o; 
+	{	if (packed && slots[i] >= 0)
+		{	int type = relation.getAttributeType(i);
+			if (type == Attribute.TYPE_INT && o instanceof Integer)
+			{	ints[slots[i]] = ((Integer) o).intValue();
+				return;
+			}
+			if (type == Attribute.TYPE_SMALLINT && o instanceof Short)
+			{	ints[slots[i]] = ((Short) o).intValue();
+				return;
+			}
+			unpack();			// NULL or other type of value
+		}
+		values[i] = o; 
+	}
+
+	/**
+	 * Sets an INT or SMALLINT value at a given index without boxing it if the tuple is packed.
+	 * 
+	 * @param i
+	 * 		index of value (starting at 0)
+	 * @param val
+	 * 		value
+	 */
+	public void setInt(int i, int val)
+	{	if (packed && slots[i] >= 0)
+			ints[slots[i]] = val;
+		else if (relation.getAttributeType(i) == Attribute.TYPE_SMALLINT)
+			values[i] = Short.valueOf((short) val);
+		else
+			values[i] = Integer.valueOf(val);
+	}
+
+	/**
+	 * Returns true if the value at a given index is stored unboxed (so getInt() does not need an object).
+	 * 
+	 * @param i
+	 * 		index of value
+	 * @return
+	 * 		true if value is stored in int array
+	 */
+	public boolean isIntField(int i)
+	{	return packed && slots[i] >= 0;
+	}
+
+	/**
+	 * Returns true if the value at a given index is NULL.
+	 * 
+	 * @param i
+	 * 		index of value
+	 * @return
+	 * 		true if value is NULL
+	 */
+	public boolean isNull(int i)
+	{	return !(packed && slots[i] >= 0) && values[i] == null;
 	}
 
 	/**
@@ -235,7 +395,7 @@ public class Tuple
 	 * 		String value
 	 */
 	public String getString(int i) 					
-	{	return (String) values[i]; 
+	{	return (String) getObject(i); 
 	}
 
 	/**
@@ -247,7 +407,9 @@ public class Tuple
 	 * 		Object value
 	 */
 	public Object getObject(int i) 					
-	{	return values[i]; 
+	{	if (packed && slots[i] >= 0)
+			return boxInt(i);
+		return values[i]; 
 	}
 	
 	/**
@@ -259,10 +421,45 @@ public class Tuple
 	 * 		int value
 	 */
 	public int getInt(int i)
-	{	if (values[i].getClass() == java.lang.String.class)
+	{	if (packed && slots[i] >= 0)
+			return ints[slots[i]];
+		if (values[i].getClass() == java.lang.String.class)
 			return Integer.parseInt((String) values[i]);
 		else
-			return ((Integer) values[i]).intValue();
+			return ((Number) values[i]).intValue();
+	}
+
+	/*
+	 * Boxes the unboxed value at index i as the type of its attribute.
+	 */
+	private Object boxInt(int i)
+	{	int val = ints[slots[i]];
+		if (relation.getAttributeType(i) == Attribute.TYPE_SMALLINT)
+			return Short.valueOf((short) val);
+		return Integer.valueOf(val);
+	}
+
+	/*
+	 * Returns a copy of the values array with unboxed values boxed (the tuple must be packed).
+	 */
+	private Object[] boxedValues()
+	{	Object[] vals = values.clone();
+		for (int i=0; i < vals.length && i < slots.length; i++)
+			if (slots[i] >= 0)
+				vals[i] = boxInt(i);
+		return vals;
+	}
+
+	/*
+	 * Moves unboxed values into the values array (used when a value is added or a non-int value is stored).
+	 */
+	private void unpack()
+	{	if (!packed)
+			return;
+		for (int i=0; i < values.length && i < slots.length; i++)
+			if (slots[i] >= 0)
+				values[i] = boxInt(i);
+		packed = false;
 	}
 
 
@@ -284,11 +481,35 @@ public class Tuple
 	{	String st = in.readLine();
 		if (st == null)
 			return false;
+		parseText(st);
+		return true;
+	}
 
-		StringTokenizer myTokenizer = new StringTokenizer(st);
+	/**
+	 * Sets the values of a tuple from a line of text (fields separated by whitespace).
+	 * 
+	 * @param st
+	 * 		line of text
+	 */
+	public void parseText(String st)
+	{	StringTokenizer myTokenizer = new StringTokenizer(st);
 		int numVals = myTokenizer.countTokens();
 
+		if (ints != null && numVals == values.length)
+		{	// Parse INT and SMALLINT values into int array
+			packed = true;
+			for (int i=0; i < numVals; i++)
+			{	String val = myTokenizer.nextToken();
+				if (slots[i] >= 0)
+					ints[slots[i]] = Integer.parseInt(val);
+				else
+					values[i] = val; 					// type string by default
+			}
+			return;
+		}
+
 		values = new Object[numVals];
+		packed = false;
 
 		for (int i=0; i < numVals; i++)
 		{	String val = myTokenizer.nextToken();
@@ -300,7 +521,6 @@ public class Tuple
 				else
 					values[i] = val; 					// type string by default
 		}
-		return true;
 	}
 
 	/**
@@ -353,19 +573,55 @@ public class Tuple
 
 		// Read the data
 		for (int i=0; i < numFields; i++)
-			values[i] = Attribute.read(in, relation.getAttributeType(i));
+			setValue(i, Attribute.read(in, relation.getAttributeType(i)));
+
+		return true;
+	}
+
+	/**
+	 * Reads a tuple in binary form from a buffer (such as a sorted table page) starting at its current position.
+	 * 
+	 * @param in
+	 * 		binary input buffer
+	 * 
+	 * @return
+	 * 		true if success, false if at end of buffer
+	 * @throws IOException
+	 * 		if an I/O error occurs
+	 */
+	public boolean read(ByteBuffer in) throws IOException
+	{	if (!in.hasRemaining())
+			return false;
 
+		in.get();									// Record header
+		int numFields = in.getInt();				// Number of fields
+
+		// Skip the NULL bit array and offsets (fields are stored in order)
+		int nullPos = in.position();
+		in.position(nullPos + numFields*3);
+
+		// Read the data
+		for (int i=0; i < numFields; i++)
+		{	if (in.get(nullPos+i) > 0)
+				setValue(i, null);
+			else
+				setValue(i, Attribute.read(in, relation.getAttributeType(i)));
+		}
 		return true;
 	}
 
 	/**
-	 * Writes a tuple in binary form to an output stream.
+	 * Writes a tuple in binary form to an output stream. String, decimal and timestamp values must be at most
+	 * Attribute.MAX_STRING_BYTES bytes long.
 	 * 
 	 * @param out
 	 * 		output stream
+	 * @throws IOException
+	 * 		if a value is too long or the stream cannot be written
 	 */
 	public void write(BufferedOutputStream out) throws IOException
-	{	byte b = 1;
+	{	Object[] values = getValues();
+		byte b = 1;
 		short []offsets = new short[values.length];
 		boolean [] isNull = new boolean[values.length];		
 		int curPos = 0;
@@ -381,6 +637,9 @@ public class Tuple
 				// Put into correct number of bytes - doing only int and string for now				
 				int attrType = relation.getAttributeType(i);
 				int size = Attribute.getByteSize(attrType, values[i]);
+				if (size > Attribute.MAX_STRING_BYTES+1)		// Reject before any of the record is written
+					throw new IOException("String value too long: "+(size-1)+" characters (at most "
+							+Attribute.MAX_STRING_BYTES+" bytes)");
 
 				curPos = curPos +  size;
 			}
@@ -0,0 +1,251 @@
+package textdb;
+
+/**
+ * A column-oriented batch of tuples returned by Operator.nextBatch(). INT
+ * attributes are stored unboxed in an int[] per column (with a NULL flag
+ * array), STRING and CHAR attributes in a String[] per column, and all other
+ * types in an Object[] per column. A batch is reused by calling reset().
+ */
+public class TupleBatch {
+	static public final int DEFAULT_SIZE = 1024; // Default number of rows in a batch
+
+	private Relation relation; // Schema of rows in batch
+	private int capacity; // Maximum number of rows
+	private int size; // Number of rows currently in batch
+	private int numCols; // Number of columns
+	private int[] types; // Attribute type of each column
+	private int[][] intCols; // Values of INT columns (null for other columns)
+	private boolean[][] intNulls; // NULL flags of INT columns (null for other columns)
+	private String[][] stringCols; // Values of STRING/CHAR columns (null for other columns)
+	private Object[][] objectCols; // Values of other columns (null for INT/STRING/CHAR columns)
+
+	public TupleBatch(Relation r) {
+		this(r, DEFAULT_SIZE);
+	}
+
+	public TupleBatch(Relation r, int cap) {
+		relation = r;
+		capacity = cap;
+		size = 0;
+		numCols = r.getNumAttributes();
+		types = new int[numCols];
+		intCols = new int[numCols][];
+		intNulls = new boolean[numCols][];
+		stringCols = new String[numCols][];
+		objectCols = new Object[numCols][];
+
+		for (int i = 0; i < numCols; i++) {
+			types[i] = r.getAttributeType(i);
+			if (types[i] == Attribute.TYPE_INT) {
+				intCols[i] = new int[cap];
+				intNulls[i] = new boolean[cap];
+			} else if (types[i] == Attribute.TYPE_STRING || types[i] == Attribute.TYPE_CHAR)
+				stringCols[i] = new String[cap];
+			else
+				objectCols[i] = new Object[cap];
+		}
+	}
+
+	// Get/Set Methods
+	public Relation getRelation() {
+		return relation;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getNumColumns() {
+		return numCols;
+	}
+
+	public boolean isFull() {
+		return size >= capacity;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Empties the batch so it can be filled again. Column arrays are kept.
+	 */
+	public void reset() {
+		// Drop references so strings and objects of previous rows can be collected
+		for (int i = 0; i < numCols; i++) {
+			if (stringCols[i] != null)
+				java.util.Arrays.fill(stringCols[i], 0, size, null);
+			else if (objectCols[i] != null)
+				java.util.Arrays.fill(objectCols[i], 0, size, null);
+		}
+		size = 0;
+	}
+
+	public int[] getIntColumn(int col) {
+		return intCols[col];
+	}
+
+	public boolean[] getIntNulls(int col) {
+		return intNulls[col];
+	}
+
+	public String[] getStringColumn(int col) {
+		return stringCols[col];
+	}
+
+	public Object[] getObjectColumn(int col) {
+		return objectCols[col];
+	}
+
+	public int getInt(int row, int col) {
+		return intCols[col][row];
+	}
+
+	public Object getObject(int row, int col) {
+		if (intCols[col] != null)
+			return intNulls[col][row] ? null : Integer.valueOf(intCols[col][row]);
+		if (stringCols[col] != null)
+			return stringCols[col][row];
+		return objectCols[col][row];
+	}
+
+	/**
+	 * Adds an empty row (all values NULL) to the batch and returns its index. Caller must check isFull() first.
+	 *
+	 * @return index of new row
+	 */
+	public int addRow() {
+		int row = size++;
+		setNulls(row, 0);
+		return row;
+	}
+
+	/*
+	 * Sets columns from col on of a row to NULL (so values of a previous batch are not returned for a short row).
+	 */
+	private void setNulls(int row, int col) {
+		for (; col < numCols; col++) {
+			if (intCols[col] != null)
+				intNulls[col][row] = true;
+			else if (stringCols[col] != null)
+				stringCols[col][row] = null;
+			else
+				objectCols[col][row] = null;
+		}
+	}
+
+	public void setInt(int row, int col, int val) {
+		intCols[col][row] = val;
+		intNulls[col][row] = false;
+	}
+
+	public void setObject(int row, int col, Object val) {
+		if (intCols[col] != null) {
+			if (val == null)
+				intNulls[col][row] = true;
+			else if (val instanceof String) // Text scans may leave values unparsed
+				setInt(row, col, Integer.parseInt((String) val));
+			else
+				setInt(row, col, ((Integer) val).intValue());
+		} else if (stringCols[col] != null)
+			stringCols[col][row] = (String) val;
+		else
+			objectCols[col][row] = val;
+	}
+
+	/**
+	 * Adds a tuple's values as a new row.
+	 *
+	 * @param t
+	 *            tuple to add
+	 */
+	public void addTuple(Tuple t) {
+		int row = size++;
+		int n = Math.min(t.numValues(), numCols);
+		for (int i = 0; i < n; i++)
+			setField(row, i, t, i);
+		setNulls(row, n);
+	}
+
+	/**
+	 * Adds a row consisting of the values of two tuples (used by joins instead of
+	 * creating the joined tuple).
+	 *
+	 * @param t1
+	 *            first tuple
+	 * @param t2
+	 *            second tuple
+	 */
+	public void addTuples(Tuple t1, Tuple t2) {
+		int row = size++;
+		int n1 = t1.numValues();
+		for (int i = 0; i < n1; i++)
+			setField(row, i, t1, i);
+		int n = Math.min(t2.numValues(), numCols - n1);
+		for (int i = 0; i < n; i++)
+			setField(row, i + n1, t2, i);
+		setNulls(row, n1 + n);
+	}
+
+	/**
+	 * Adds a row consisting of the given values of two tuples (used by joins that
+	 * output only some attributes).
+	 *
+	 * @param t1
+	 *            first tuple
+	 * @param t2
+	 *            second tuple
+	 * @param len1
+	 *            number of attributes of the first tuple's relation (a missing
+	 *            value of t1 is NULL)
+	 * @param idx
+	 *            attribute indexes to add (indexes from len1 on are attributes
+	 *            of t2) or null for all attributes
+	 */
+	public void addTuples(Tuple t1, Tuple t2, int len1, int[] idx) {
+		if (idx == null) {
+			addTuples(t1, t2);
+			return;
+		}
+		int row = size++;
+		for (int i = 0; i < idx.length; i++) {
+			if (idx[i] >= len1)
+				setField(row, i, t2, idx[i] - len1);
+			else if (idx[i] < t1.numValues())
+				setField(row, i, t1, idx[i]);
+			else
+				setObject(row, i, null);
+		}
+		setNulls(row, idx.length);
+	}
+
+	/*
+	 * Copies field i of a tuple into a column without boxing unboxed INT values.
+	 */
+	private void setField(int row, int col, Tuple t, int i) {
+		if (intCols[col] != null && t.isIntField(i))
+			setInt(row, col, t.getInt(i));
+		else
+			setObject(row, col, t.getObject(i));
+	}
+
+	/**
+	 * Creates a tuple from a row of the batch.
+	 *
+	 * @param row
+	 *            row index
+	 * @return new tuple
+	 */
+	public Tuple getTuple(int row) {
+		Object[] values = new Object[numCols];
+		for (int i = 0; i < numCols; i++)
+			values[i] = getObject(row, i);
+		Tuple t = new Tuple(relation);
+		t.setValues(values);
+		return t;
+	}
+}